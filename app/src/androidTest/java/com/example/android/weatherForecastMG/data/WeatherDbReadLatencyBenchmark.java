@@ -0,0 +1,223 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.database.Cursor;
+import android.database.DatabaseErrorHandler;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures how long the forecast list query takes while a sync is writing to the database. A
+ * writer thread keeps a write transaction open for WRITE_HOLD_MILLIS at a time, the way a sync
+ * does while it stores a forecast, and the test thread reads meanwhile.
+ * <p>
+ * With WeatherDbHelper's default settings (WAL) a read must never wait for the write to commit.
+ * The same run with a rollback journal is printed next to it for comparison. This needs the
+ * connection pool of a real device, so it is an instrumented test; Robolectric's SQLite runs
+ * every connection on one thread.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WeatherDbReadLatencyBenchmark {
+
+    private static final String TAG = WeatherDbReadLatencyBenchmark.class.getSimpleName();
+
+    /* How long each write transaction stays open */
+    private static final long WRITE_HOLD_MILLIS = 200;
+
+    private static final int READS = 200;
+
+    /* Forecast rows in the table while reading */
+    private static final int ROWS = 14;
+
+    private static final String[] LIST_PROJECTION = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_WEATHER_ID
+    };
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        /* Keeps the benchmark's database apart from the app's own weather.db */
+        mContext = new BenchmarkContext(InstrumentationRegistry.getTargetContext());
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void readsDoNotWaitForWritesInWalMode() throws Exception {
+        Assume.assumeTrue(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN);
+
+        long[] walMillis = measureReadsDuringWrites(WeatherDbHelper.ConnectionSettings.DEFAULT);
+        long[] journalMillis = measureReadsDuringWrites(new WeatherDbHelper.ConnectionSettings(
+                false,
+                WeatherDbHelper.ConnectionSettings.SQLITE_DEFAULT,
+                WeatherDbHelper.ConnectionSettings.SQLITE_DEFAULT,
+                WeatherDbHelper.ConnectionSettings.SQLITE_DEFAULT));
+
+        Log.i(TAG, "Read latency during writes, WAL: " + describe(walMillis));
+        Log.i(TAG, "Read latency during writes, rollback journal: " + describe(journalMillis));
+
+        long walMax = walMillis[walMillis.length - 1];
+        assertTrue("A read waited " + walMax + "ms for a write", walMax < WRITE_HOLD_MILLIS / 2);
+    }
+
+    /*
+     * Returns the time each read took, in milliseconds, sorted.
+     */
+    private long[] measureReadsDuringWrites(WeatherDbHelper.ConnectionSettings settings)
+            throws InterruptedException {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, settings);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+        final ContentValues[] rows = buildRows();
+        writeForecast(db, rows, 0);
+
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final CountDownLatch firstWriteOpen = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (writing.get()) {
+                    writeForecast(db, rows, WRITE_HOLD_MILLIS, firstWriteOpen);
+                }
+            }
+        });
+        writer.start();
+        firstWriteOpen.await();
+
+        long[] readMillis = new long[READS];
+        try {
+            String[] selectionArgs = WeatherEntry.getSelectionArgsForTodayOnwards();
+            for (int i = 0; i < READS; i++) {
+                long begin = System.nanoTime();
+                Cursor cursor = db.query(WeatherEntry.TABLE_NAME, LIST_PROJECTION,
+                        WeatherEntry.SQL_SELECT_TODAY_ONWARDS, selectionArgs,
+                        null, null, WeatherEntry.COLUMN_DATE);
+                try {
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+                readMillis[i] = (System.nanoTime() - begin) / 1000000;
+                Thread.sleep(5);
+            }
+        } finally {
+            writing.set(false);
+            writer.join();
+            dbHelper.close();
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        }
+
+        Arrays.sort(readMillis);
+        return readMillis;
+    }
+
+    private static void writeForecast(SQLiteDatabase db, ContentValues[] rows, long holdMillis) {
+        writeForecast(db, rows, holdMillis, null);
+    }
+
+    /*
+     * Replaces the forecast in one transaction, which is held open for holdMillis before it
+     * commits.
+     */
+    private static void writeForecast(SQLiteDatabase db, ContentValues[] rows, long holdMillis,
+                                      CountDownLatch opened) {
+        db.beginTransaction();
+        try {
+            db.delete(WeatherEntry.TABLE_NAME, null, null);
+            for (ContentValues row : rows) {
+                db.insert(WeatherEntry.TABLE_NAME, null, row);
+            }
+            if (opened != null) opened.countDown();
+            if (holdMillis > 0) Thread.sleep(holdMillis);
+            db.setTransactionSuccessful();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static ContentValues[] buildRows() {
+        long today = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+        ContentValues[] rows = new ContentValues[ROWS];
+        for (int i = 0; i < ROWS; i++) {
+            ContentValues row = new ContentValues();
+            row.put(WeatherEntry.COLUMN_LOCATION_ID, 1);
+            row.put(WeatherEntry.COLUMN_DATE, today + i * 86400000L);
+            row.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            row.put(WeatherEntry.COLUMN_MIN_TEMP, 5.0);
+            row.put(WeatherEntry.COLUMN_MAX_TEMP, 12.0);
+            row.put(WeatherEntry.COLUMN_HUMIDITY, 60.0);
+            row.put(WeatherEntry.COLUMN_PRESSURE, 1012.0);
+            row.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+            row.put(WeatherEntry.COLUMN_DEGREES, 270.0);
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    private static String describe(long[] sortedMillis) {
+        return "median " + sortedMillis[sortedMillis.length / 2] + "ms, "
+                + "p95 " + sortedMillis[sortedMillis.length * 95 / 100] + "ms, "
+                + "max " + sortedMillis[sortedMillis.length - 1] + "ms";
+    }
+
+    /*
+     * Opens databases under a name of their own, so that WeatherDbHelper creates
+     * benchmark_weather.db rather than the app's weather.db.
+     */
+    private static final class BenchmarkContext extends ContextWrapper {
+
+        private static final String PREFIX = "benchmark_";
+
+        BenchmarkContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+                                                   SQLiteDatabase.CursorFactory factory) {
+            return super.openOrCreateDatabase(PREFIX + name, mode, factory);
+        }
+
+        @Override
+        public SQLiteDatabase openOrCreateDatabase(String name, int mode,
+                                                   SQLiteDatabase.CursorFactory factory,
+                                                   DatabaseErrorHandler errorHandler) {
+            return super.openOrCreateDatabase(PREFIX + name, mode, factory, errorHandler);
+        }
+
+        @Override
+        public boolean deleteDatabase(String name) {
+            return super.deleteDatabase(PREFIX + name);
+        }
+
+        @Override
+        public File getDatabasePath(String name) {
+            return super.getDatabasePath(PREFIX + name);
+        }
+    }
+}
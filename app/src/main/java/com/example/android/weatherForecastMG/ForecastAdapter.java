@@ -2,7 +2,6 @@
 package com.example.android.weatherForecastMG;
 
 import android.content.Context;
-import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -11,12 +10,12 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
-import com.example.android.weatherForecastMG.utilities.ForecastWeatherUtils;
+import java.util.List;
 
 /**
- * {@link ForecastAdapter} exposes a list of weather forecasts
- * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
+ * {@link ForecastAdapter} exposes a list of weather forecasts, formatted into
+ * {@link ForecastRow}s by {@link ForecastLoader}, to a
+ * {@link android.support.v7.widget.RecyclerView}.
  */
 class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
 
@@ -49,7 +48,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     private boolean mUseTodayLayout;
 
-    private Cursor mCursor;
+    /* The formatted forecast, one row per day, or null until it has been loaded */
+    private List<ForecastRow> mRows;
 
     /**
      * Creates a ForecastAdapter.
@@ -115,90 +115,54 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
-        mCursor.moveToPosition(position);
+        /*
+         * Everything shown was formatted by ForecastLoader in the background, so binding only
+         * hands it to the views.
+         */
+        ForecastRow row = mRows.get(position);
 
         /****************
          * Weather Icon *
          ****************/
-        int weatherId = mCursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
-        int weatherImageId;
-
         int viewType = getItemViewType(position);
 
         switch (viewType) {
 
             case VIEW_TYPE_TODAY:
-                weatherImageId = ForecastWeatherUtils
-                        .getLargeArtResourceIdForWeatherCondition(weatherId);
+                forecastAdapterViewHolder.iconView.setImageResource(row.largeIconResId);
                 break;
 
             case VIEW_TYPE_FUTURE_DAY:
-                weatherImageId = ForecastWeatherUtils
-                        .getSmallArtResourceIdForWeatherCondition(weatherId);
+                forecastAdapterViewHolder.iconView.setImageResource(row.smallIconResId);
                 break;
 
             default:
                 throw new IllegalArgumentException("Invalid view type, value of " + viewType);
         }
 
-        forecastAdapterViewHolder.iconView.setImageResource(weatherImageId);
-
         /****************
          * Weather Date *
          ****************/
-         /* Read date from the cursor */
-        long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
-         /* Get human readable string using our utility method */
-        String dateString = WeatherForecastDateUtils.getFriendlyDateString(mContext, dateInMillis, false);
-
-         /* Display friendly date string */
-        forecastAdapterViewHolder.dateView.setText(dateString);
+        forecastAdapterViewHolder.dateView.setText(row.dateString);
 
         /***********************
          * Weather Description *
          ***********************/
-        String description = ForecastWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
-         /* Create the accessibility (a11y) String from the weather description */
-        String descriptionA11y = mContext.getString(R.string.a11y_forecast, description);
-
          /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.descriptionView.setText(description);
-        forecastAdapterViewHolder.descriptionView.setContentDescription(descriptionA11y);
+        forecastAdapterViewHolder.descriptionView.setText(row.description);
+        forecastAdapterViewHolder.descriptionView.setContentDescription(row.descriptionA11y);
 
         /**************************
          * High (max) temperature *
          **************************/
-         /* Read high temperature from the cursor (in degrees celsius) */
-        double highInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String highString = ForecastWeatherUtils.formatTemperature(mContext, highInCelsius);
-         /* Create the accessibility (a11y) String from the weather description */
-        String highA11y = mContext.getString(R.string.a11y_high_temp, highString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.highTempView.setText(highString);
-        forecastAdapterViewHolder.highTempView.setContentDescription(highA11y);
+        forecastAdapterViewHolder.highTempView.setText(row.highString);
+        forecastAdapterViewHolder.highTempView.setContentDescription(row.highA11y);
 
         /*************************
          * Low (min) temperature *
          *************************/
-         /* Read low temperature from the cursor (in degrees celsius) */
-        double lowInCelsius = mCursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP);
-         /*
-          * If the user's preference for weather is fahrenheit, formatTemperature will convert
-          * the temperature. This method will also append either °C or °F to the temperature
-          * String.
-          */
-        String lowString = ForecastWeatherUtils.formatTemperature(mContext, lowInCelsius);
-        String lowA11y = mContext.getString(R.string.a11y_low_temp, lowString);
-
-         /* Set the text and content description (for accessibility purposes) */
-        forecastAdapterViewHolder.lowTempView.setText(lowString);
-        forecastAdapterViewHolder.lowTempView.setContentDescription(lowA11y);
+        forecastAdapterViewHolder.lowTempView.setText(row.lowString);
+        forecastAdapterViewHolder.lowTempView.setContentDescription(row.lowA11y);
     }
 
     /**
@@ -209,8 +173,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      */
     @Override
     public int getItemCount() {
-        if (null == mCursor) return 0;
-        return mCursor.getCount();
+        if (null == mRows) return 0;
+        return mRows.size();
     }
 
     /**
@@ -220,7 +184,7 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
      * different layout for the "today" layout. The "today" layout is only shown in portrait mode
      * with the first item in the list.
      *
-     * @param position index within our RecyclerView and Cursor
+     * @param position index within our RecyclerView and list of rows
      * @return the view type (today or future day)
      */
     @Override
@@ -233,15 +197,36 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
     }
 
     /**
-     * Swaps the cursor used by the ForecastAdapter for its weather data. This method is called by
-     * MainActivity after a load has finished, as well as when the Loader responsible for loading
-     * the weather data is reset. When this method is called, we assume we have a completely new
-     * set of data, so we call notifyDataSetChanged to tell the RecyclerView to update.
+     * Swaps the rows used by the ForecastAdapter for its weather data. This method is called by
+     * MainActivity after a load has finished. If the update was worked out from the rows this
+     * adapter shows, only the days that were added, removed or changed are passed on to the
+     * RecyclerView. Otherwise, such as right after the Activity was recreated, we have a
+     * completely new set of data, so we call notifyDataSetChanged to tell the RecyclerView to
+     * update.
      *
-     * @param newCursor the new cursor to use as ForecastAdapter's data source
+     * @param update the new rows to use as ForecastAdapter's data source, and how they differ
+     *               from the ones before
+     */
+    void swapRows(ForecastListUpdate update) {
+        /* The Loader hands its last update out again whenever the Activity is started */
+        if (update.rows == mRows) return;
+
+        boolean incremental = update.diff != null && update.previous == mRows;
+        mRows = update.rows;
+
+        if (incremental) {
+            update.diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Drops the rows of this adapter. This method is called by MainActivity when the Loader
+     * responsible for loading the weather data is reset.
      */
-    void swapCursor(Cursor newCursor) {
-        mCursor = newCursor;
+    void clearRows() {
+        mRows = null;
         notifyDataSetChanged();
     }
 
@@ -280,8 +265,8 @@ class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapt
         @Override
         public void onClick(View v) {
             int adapterPosition = getAdapterPosition();
-            mCursor.moveToPosition(adapterPosition);
-            long dateInMillis = mCursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            if (adapterPosition == RecyclerView.NO_POSITION) return;
+            long dateInMillis = mRows.get(adapterPosition).date;
             mClickHandler.onClick(dateInMillis);
         }
     }
@@ -0,0 +1,87 @@
+package com.example.android.weatherForecastMG;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+/**
+ * What {@link ForecastLoader} delivers each time the forecast changes: the new rows, and how
+ * they differ from the rows it delivered before. The difference is worked out on the loader's
+ * background thread, so that {@link ForecastAdapter} can tell the RecyclerView which days were
+ * added, removed or changed instead of rebinding every visible row. A sync that changed nothing
+ * then changes nothing on screen.
+ */
+final class ForecastListUpdate {
+
+    /* The rows delivered before, which the diff starts from; null for the first load */
+    final List<ForecastRow> previous;
+
+    final List<ForecastRow> rows;
+
+    /* How to get from previous to rows, or null if there were no previous rows */
+    final DiffUtil.DiffResult diff;
+
+    private ForecastListUpdate(List<ForecastRow> previous, List<ForecastRow> rows,
+                               DiffUtil.DiffResult diff) {
+        this.previous = previous;
+        this.rows = rows;
+        this.diff = diff;
+    }
+
+    /**
+     * Works out the difference between two lists of rows. This walks both lists, so it must
+     * not be called on the main thread.
+     *
+     * @param previous The rows delivered before, or null if there were none
+     * @param rows     The new rows
+     */
+    static ForecastListUpdate calculate(List<ForecastRow> previous, List<ForecastRow> rows) {
+        if (previous == null) return new ForecastListUpdate(null, rows, null);
+
+        /* The rows are in date order, so no day ever moves and moves needn't be looked for */
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new RowDiff(previous, rows), false);
+        return new ForecastListUpdate(previous, rows, diff);
+    }
+
+    /*
+     * Rows are the same day if they have the same date, and need rebinding if anything they
+     * show differs.
+     */
+    private static final class RowDiff extends DiffUtil.Callback {
+
+        private final List<ForecastRow> mOldRows;
+        private final List<ForecastRow> mNewRows;
+
+        RowDiff(List<ForecastRow> oldRows, List<ForecastRow> newRows) {
+            mOldRows = oldRows;
+            mNewRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldRows.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewRows.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return mOldRows.get(oldItemPosition).date == mNewRows.get(newItemPosition).date;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            /*
+             * The first row may use the "today" layout. A day that moves to or from the top,
+             * such as when yesterday drops off the list, has to be bound again for its layout
+             * to change.
+             */
+            if ((oldItemPosition == 0) != (newItemPosition == 0)) return false;
+
+            return mOldRows.get(oldItemPosition).hasSameContents(mNewRows.get(newItemPosition));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.android.weatherForecastMG;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v4.content.AsyncTaskLoader;
+
+import com.example.android.weatherForecastMG.data.WeatherContract;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Loads the forecast list from today onwards and formats it into {@link ForecastRow}s, all on a
+ * background thread. It reloads whenever the forecast changes, like a CursorLoader does, but
+ * hands the list rather than a cursor to {@link MainActivity}, so nothing is read or formatted
+ * while the list is bound and scrolled. Each list comes with how it differs from the one before
+ * (see {@link ForecastListUpdate}), which is also worked out in the background.
+ */
+class ForecastLoader extends AsyncTaskLoader<ForecastListUpdate> {
+
+    /* Forces a reload when the forecast is written or the units or location setting changes */
+    private final ForceLoadContentObserver mObserver = new ForceLoadContentObserver();
+    private boolean mObserverRegistered;
+
+    /*
+     * The last update delivered, kept to hand out again when the Activity is recreated. Its rows
+     * are what the next load is diffed against, on the loader's thread.
+     */
+    private volatile ForecastListUpdate mUpdate;
+
+    ForecastLoader(Context context) {
+        super(context);
+    }
+
+    @Override
+    public ForecastListUpdate loadInBackground() {
+        /* Sort order: Ascending by date */
+        String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
+        /*
+         * We want all weather data from today onwards. The weather table has an index covering
+         * exactly this query, so the list is read from the index alone.
+         */
+        String selection = WeatherContract.WeatherEntry.SQL_SELECT_TODAY_ONWARDS;
+        String[] selectionArgs = WeatherContract.WeatherEntry.getSelectionArgsForTodayOnwards();
+
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                selection,
+                selectionArgs,
+                sortOrder);
+
+        List<ForecastRow> rows;
+        if (cursor == null) {
+            rows = Collections.emptyList();
+        } else {
+            try {
+                rows = ForecastRow.fromCursor(getContext(), cursor);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        ForecastListUpdate previous = mUpdate;
+        return ForecastListUpdate.calculate(previous == null ? null : previous.rows, rows);
+    }
+
+    @Override
+    public void deliverResult(ForecastListUpdate update) {
+        if (isReset()) return;
+
+        mUpdate = update;
+        if (isStarted()) super.deliverResult(update);
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(
+                    WeatherContract.WeatherEntry.CONTENT_URI, true, mObserver);
+            mObserverRegistered = true;
+        }
+
+        if (mUpdate != null) deliverResult(mUpdate);
+        if (takeContentChanged() || mUpdate == null) forceLoad();
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        onStopLoading();
+
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mUpdate = null;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.android.weatherForecastMG;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+import com.example.android.weatherForecastMG.utilities.ForecastWeatherUtils;
+import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One row of the forecast list, with everything it shows already formatted. The rows are built
+ * on a background thread by {@link ForecastLoader} whenever the forecast changes, so that
+ * {@link ForecastAdapter} only has to hand these Strings to its views while the list scrolls.
+ * <p>
+ * A row never changes once built.
+ */
+final class ForecastRow {
+
+    /* Normalized UTC date of the day, used to open the detail screen for it */
+    final long date;
+
+    final int weatherId;
+
+    /* The icon for the "today" layout and the one for every other day */
+    final int largeIconResId;
+    final int smallIconResId;
+
+    final String dateString;
+
+    /* Each text, and the content description (for accessibility purposes) that goes with it */
+    final String description;
+    final String descriptionA11y;
+    final String highString;
+    final String highA11y;
+    final String lowString;
+    final String lowA11y;
+
+    private ForecastRow(long date, int weatherId, String dateString,
+                        String description, String descriptionA11y,
+                        String highString, String highA11y,
+                        String lowString, String lowA11y) {
+        this.date = date;
+        this.weatherId = weatherId;
+        this.largeIconResId = ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+        this.smallIconResId = ForecastWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+        this.dateString = dateString;
+        this.description = description;
+        this.descriptionA11y = descriptionA11y;
+        this.highString = highString;
+        this.highA11y = highA11y;
+        this.lowString = lowString;
+        this.lowA11y = lowA11y;
+    }
+
+    /**
+     * Returns true if this row shows exactly what another one does, so a view bound to one
+     * needn't be bound again for the other.
+     */
+    boolean hasSameContents(ForecastRow other) {
+        return date == other.date
+                && weatherId == other.weatherId
+                && dateString.equals(other.dateString)
+                && description.equals(other.description)
+                && descriptionA11y.equals(other.descriptionA11y)
+                && highString.equals(other.highString)
+                && highA11y.equals(other.highA11y)
+                && lowString.equals(other.lowString)
+                && lowA11y.equals(other.lowA11y);
+    }
+
+    /**
+     * Formats every row of a cursor queried with {@link MainActivity#MAIN_FORECAST_PROJECTION}.
+     * The units preference is read once for the whole list rather than once per temperature.
+     *
+     * @param context Used to read the units preference and the app resources
+     * @param cursor  The forecast, which is read from the start but not closed
+     * @return The rows, in the order of the cursor; the list can't be modified
+     */
+    static List<ForecastRow> fromCursor(Context context, Cursor cursor) {
+        boolean isMetric = WeatherForecastPreferences.isMetric(context);
+
+        List<ForecastRow> rows = new ArrayList<ForecastRow>(cursor.getCount());
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            long date = cursor.getLong(MainActivity.INDEX_WEATHER_DATE);
+            int weatherId = cursor.getInt(MainActivity.INDEX_WEATHER_CONDITION_ID);
+
+            String dateString = WeatherForecastDateUtils.getFriendlyDateString(context, date, false);
+
+            String description = ForecastWeatherUtils.getStringForWeatherCondition(context, weatherId);
+            String descriptionA11y = context.getString(R.string.a11y_forecast, description);
+
+            /*
+             * formatTemperature converts the temperatures (stored in degrees celsius) if the
+             * user prefers fahrenheit, and appends either °C or °F.
+             */
+            String highString = ForecastWeatherUtils.formatTemperature(context,
+                    cursor.getDouble(MainActivity.INDEX_WEATHER_MAX_TEMP), isMetric);
+            String highA11y = context.getString(R.string.a11y_high_temp, highString);
+
+            String lowString = ForecastWeatherUtils.formatTemperature(context,
+                    cursor.getDouble(MainActivity.INDEX_WEATHER_MIN_TEMP), isMetric);
+            String lowA11y = context.getString(R.string.a11y_low_temp, lowString);
+
+            rows.add(new ForecastRow(date, weatherId, dateString,
+                    description, descriptionA11y,
+                    highString, highA11y,
+                    lowString, lowA11y));
+        }
+        return Collections.unmodifiableList(rows);
+    }
+}
@@ -81,7 +81,8 @@ public class SettingsFragment extends PreferenceFragmentCompat implements
             // we've changed the location
             // Wipe out any potential PlacePicker latlng values so that we can use this text entry.
             WeatherForecastPreferences.resetLocationCoordinates(activity);
-            WeatherForecastSyncUtils.startImmediateSync(activity);
+            // Show what we have stored for the new location, and only sync if there's nothing
+            WeatherForecastSyncUtils.onLocationChanged(activity);
         } else if (key.equals(getString(R.string.pref_units_key))) {
             // units have changed. update lists of weather entries accordingly
             activity.getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
@@ -0,0 +1,274 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory copy of the weather rows of one location, which {@link WeatherProvider} answers
+ * the forecast list and detail queries from without going to SQLite.
+ * <p>
+ * The forecast only changes when a sync writes it, but the list and the detail screen query it
+ * again on every rotation and every return to them. The provider loads a snapshot the first
+ * time a location is queried, and drops it whenever the weather of any location is written, so
+ * the next query loads a fresh one.
+ * <p>
+ * A snapshot is immutable once loaded, so any number of cursors can read it at the same time
+ * while the provider swaps in a new one. Each column is kept in an array of its own type rather
+ * than as an object per value.
+ */
+final class ForecastSnapshot {
+
+    /* How a column is stored: in a long[], a double[] or a String[] */
+    private static final int TYPE_LONG = 0;
+    private static final int TYPE_DOUBLE = 1;
+    private static final int TYPE_STRING = 2;
+
+    /* Every column of the weather table, and how each is stored */
+    private static final String[] COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOCATION_ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_METAR_RAW,
+            WeatherEntry.COLUMN_DEWPOINT_C,
+            WeatherEntry.COLUMN_DEWPOINT_F,
+            WeatherEntry.COLUMN_FLIGHT_CATEGORY,
+            WeatherEntry.COLUMN_VISIBILITY_MILES,
+            WeatherEntry.COLUMN_VISIBILITY_METERS,
+            WeatherEntry.COLUMN_TAF_RAW
+    };
+    private static final int[] TYPES = {
+            TYPE_LONG,
+            TYPE_LONG,
+            TYPE_LONG,
+            TYPE_LONG,
+            TYPE_DOUBLE,
+            TYPE_DOUBLE,
+            TYPE_DOUBLE,
+            TYPE_DOUBLE,
+            TYPE_DOUBLE,
+            TYPE_DOUBLE,
+            TYPE_STRING,
+            TYPE_DOUBLE,
+            TYPE_DOUBLE,
+            TYPE_STRING,
+            TYPE_STRING,
+            TYPE_STRING,
+            TYPE_STRING
+    };
+
+    /*
+     * The number a text value starts with, which is what a SQLite cursor on a device reads a
+     * number from text as, e.g. 10 from the visibility "10+". Text that doesn't start with one
+     * reads as 0. As an integer, and with a fraction and exponent.
+     */
+    private static final Pattern LEADING_INTEGER = Pattern.compile("\\s*[+-]?\\d+");
+    private static final Pattern LEADING_REAL =
+            Pattern.compile("\\s*[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+
+    /* Position of the date in COLUMNS. Rows are kept in date order. */
+    private static final int DATE = 2;
+
+    private final int mRowCount;
+
+    /* For each column, a long[], double[] or String[] with a value per row */
+    private final Object[] mValues;
+
+    /* For each numeric column, which rows are NULL. Null Strings are simply null. */
+    private final boolean[][] mNulls;
+
+    private ForecastSnapshot(int rowCount, Object[] values, boolean[][] nulls) {
+        mRowCount = rowCount;
+        mValues = values;
+        mNulls = nulls;
+    }
+
+    /**
+     * Reads every weather row of a location into a new snapshot.
+     *
+     * @param db         The database to read from
+     * @param locationId The location whose rows to read
+     * @return The snapshot
+     */
+    static ForecastSnapshot load(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME,
+                COLUMNS,
+                WeatherEntry.COLUMN_LOCATION_ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            int rowCount = cursor.getCount();
+            Object[] values = new Object[COLUMNS.length];
+            boolean[][] nulls = new boolean[COLUMNS.length][];
+            for (int column = 0; column < COLUMNS.length; column++) {
+                switch (TYPES[column]) {
+                    case TYPE_LONG:
+                        values[column] = new long[rowCount];
+                        nulls[column] = new boolean[rowCount];
+                        break;
+                    case TYPE_DOUBLE:
+                        values[column] = new double[rowCount];
+                        nulls[column] = new boolean[rowCount];
+                        break;
+                    default:
+                        values[column] = new String[rowCount];
+                        break;
+                }
+            }
+
+            for (int row = 0; cursor.moveToNext(); row++) {
+                for (int column = 0; column < COLUMNS.length; column++) {
+                    switch (TYPES[column]) {
+                        case TYPE_LONG:
+                            nulls[column][row] = cursor.isNull(column);
+                            ((long[]) values[column])[row] = cursor.getLong(column);
+                            break;
+                        case TYPE_DOUBLE:
+                            nulls[column][row] = cursor.isNull(column);
+                            ((double[]) values[column])[row] = cursor.getDouble(column);
+                            break;
+                        default:
+                            ((String[]) values[column])[row] = cursor.getString(column);
+                            break;
+                    }
+                }
+            }
+
+            return new ForecastSnapshot(rowCount, values, nulls);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns true if every column of the projection is one a snapshot holds. A null projection
+     * asks for all of them.
+     */
+    static boolean hasColumns(String[] projection) {
+        if (projection == null) return true;
+
+        for (String column : projection) {
+            if (getColumn(column) == -1) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns a cursor over the rows from a date onwards, in date order.
+     *
+     * @param projection The columns to return; {@link #hasColumns(String[])} must be true for it
+     * @param fromDate   Normalized date of the first row to return
+     */
+    Cursor queryFromDate(String[] projection, long fromDate) {
+        int first = findDate(fromDate);
+        return new ForecastSnapshotCursor(this, projection, first, mRowCount - first);
+    }
+
+    /**
+     * Returns a cursor over the row for one date, which is empty if there is no such row.
+     *
+     * @param projection The columns to return; {@link #hasColumns(String[])} must be true for it
+     * @param date       Normalized date of the row
+     */
+    Cursor queryDate(String[] projection, long date) {
+        int row = findDate(date);
+        boolean found = row < mRowCount && ((long[]) mValues[DATE])[row] == date;
+        return new ForecastSnapshotCursor(this, projection, row, found ? 1 : 0);
+    }
+
+    /* Returns the first row whose date is at least date, or the row count if there is none */
+    private int findDate(long date) {
+        int row = Arrays.binarySearch((long[]) mValues[DATE], date);
+        return row >= 0 ? row : -(row + 1);
+    }
+
+    static String[] getAllColumns() {
+        return COLUMNS.clone();
+    }
+
+    /* Returns the position of a column in COLUMNS, or -1 if a snapshot doesn't hold it */
+    static int getColumn(String name) {
+        for (int column = 0; column < COLUMNS.length; column++) {
+            if (COLUMNS[column].equals(name)) return column;
+        }
+        return -1;
+    }
+
+    boolean isNull(int row, int column) {
+        if (TYPES[column] == TYPE_STRING) return ((String[]) mValues[column])[row] == null;
+        return mNulls[column][row];
+    }
+
+    long getLong(int row, int column) {
+        switch (TYPES[column]) {
+            case TYPE_LONG:
+                return ((long[]) mValues[column])[row];
+            case TYPE_DOUBLE:
+                return (long) ((double[]) mValues[column])[row];
+            default:
+                Matcher number = matchStart(LEADING_INTEGER, ((String[]) mValues[column])[row]);
+                return number == null ? 0 : Long.parseLong(number.group().trim());
+        }
+    }
+
+    double getDouble(int row, int column) {
+        switch (TYPES[column]) {
+            case TYPE_LONG:
+                return ((long[]) mValues[column])[row];
+            case TYPE_DOUBLE:
+                return ((double[]) mValues[column])[row];
+            default:
+                Matcher number = matchStart(LEADING_REAL, ((String[]) mValues[column])[row]);
+                return number == null ? 0 : Double.parseDouble(number.group());
+        }
+    }
+
+    /* Returns a matcher for the pattern found at the start of a value, or null if it isn't */
+    private static Matcher matchStart(Pattern pattern, String value) {
+        if (value == null) return null;
+
+        Matcher matcher = pattern.matcher(value);
+        return matcher.lookingAt() ? matcher : null;
+    }
+
+    String getString(int row, int column) {
+        if (isNull(row, column)) return null;
+
+        switch (TYPES[column]) {
+            case TYPE_LONG:
+                return Long.toString(((long[]) mValues[column])[row]);
+            case TYPE_DOUBLE:
+                return Double.toString(((double[]) mValues[column])[row]);
+            default:
+                return ((String[]) mValues[column])[row];
+        }
+    }
+
+    /* Returns the Cursor.FIELD_TYPE_* of a value */
+    int getType(int row, int column) {
+        if (isNull(row, column)) return Cursor.FIELD_TYPE_NULL;
+
+        switch (TYPES[column]) {
+            case TYPE_LONG:
+                return Cursor.FIELD_TYPE_INTEGER;
+            case TYPE_DOUBLE:
+                return Cursor.FIELD_TYPE_FLOAT;
+            default:
+                return Cursor.FIELD_TYPE_STRING;
+        }
+    }
+}
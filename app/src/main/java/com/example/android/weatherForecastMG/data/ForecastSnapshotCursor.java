@@ -0,0 +1,94 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.database.AbstractCursor;
+
+/**
+ * A cursor over a range of rows of a {@link ForecastSnapshot}. It reads straight from the
+ * snapshot's arrays; nothing is copied.
+ */
+final class ForecastSnapshotCursor extends AbstractCursor {
+
+    private final ForecastSnapshot mSnapshot;
+    private final String[] mColumnNames;
+
+    /* For each column of this cursor, its position in the snapshot */
+    private final int[] mColumns;
+
+    /* The rows of the snapshot this cursor covers */
+    private final int mFirstRow;
+    private final int mCount;
+
+    /**
+     * @param snapshot   The snapshot to read
+     * @param projection The columns to return, or null for all of them
+     * @param firstRow   The first row of the snapshot to return
+     * @param count      The number of rows to return
+     */
+    ForecastSnapshotCursor(ForecastSnapshot snapshot, String[] projection,
+                           int firstRow, int count) {
+        mSnapshot = snapshot;
+        mColumnNames = projection == null ? ForecastSnapshot.getAllColumns() : projection.clone();
+        mColumns = new int[mColumnNames.length];
+        for (int i = 0; i < mColumns.length; i++) {
+            mColumns[i] = ForecastSnapshot.getColumn(mColumnNames[i]);
+        }
+        mFirstRow = firstRow;
+        mCount = count;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mSnapshot.getString(getRow(), mColumns[column]);
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) mSnapshot.getLong(getRow(), mColumns[column]);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) mSnapshot.getLong(getRow(), mColumns[column]);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mSnapshot.getLong(getRow(), mColumns[column]);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return (float) mSnapshot.getDouble(getRow(), mColumns[column]);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mSnapshot.getDouble(getRow(), mColumns[column]);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mSnapshot.isNull(getRow(), mColumns[column]);
+    }
+
+    @Override
+    public int getType(int column) {
+        return mSnapshot.getType(getRow(), mColumns[column]);
+    }
+
+    /* The snapshot row under the cursor, as AbstractCursor does for its own getters */
+    private int getRow() {
+        checkPosition();
+        return mFirstRow + getPosition();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.CloudLayerEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.MetarEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One decoded METAR observation, as parsed from CheckWX by OpenWeatherJsonUtils and stored in
+ * the metar and cloud_layers tables. Instances are immutable.
+ */
+public final class MetarReport {
+
+    /**
+     * One cloud layer of a METAR, lowest first.
+     */
+    public static final class CloudLayer {
+
+        /* Cover code, for example "BKN", and its description, for example "Broken" */
+        public final String code;
+        public final String text;
+
+        /* Height of the base above ground level, or null if not reported (e.g. for "CLR") */
+        public final Integer baseFeetAgl;
+        public final Integer baseMetersAgl;
+
+        public CloudLayer(String code, String text, Integer baseFeetAgl, Integer baseMetersAgl) {
+            this.code = code;
+            this.text = text;
+            this.baseFeetAgl = baseFeetAgl;
+            this.baseMetersAgl = baseMetersAgl;
+        }
+    }
+
+    /* ICAO code of the reporting station */
+    public final String station;
+    /* Time of the observation in UTC milliseconds */
+    public final long observed;
+    public final String rawText;
+
+    /* The fields below are null when the station didn't report them */
+    public final String conditions;
+    public final Double dewpointC;
+    public final Double dewpointF;
+    public final String flightCategory;
+    public final String visibilityMiles;
+    public final String visibilityMeters;
+
+    public final List<CloudLayer> cloudLayers;
+
+    public MetarReport(String station, long observed, String rawText, String conditions,
+                       Double dewpointC, Double dewpointF, String flightCategory,
+                       String visibilityMiles, String visibilityMeters,
+                       List<CloudLayer> cloudLayers) {
+        this.station = station;
+        this.observed = observed;
+        this.rawText = rawText;
+        this.conditions = conditions;
+        this.dewpointC = dewpointC;
+        this.dewpointF = dewpointF;
+        this.flightCategory = flightCategory;
+        this.visibilityMiles = visibilityMiles;
+        this.visibilityMeters = visibilityMeters;
+        this.cloudLayers = Collections.unmodifiableList(cloudLayers);
+    }
+
+    /**
+     * @return The row for this observation in the metar table
+     */
+    public ContentValues toMetarValues() {
+        ContentValues values = new ContentValues();
+        values.put(MetarEntry.COLUMN_STATION, station);
+        values.put(MetarEntry.COLUMN_OBSERVED, observed);
+        values.put(MetarEntry.COLUMN_RAW_TEXT, rawText);
+        values.put(MetarEntry.COLUMN_CONDITIONS, conditions);
+        values.put(MetarEntry.COLUMN_DEWPOINT_C, dewpointC);
+        values.put(MetarEntry.COLUMN_DEWPOINT_F, dewpointF);
+        values.put(MetarEntry.COLUMN_FLIGHT_CATEGORY, flightCategory);
+        values.put(MetarEntry.COLUMN_VISIBILITY_MILES, visibilityMiles);
+        values.put(MetarEntry.COLUMN_VISIBILITY_METERS, visibilityMeters);
+        return values;
+    }
+
+    /**
+     * @param layer Index into {@link #cloudLayers}
+     * @return The row for that layer in the cloud_layers table
+     */
+    public ContentValues toCloudLayerValues(int layer) {
+        CloudLayer cloudLayer = cloudLayers.get(layer);
+
+        ContentValues values = new ContentValues();
+        values.put(CloudLayerEntry.COLUMN_STATION, station);
+        values.put(CloudLayerEntry.COLUMN_OBSERVED, observed);
+        values.put(CloudLayerEntry.COLUMN_LAYER, layer);
+        values.put(CloudLayerEntry.COLUMN_CODE, cloudLayer.code);
+        values.put(CloudLayerEntry.COLUMN_TEXT, cloudLayer.text);
+        values.put(CloudLayerEntry.COLUMN_BASE_FEET_AGL, cloudLayer.baseFeetAgl);
+        values.put(CloudLayerEntry.COLUMN_BASE_METERS_AGL, cloudLayer.baseMetersAgl);
+        return values;
+    }
+
+    /**
+     * @return The METAR columns of the weather table, which show the latest observation next
+     * to the forecast for today
+     */
+    public ContentValues toWeatherValues() {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_METAR_RAW, rawText);
+        values.put(WeatherEntry.COLUMN_DEWPOINT_C, dewpointC);
+        values.put(WeatherEntry.COLUMN_DEWPOINT_F, dewpointF);
+        values.put(WeatherEntry.COLUMN_FLIGHT_CATEGORY, flightCategory);
+        values.put(WeatherEntry.COLUMN_VISIBILITY_MILES, visibilityMiles);
+        values.put(WeatherEntry.COLUMN_VISIBILITY_METERS, visibilityMeters);
+        return values;
+    }
+}
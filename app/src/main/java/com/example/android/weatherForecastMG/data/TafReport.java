@@ -0,0 +1,35 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.TafEntry;
+
+/**
+ * One TAF, as parsed from CheckWX by OpenWeatherJsonUtils and stored in the taf table.
+ * Instances are immutable.
+ */
+public final class TafReport {
+
+    /* ICAO code of the issuing station */
+    public final String station;
+    /* Time the TAF was issued in UTC milliseconds */
+    public final long issued;
+    public final String rawText;
+
+    public TafReport(String station, long issued, String rawText) {
+        this.station = station;
+        this.issued = issued;
+        this.rawText = rawText;
+    }
+
+    /**
+     * @return The row for this TAF in the taf table
+     */
+    public ContentValues toTafValues() {
+        ContentValues values = new ContentValues();
+        values.put(TafEntry.COLUMN_STATION, station);
+        values.put(TafEntry.COLUMN_ISSUED, issued);
+        values.put(TafEntry.COLUMN_RAW_TEXT, rawText);
+        return values;
+    }
+}
@@ -1,6 +1,7 @@
 
 package com.example.android.weatherForecastMG.data;
 
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
@@ -42,7 +43,82 @@ public class WeatherContract {
      */
     public static final String PATH_WEATHER = "weather";
 
-    /* Inner class that defines the table contents of the weather table */
+    /*
+     * Appended to the weather path for the URI that a sync stores a freshly downloaded forecast
+     * through. See WeatherEntry.UPSERT_URI.
+     */
+    public static final String PATH_UPSERT = "upsert";
+
+    /*
+     * Path for the locations we keep weather for, see LocationEntry. The weather of one location
+     * is below it, e.g. content://com.example.android.WeatherForecast/location/3/weather
+     */
+    public static final String PATH_LOCATION = "location";
+
+    /*
+     * Path for the 3-hour forecast entries, see HourlyEntry. Like the weather, the entries of
+     * one location are below it, e.g. content://com.example.android.WeatherForecast/location/3/hourly
+     */
+    public static final String PATH_HOURLY = "hourly";
+
+    /* Paths for the decoded aviation weather tables, see MetarEntry, CloudLayerEntry and TafEntry */
+    public static final String PATH_METAR = "metar";
+    public static final String PATH_CLOUD_LAYERS = "cloud_layers";
+    public static final String PATH_TAF = "taf";
+
+    /*
+     * Inner class that defines the table contents of the location table. Every location the user
+     * has picked is kept, so switching back to one shows its cached weather straight away, and
+     * every sync refreshes all of them.
+     */
+    public static final class LocationEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the location table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_LOCATION)
+                .build();
+
+        /* Used internally as the name of our location table. */
+        public static final String TABLE_NAME = "location";
+
+        /* The location as the user entered it in the settings, for example "Gdańsk" */
+        public static final String COLUMN_QUERY = "query";
+
+        /*
+         * Coordinates of the location, as reported by the forecast for it. Null until the
+         * location has been synced once.
+         */
+        public static final String COLUMN_LATITUDE = "latitude";
+        public static final String COLUMN_LONGITUDE = "longitude";
+
+        /*
+         * OpenWeatherMap's ID of the city, as reported by the forecast for it. Null until the
+         * location has been synced once. Lets us ask for many locations in one request.
+         */
+        public static final String COLUMN_OWM_ID = "owm_id";
+
+        /* When the full forecast of the location was last confirmed current, in UTC millis */
+        public static final String COLUMN_FORECAST_SYNCED = "forecast_synced";
+
+        /**
+         * Builds a URI for a single location.
+         *
+         * @param locationId _ID of the location
+         * @return Uri of the location
+         */
+        public static Uri buildLocationUri(long locationId) {
+            return ContentUris.withAppendedId(CONTENT_URI, locationId);
+        }
+    }
+
+    /*
+     * Inner class that defines the table contents of the weather table. Each row is the forecast
+     * for one day at one location.
+     *
+     * CONTENT_URI and the URIs built from it refer to the weather of the location the user has
+     * picked in the settings. The weather of any saved location can be reached through the
+     * buildWeatherUriForLocation methods.
+     */
     public static final class WeatherEntry implements BaseColumns {
 
         /* The base CONTENT_URI used to query the Weather table from the content provider */
@@ -50,9 +126,22 @@ public class WeatherContract {
                 .appendPath(PATH_WEATHER)
                 .build();
 
+        /*
+         * The URI to bulkInsert a freshly downloaded forecast into. Rather than inserting every
+         * row, the provider compares the rows with the ones it already has for the same dates
+         * and only writes the ones that changed. Rows from before today are removed. Observers
+         * of CONTENT_URI are notified once, and only if something actually changed.
+         */
+        public static final Uri UPSERT_URI = CONTENT_URI.buildUpon()
+                .appendPath(PATH_UPSERT)
+                .build();
+
         /* Used internally as the name of our weather table. */
         public static final String TABLE_NAME = "weather";
 
+        /* Name of the index covering the forecast list query, see WeatherDbMigrations */
+        public static final String INDEX_FORECAST_LIST = "weather_forecast_list";
+
         /*
          * The date column will store the UTC date that correlates to the local date for which
          * each particular weather row represents. For example, if you live in the Eastern
@@ -71,6 +160,9 @@ public class WeatherContract {
          */
         public static final String COLUMN_DATE = "date";
 
+        /* _ID of the location in the location table this forecast is for */
+        public static final String COLUMN_LOCATION_ID = "location_id";
+
         /* Weather ID as returned by API, used to identify the icon to be used */
         public static final String COLUMN_WEATHER_ID = "weather_id";
 
@@ -103,6 +195,9 @@ public class WeatherContract {
         public static final String COLUMN_VISIBILITY_MILES = "visibility_miles";
         public static final String COLUMN_VISIBILITY_METERS = "visibility_meters";
 
+        /* TAF data */
+        public static final String COLUMN_TAF_RAW = "taf_raw";
+
         /**
          * Builds a URI that adds the weather date to the end of the forecast content URI path.
          * This is used to query details about a single weather entry by date. This is what we
@@ -118,15 +213,209 @@ public class WeatherContract {
         }
 
         /**
-         * Returns just the selection part of the weather query from a normalized today value.
-         * This is used to get a weather forecast from today's date. To make this easy to use
-         * in compound selection, we embed today's date as an argument in the query.
+         * Builds a URI for the weather of a saved location.
+         *
+         * @param locationId _ID of the location
+         * @return Uri to query the weather of that location
+         */
+        public static Uri buildWeatherUriForLocation(long locationId) {
+            return LocationEntry.buildLocationUri(locationId).buildUpon()
+                    .appendPath(PATH_WEATHER)
+                    .build();
+        }
+
+        /**
+         * Builds a URI for the weather of a saved location on one date.
+         *
+         * @param locationId _ID of the location
+         * @param date       Normalized date in milliseconds
+         * @return Uri to query details about a single weather entry of that location
+         */
+        public static Uri buildWeatherUriForLocationWithDate(long locationId, long date) {
+            return buildWeatherUriForLocation(locationId).buildUpon()
+                    .appendPath(Long.toString(date))
+                    .build();
+        }
+
+        /**
+         * Builds the URI a sync stores the forecast of a saved location through. It works like
+         * {@link #UPSERT_URI}, but for that location.
+         *
+         * @param locationId _ID of the location
+         * @return Uri to bulkInsert the forecast of that location into
+         */
+        public static Uri buildUpsertUriForLocation(long locationId) {
+            return buildWeatherUriForLocation(locationId).buildUpon()
+                    .appendPath(PATH_UPSERT)
+                    .build();
+        }
+
+        /*
+         * The selection part of the weather query for today onwards, to be used together with
+         * getSelectionArgsForTodayOnwards. Today's date is passed as an argument rather than
+         * written into the SQL, so the SQL stays the same from one day to the next and SQLite
+         * can reuse the statement it compiled for it.
+         */
+        public static final String SQL_SELECT_TODAY_ONWARDS = COLUMN_DATE + " >= ?";
+
+        /**
+         * Returns the selection arguments that go with {@link #SQL_SELECT_TODAY_ONWARDS}.
+         *
+         * @return Today's normalized date in the local time zone, which the rows are keyed by,
+         * as the only selection argument
+         */
+        public static String[] getSelectionArgsForTodayOnwards() {
+            long normalizedToday = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+            return new String[]{Long.toString(normalizedToday)};
+        }
+    }
+
+    /*
+     * Inner class that defines the table contents of the hourly table. Each row is one 3-hour
+     * entry of the OpenWeatherMap forecast for one location, as it was downloaded. The rows of
+     * the weather table are rolled up from these, one per day.
+     *
+     * Like WeatherEntry, CONTENT_URI refers to the location the user has picked in the settings.
+     */
+    public static final class HourlyEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the hourly table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_HOURLY)
+                .build();
+
+        /* Used internally as the name of our hourly table. */
+        public static final String TABLE_NAME = "hourly";
+
+        /* _ID of the location in the location table, the same column as in the weather table */
+        public static final String COLUMN_LOCATION_ID = WeatherEntry.COLUMN_LOCATION_ID;
+
+        /* Start of the 3-hour slot in UTC milliseconds. Not normalized. */
+        public static final String COLUMN_TIME = "time";
+
+        /* Weather ID as returned by API, used to identify the icon to be used */
+        public static final String COLUMN_WEATHER_ID = "weather_id";
+
+        /* Temperature at the start of the slot, and its range over the slot, stored as floats */
+        public static final String COLUMN_TEMP = "temp";
+        public static final String COLUMN_MIN_TEMP = "min";
+        public static final String COLUMN_MAX_TEMP = "max";
+
+        /* Humidity is stored as a float representing percentage */
+        public static final String COLUMN_HUMIDITY = "humidity";
+
+        /* Pressure is stored as a float representing hPa */
+        public static final String COLUMN_PRESSURE = "pressure";
+
+        /* Wind speed is stored as a float representing wind speed in m/s */
+        public static final String COLUMN_WIND_SPEED = "wind";
+
+        /* Meteorological degrees (e.g, 0 is north, 180 is south), stored as a float */
+        public static final String COLUMN_DEGREES = "degrees";
+
+        /**
+         * Builds a URI for the 3-hour entries of a saved location. A sync bulkInserts the whole
+         * downloaded forecast into it, which replaces the entries stored for that location.
          *
-         * @return The selection part of the weather query for today onwards
+         * @param locationId _ID of the location
+         * @return Uri to query or store the 3-hour entries of that location
          */
-        public static String getSqlSelectForTodayOnwards() {
-            long normalizedUtcNow = WeatherForecastDateUtils.normalizeDate(System.currentTimeMillis());
-            return WeatherContract.WeatherEntry.COLUMN_DATE + " >= " + normalizedUtcNow;
+        public static Uri buildHourlyUriForLocation(long locationId) {
+            return LocationEntry.buildLocationUri(locationId).buildUpon()
+                    .appendPath(PATH_HOURLY)
+                    .build();
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Inner class that defines the table contents of the metar table. Each row is one decoded
+     * METAR observation, identified by its station and the time it was observed.
+     */
+    public static final class MetarEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the metar table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_METAR)
+                .build();
+
+        /* Used internally as the name of our metar table. */
+        public static final String TABLE_NAME = "metar";
+
+        /* ICAO code of the reporting station, for example "EPWA" */
+        public static final String COLUMN_STATION = "station";
+
+        /* Time of the observation in UTC milliseconds */
+        public static final String COLUMN_OBSERVED = "observed";
+
+        /* The METAR as it was reported */
+        public static final String COLUMN_RAW_TEXT = "raw_text";
+
+        /* Present weather codes, separated by spaces, for example "-RA BR" */
+        public static final String COLUMN_CONDITIONS = "conditions";
+
+        /* Dew point in °C and °F, stored as floats */
+        public static final String COLUMN_DEWPOINT_C = "dewpoint_c";
+        public static final String COLUMN_DEWPOINT_F = "dewpoint_f";
+
+        /* VFR, MVFR, IFR or LIFR */
+        public static final String COLUMN_FLIGHT_CATEGORY = "flight_category";
+
+        /* Visibility as reported, for example "10+" miles or "16,093" meters */
+        public static final String COLUMN_VISIBILITY_MILES = "visibility_miles";
+        public static final String COLUMN_VISIBILITY_METERS = "visibility_meters";
+    }
+
+    /*
+     * Inner class that defines the table contents of the cloud_layers table. Each row is one
+     * cloud layer of a METAR observation, which it shares the station and observation time with.
+     */
+    public static final class CloudLayerEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the cloud_layers table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_CLOUD_LAYERS)
+                .build();
+
+        /* Used internally as the name of our cloud_layers table. */
+        public static final String TABLE_NAME = "cloud_layers";
+
+        /* Station and observation time of the METAR this layer belongs to */
+        public static final String COLUMN_STATION = "station";
+        public static final String COLUMN_OBSERVED = "observed";
+
+        /* Position of the layer in the METAR, lowest first */
+        public static final String COLUMN_LAYER = "layer";
+
+        /* Cover code and its description, for example "BKN" and "Broken" */
+        public static final String COLUMN_CODE = "code";
+        public static final String COLUMN_TEXT = "text";
+
+        /* Height of the base of the layer above ground level, stored as integers */
+        public static final String COLUMN_BASE_FEET_AGL = "base_feet_agl";
+        public static final String COLUMN_BASE_METERS_AGL = "base_meters_agl";
+    }
+
+    /*
+     * Inner class that defines the table contents of the taf table. Each row is one TAF,
+     * identified by its station and the time it was issued.
+     */
+    public static final class TafEntry implements BaseColumns {
+
+        /* The base CONTENT_URI used to query the taf table from the content provider */
+        public static final Uri CONTENT_URI = BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_TAF)
+                .build();
+
+        /* Used internally as the name of our taf table. */
+        public static final String TABLE_NAME = "taf";
+
+        /* ICAO code of the issuing station */
+        public static final String COLUMN_STATION = "station";
+
+        /* Time the TAF was issued in UTC milliseconds */
+        public static final String COLUMN_ISSUED = "issued";
+
+        /* The TAF as it was issued */
+        public static final String COLUMN_RAW_TEXT = "raw_text";
+    }
+}
@@ -1,11 +1,12 @@
 
 package com.example.android.weatherForecastMG.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-
-import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+import android.os.Build;
 
 /**
  * Manages a local database for weather data.
@@ -28,72 +29,156 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      * versions of WeatherForecast could cause everything to break. Although that is certainly a rare
      * use-case, we wanted to watch out for it and warn you what could happen if you mistakenly
      * version your databases.
+     *
+     * The version is now kept by WeatherDbMigrations, which bumps it with every step it adds.
      */
-    private static final int DATABASE_VERSION = 3;
-
-    public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
-    }
+    private static final int DATABASE_VERSION = WeatherDbMigrations.LATEST_VERSION;
 
     /**
-     * Called when the database is created for the first time. This is where the creation of
-     * tables and the initial population of the tables should happen.
-     *
-     * @param sqLiteDatabase The database.
+     * Connection settings applied every time the database is opened. They are only applied to
+     * the connection that writes; SQLite's defaults apply to the extra connections Android opens
+     * for reading in WAL mode.
      */
-    @Override
-    public void onCreate(SQLiteDatabase sqLiteDatabase) {
+    public static final class ConnectionSettings {
+
+        /* Use SQLite's own value for a setting */
+        public static final int SQLITE_DEFAULT = -1;
+
+        /* Values for synchronous, see https://www.sqlite.org/pragma.html#pragma_synchronous */
+        public static final int SYNCHRONOUS_OFF = 0;
+        public static final int SYNCHRONOUS_NORMAL = 1;
+        public static final int SYNCHRONOUS_FULL = 2;
 
         /*
-         * This String will contain a simple SQL statement that will create a table that will
-         * cache our weather data.
+         * The settings WeatherForecast uses. In WAL mode, NORMAL only syncs to disk when the log
+         * is checkpointed. A crash can lose the last sync but can't corrupt the database, and
+         * the next sync just downloads that data again. A 500 page cache (about 2 MB) holds the
+         * whole weather table. Memory mapping saves copying pages when reading.
          */
-        final String SQL_CREATE_WEATHER_TABLE =
+        public static final ConnectionSettings DEFAULT =
+                new ConnectionSettings(true, 500, SYNCHRONOUS_NORMAL, 4 * 1024 * 1024);
+
+        /* Whether to use write-ahead logging rather than a rollback journal */
+        final boolean writeAheadLogging;
+        /* Pages of page cache per connection, or SQLITE_DEFAULT */
+        final int cacheSizePages;
+        /* One of the SYNCHRONOUS_ constants, or SQLITE_DEFAULT */
+        final int synchronous;
+        /* Bytes of the database file to memory map, or SQLITE_DEFAULT */
+        final long mmapSizeBytes;
+
+        public ConnectionSettings(boolean writeAheadLogging, int cacheSizePages, int synchronous,
+                                  long mmapSizeBytes) {
+            this.writeAheadLogging = writeAheadLogging;
+            this.cacheSizePages = cacheSizePages;
+            this.synchronous = synchronous;
+            this.mmapSizeBytes = mmapSizeBytes;
+        }
+    }
 
-                "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+    private final Context mContext;
+    private final ConnectionSettings mConnectionSettings;
 
-                /*
-                 * WeatherEntry did not explicitly declare a column called "_ID". However,
-                 * WeatherEntry implements the interface, "BaseColumns", which does have a field
-                 * named "_ID". We use that here to designate our table's primary key.
-                 */
-                WeatherEntry._ID               + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+    public WeatherDbHelper(Context context) {
+        this(context, ConnectionSettings.DEFAULT);
+    }
 
-                WeatherEntry.COLUMN_DATE       + " INTEGER NOT NULL, "                 +
+    public WeatherDbHelper(Context context, ConnectionSettings connectionSettings) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
+        mConnectionSettings = connectionSettings;
+    }
 
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"                  +
+    /**
+     * Called when the database connection is being configured, before it is created, upgraded
+     * or opened.
+     * <p>
+     * With the default rollback journal, a sync's write transaction locks readers out of the
+     * database until it commits, so the forecast list stalls while a sync is writing. In
+     * write-ahead logging (WAL) mode readers keep reading the last committed data while the
+     * write is in progress, so they never wait on a sync.
+     *
+     * @param db The database.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        if (mConnectionSettings.writeAheadLogging) {
+            db.enableWriteAheadLogging();
+        }
+        applyPragmas(db);
+    }
 
-                WeatherEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                    +
+    /**
+     * onConfigure only exists from Jelly Bean, so on older versions the connection is set up
+     * here instead. WAL itself needs Honeycomb.
+     *
+     * @param db The database.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) return;
+
+        if (mConnectionSettings.writeAheadLogging
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            enableWriteAheadLoggingHoneycomb(db);
+        }
+        applyPragmas(db);
+    }
 
-                WeatherEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "                    +
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void enableWriteAheadLoggingHoneycomb(SQLiteDatabase db) {
+        db.enableWriteAheadLogging();
+    }
 
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "                    +
-                WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
+    private void applyPragmas(SQLiteDatabase db) {
+        if (mConnectionSettings.cacheSizePages != ConnectionSettings.SQLITE_DEFAULT) {
+            db.execSQL("PRAGMA cache_size = " + mConnectionSettings.cacheSizePages);
+        }
 
-                /*
-                 * To ensure this table can only contain one weather entry per date, we declare
-                 * the date column to be unique. We also specify "ON CONFLICT REPLACE". This tells
-                 * SQLite that if we have a weather entry for a certain date and we attempt to
-                 * insert another weather entry with that date, we replace the old weather entry.
-                 */
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+        if (mConnectionSettings.synchronous != ConnectionSettings.SQLITE_DEFAULT) {
+            db.execSQL("PRAGMA synchronous = " + mConnectionSettings.synchronous);
+        }
 
         /*
-         * After we've spelled out our SQLite table creation statement above, we actually execute
-         * that SQL with the execSQL method of our SQLite database object.
+         * mmap_size needs SQLite 3.7.17, which ships with Lollipop. It also reports the size it
+         * settled on as a row, and Android only lets statements that return rows run through
+         * rawQuery.
          */
-        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        if (mConnectionSettings.mmapSizeBytes != ConnectionSettings.SQLITE_DEFAULT
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            Cursor cursor = db.rawQuery(
+                    "PRAGMA mmap_size = " + mConnectionSettings.mmapSizeBytes, null);
+            try {
+                cursor.moveToFirst();
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Called when the database is created for the first time. This is where the creation of
+     * tables and the initial population of the tables should happen.
+     * <p>
+     * We create the oldest schema WeatherDbMigrations can upgrade and then run its steps, so a
+     * new install ends up with exactly the same tables as an upgraded one.
+     *
+     * @param sqLiteDatabase The database.
+     */
+    @Override
+    public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        WeatherDbMigrations.createBaseSchema(sqLiteDatabase);
+        WeatherDbMigrations.migrate(mContext, sqLiteDatabase, WeatherDbMigrations.BASE_VERSION,
+                DATABASE_VERSION);
     }
 
     /**
-     * This database is only a cache for online data, so its upgrade policy is simply to discard
-     * the data and call through to onCreate to recreate the table. Note that this only fires if
-     * you change the version number for your database (in our case, DATABASE_VERSION). It does NOT
-     * depend on the version number for your application found in your app/build.gradle file. If
-     * you want to update the schema without wiping data, commenting out the current body of this
-     * method should be your top priority before modifying this method.
+     * Upgrades the schema one version at a time with the steps in WeatherDbMigrations. The rows
+     * we already have are kept, so the app still has a forecast to show after an upgrade, even
+     * offline. Databases older than any step we have are only a cache, so they are dropped and
+     * created again.
      *
      * @param sqLiteDatabase Database that is being upgraded
      * @param oldVersion     The old database version
@@ -101,7 +186,23 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < WeatherDbMigrations.BASE_VERSION) {
+            WeatherDbMigrations.recreate(mContext, sqLiteDatabase);
+        } else {
+            WeatherDbMigrations.migrate(mContext, sqLiteDatabase, oldVersion, newVersion);
+        }
+    }
+
+    /**
+     * Going back to an older version of the app leaves a schema it doesn't know. Since the
+     * database is only a cache, we discard it rather than fail to open it.
+     *
+     * @param sqLiteDatabase Database that is being downgraded
+     * @param oldVersion     The old database version
+     * @param newVersion     The new database version
+     */
+    @Override
+    public void onDowngrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
+        WeatherDbMigrations.recreate(mContext, sqLiteDatabase);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,355 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.CloudLayerEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.HourlyEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.LocationEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.MetarEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.TafEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+/**
+ * The steps that take the weather database from one version of its schema to the next.
+ * <p>
+ * Each step upgrades the schema by exactly one version, and keeps the rows already stored. An
+ * upgrade runs every step between the installed version and the current one, in order. A fresh
+ * install creates the oldest schema we still know how to upgrade (see
+ * {@link #createBaseSchema(SQLiteDatabase)}) and runs every step after it. That way a new install
+ * and an upgraded one always end up with exactly the same schema.
+ * <p>
+ * To change the schema, add a step to the end of {@link #MIGRATIONS}; WeatherDbHelper's
+ * DATABASE_VERSION follows {@link #LATEST_VERSION}. Never change a step that has already shipped.
+ */
+final class WeatherDbMigrations {
+
+    /*
+     * The version created by createBaseSchema. Databases older than this have no steps that
+     * upgrade them, so they are dropped and created again.
+     */
+    static final int BASE_VERSION = 3;
+
+    /**
+     * One step of the schema history. It upgrades the schema from toVersion - 1 to toVersion.
+     */
+    abstract static class Migration {
+
+        final int toVersion;
+
+        Migration(int toVersion) {
+            this.toVersion = toVersion;
+        }
+
+        /**
+         * @param context Lets a step read what it needs from the preferences
+         * @param db      The database.
+         */
+        abstract void migrate(Context context, SQLiteDatabase db);
+    }
+
+    /* Every step since BASE_VERSION, oldest first */
+    private static final Migration[] MIGRATIONS = {
+
+            /* Version 4 stores the METAR observation for today alongside the forecast */
+            new Migration(4) {
+                @Override
+                void migrate(Context context, SQLiteDatabase db) {
+                    addColumn(db, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_METAR_RAW, "TEXT");
+                    addColumn(db, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DEWPOINT_C, "REAL");
+                    addColumn(db, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DEWPOINT_F, "REAL");
+                    addColumn(db, WeatherEntry.TABLE_NAME,
+                            WeatherEntry.COLUMN_FLIGHT_CATEGORY, "TEXT");
+                    /* CheckWX reports visibility as text, for example "10+" or "16,093" */
+                    addColumn(db, WeatherEntry.TABLE_NAME,
+                            WeatherEntry.COLUMN_VISIBILITY_MILES, "TEXT");
+                    addColumn(db, WeatherEntry.TABLE_NAME,
+                            WeatherEntry.COLUMN_VISIBILITY_METERS, "TEXT");
+                }
+            },
+
+            /* Version 5 stores the TAF for today next to the METAR */
+            new Migration(5) {
+                @Override
+                void migrate(Context context, SQLiteDatabase db) {
+                    addColumn(db, WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_TAF_RAW, "TEXT");
+                }
+            },
+
+            /* Version 6 keeps decoded METARs, their cloud layers and TAFs in tables of their own */
+            new Migration(6) {
+                @Override
+                void migrate(Context context, SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + MetarEntry.TABLE_NAME + " (" +
+                            MetarEntry._ID                      + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            MetarEntry.COLUMN_STATION           + " TEXT NOT NULL, " +
+                            MetarEntry.COLUMN_OBSERVED          + " INTEGER NOT NULL, " +
+                            MetarEntry.COLUMN_RAW_TEXT          + " TEXT NOT NULL, " +
+                            MetarEntry.COLUMN_CONDITIONS        + " TEXT, " +
+                            MetarEntry.COLUMN_DEWPOINT_C        + " REAL, " +
+                            MetarEntry.COLUMN_DEWPOINT_F        + " REAL, " +
+                            MetarEntry.COLUMN_FLIGHT_CATEGORY   + " TEXT, " +
+                            MetarEntry.COLUMN_VISIBILITY_MILES  + " TEXT, " +
+                            MetarEntry.COLUMN_VISIBILITY_METERS + " TEXT, " +
+                            " UNIQUE (" + MetarEntry.COLUMN_STATION + ", " +
+                            MetarEntry.COLUMN_OBSERVED + ") ON CONFLICT REPLACE);");
+
+                    db.execSQL("CREATE TABLE " + CloudLayerEntry.TABLE_NAME + " (" +
+                            CloudLayerEntry._ID                     + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            CloudLayerEntry.COLUMN_STATION          + " TEXT NOT NULL, " +
+                            CloudLayerEntry.COLUMN_OBSERVED         + " INTEGER NOT NULL, " +
+                            CloudLayerEntry.COLUMN_LAYER            + " INTEGER NOT NULL, " +
+                            CloudLayerEntry.COLUMN_CODE             + " TEXT NOT NULL, " +
+                            CloudLayerEntry.COLUMN_TEXT             + " TEXT, " +
+                            CloudLayerEntry.COLUMN_BASE_FEET_AGL    + " INTEGER, " +
+                            CloudLayerEntry.COLUMN_BASE_METERS_AGL  + " INTEGER, " +
+                            /* Also serves lookups of all the layers of one observation */
+                            " UNIQUE (" + CloudLayerEntry.COLUMN_STATION + ", " +
+                            CloudLayerEntry.COLUMN_OBSERVED + ", " +
+                            CloudLayerEntry.COLUMN_LAYER + ") ON CONFLICT REPLACE);");
+
+                    db.execSQL("CREATE TABLE " + TafEntry.TABLE_NAME + " (" +
+                            TafEntry._ID             + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            TafEntry.COLUMN_STATION  + " TEXT NOT NULL, " +
+                            TafEntry.COLUMN_ISSUED   + " INTEGER NOT NULL, " +
+                            TafEntry.COLUMN_RAW_TEXT + " TEXT NOT NULL, " +
+                            " UNIQUE (" + TafEntry.COLUMN_STATION + ", " +
+                            TafEntry.COLUMN_ISSUED + ") ON CONFLICT REPLACE);");
+                }
+            },
+
+            /*
+             * Version 7 keeps the weather of every location the user picks. Weather rows belong
+             * to a location, and are unique per location and date rather than per date. SQLite
+             * can't change a table's constraints, so the weather table is rebuilt. The rows we
+             * have are for the location currently in the preferences, so they move to it.
+             */
+            new Migration(7) {
+                @Override
+                void migrate(Context context, SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+                            LocationEntry._ID              + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            LocationEntry.COLUMN_QUERY     + " TEXT NOT NULL, " +
+                            LocationEntry.COLUMN_LATITUDE  + " REAL, " +
+                            LocationEntry.COLUMN_LONGITUDE + " REAL, " +
+                            " UNIQUE (" + LocationEntry.COLUMN_QUERY + "));");
+
+                    ContentValues location = new ContentValues();
+                    location.put(LocationEntry.COLUMN_QUERY,
+                            WeatherForecastPreferences.getPreferredWeatherLocation(context));
+                    if (WeatherForecastPreferences.isLocationLatLonAvailable(context)) {
+                        double[] coordinates =
+                                WeatherForecastPreferences.getLocationCoordinates(context);
+                        location.put(LocationEntry.COLUMN_LATITUDE, coordinates[0]);
+                        location.put(LocationEntry.COLUMN_LONGITUDE, coordinates[1]);
+                    }
+                    long locationId = db.insertOrThrow(LocationEntry.TABLE_NAME, null, location);
+
+                    String columns = WeatherEntry.COLUMN_DATE + ", " +
+                            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                            WeatherEntry.COLUMN_HUMIDITY + ", " +
+                            WeatherEntry.COLUMN_PRESSURE + ", " +
+                            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                            WeatherEntry.COLUMN_DEGREES + ", " +
+                            WeatherEntry.COLUMN_METAR_RAW + ", " +
+                            WeatherEntry.COLUMN_DEWPOINT_C + ", " +
+                            WeatherEntry.COLUMN_DEWPOINT_F + ", " +
+                            WeatherEntry.COLUMN_FLIGHT_CATEGORY + ", " +
+                            WeatherEntry.COLUMN_VISIBILITY_MILES + ", " +
+                            WeatherEntry.COLUMN_VISIBILITY_METERS + ", " +
+                            WeatherEntry.COLUMN_TAF_RAW;
+
+                    String rebuiltTable = WeatherEntry.TABLE_NAME + "_v7";
+                    db.execSQL("CREATE TABLE " + rebuiltTable + " (" +
+                            WeatherEntry._ID                      + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            WeatherEntry.COLUMN_LOCATION_ID       + " INTEGER NOT NULL, " +
+                            WeatherEntry.COLUMN_DATE              + " INTEGER NOT NULL, " +
+                            WeatherEntry.COLUMN_WEATHER_ID        + " INTEGER NOT NULL, " +
+                            WeatherEntry.COLUMN_MIN_TEMP          + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_MAX_TEMP          + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_HUMIDITY          + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_PRESSURE          + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_WIND_SPEED        + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_DEGREES           + " REAL NOT NULL, " +
+                            WeatherEntry.COLUMN_METAR_RAW         + " TEXT, " +
+                            WeatherEntry.COLUMN_DEWPOINT_C        + " REAL, " +
+                            WeatherEntry.COLUMN_DEWPOINT_F        + " REAL, " +
+                            WeatherEntry.COLUMN_FLIGHT_CATEGORY   + " TEXT, " +
+                            WeatherEntry.COLUMN_VISIBILITY_MILES  + " TEXT, " +
+                            WeatherEntry.COLUMN_VISIBILITY_METERS + " TEXT, " +
+                            WeatherEntry.COLUMN_TAF_RAW           + " TEXT, " +
+                            /* One entry per date for each location, replacing the old one */
+                            " UNIQUE (" + WeatherEntry.COLUMN_LOCATION_ID + ", " +
+                            WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);");
+
+                    db.execSQL("INSERT INTO " + rebuiltTable + " (" +
+                            WeatherEntry.COLUMN_LOCATION_ID + ", " + columns + ")" +
+                            " SELECT " + locationId + ", " + columns +
+                            " FROM " + WeatherEntry.TABLE_NAME);
+                    db.execSQL("DROP TABLE " + WeatherEntry.TABLE_NAME);
+                    db.execSQL("ALTER TABLE " + rebuiltTable +
+                            " RENAME TO " + WeatherEntry.TABLE_NAME);
+                }
+            },
+
+            /*
+             * Version 8 remembers the OpenWeatherMap city ID of each location and when its
+             * forecast was last synced, so locations can be refreshed together
+             */
+            new Migration(8) {
+                @Override
+                void migrate(Context context, SQLiteDatabase db) {
+                    addColumn(db, LocationEntry.TABLE_NAME, LocationEntry.COLUMN_OWM_ID, "INTEGER");
+                    addColumn(db, LocationEntry.TABLE_NAME,
+                            LocationEntry.COLUMN_FORECAST_SYNCED, "INTEGER");
+                }
+            },
+
+            /* Version 9 keeps every 3-hour entry of the forecast, which the days are rolled up from */
+            new Migration(9) {
+                @Override
+                void migrate(Context context, SQLiteDatabase db) {
+                    db.execSQL("CREATE TABLE " + HourlyEntry.TABLE_NAME + " (" +
+                            HourlyEntry._ID                + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                            HourlyEntry.COLUMN_LOCATION_ID + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_TIME        + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_WEATHER_ID  + " INTEGER NOT NULL, " +
+                            HourlyEntry.COLUMN_TEMP        + " REAL NOT NULL, " +
+                            HourlyEntry.COLUMN_MIN_TEMP    + " REAL NOT NULL, " +
+                            HourlyEntry.COLUMN_MAX_TEMP    + " REAL NOT NULL, " +
+                            HourlyEntry.COLUMN_HUMIDITY    + " REAL NOT NULL, " +
+                            HourlyEntry.COLUMN_PRESSURE    + " REAL NOT NULL, " +
+                            HourlyEntry.COLUMN_WIND_SPEED  + " REAL NOT NULL, " +
+                            HourlyEntry.COLUMN_DEGREES     + " REAL NOT NULL, " +
+                            /* Also serves reading the entries of one location in time order */
+                            " UNIQUE (" + HourlyEntry.COLUMN_LOCATION_ID + ", " +
+                            HourlyEntry.COLUMN_TIME + ") ON CONFLICT REPLACE);");
+                }
+            },
+
+            /*
+             * Version 10 adds an index covering the forecast list. The list asks for the date,
+             * weather ID, min and max of one location from today onwards, in date order. With the
+             * location and date first, SQLite finds today's row, reads the list off the index in
+             * order and never touches the table. Every index also holds the _ID, so checking
+             * whether there is any forecast from today is covered as well.
+             */
+            new Migration(10) {
+                @Override
+                void migrate(Context context, SQLiteDatabase db) {
+                    db.execSQL("CREATE INDEX " + WeatherEntry.INDEX_FORECAST_LIST +
+                            " ON " + WeatherEntry.TABLE_NAME + " (" +
+                            WeatherEntry.COLUMN_LOCATION_ID + ", " +
+                            WeatherEntry.COLUMN_DATE + ", " +
+                            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                            WeatherEntry.COLUMN_MAX_TEMP + ");");
+                }
+            }
+    };
+
+    /* The version the database has after every step has run */
+    static final int LATEST_VERSION = BASE_VERSION + MIGRATIONS.length;
+
+    private WeatherDbMigrations() {
+    }
+
+    /**
+     * Creates the weather table the way it was at BASE_VERSION. Call {@link #migrate} afterwards
+     * to bring it up to date.
+     *
+     * @param db The database.
+     */
+    static void createBaseSchema(SQLiteDatabase db) {
+
+        /*
+         * This String will contain a simple SQL statement that will create a table that will
+         * cache our weather data.
+         */
+        final String SQL_CREATE_WEATHER_TABLE =
+
+                "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+
+                /*
+                 * WeatherEntry did not explicitly declare a column called "_ID". However,
+                 * WeatherEntry implements the interface, "BaseColumns", which does have a field
+                 * named "_ID". We use that here to designate our table's primary key.
+                 */
+                WeatherEntry._ID               + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+
+                WeatherEntry.COLUMN_DATE       + " INTEGER NOT NULL, "                 +
+
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL,"                  +
+
+                WeatherEntry.COLUMN_MIN_TEMP   + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_MAX_TEMP   + " REAL NOT NULL, "                    +
+
+                WeatherEntry.COLUMN_HUMIDITY   + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_PRESSURE   + " REAL NOT NULL, "                    +
+
+                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, "                    +
+                WeatherEntry.COLUMN_DEGREES    + " REAL NOT NULL, "                    +
+
+                /*
+                 * To ensure this table can only contain one weather entry per date, we declare
+                 * the date column to be unique. We also specify "ON CONFLICT REPLACE". This tells
+                 * SQLite that if we have a weather entry for a certain date and we attempt to
+                 * insert another weather entry with that date, we replace the old weather entry.
+                 */
+                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ") ON CONFLICT REPLACE);";
+
+        /*
+         * After we've spelled out our SQLite table creation statement above, we actually execute
+         * that SQL with the execSQL method of our SQLite database object.
+         */
+        db.execSQL(SQL_CREATE_WEATHER_TABLE);
+    }
+
+    /**
+     * Drops everything and creates the latest schema from scratch. Used when there are no steps
+     * to upgrade a database, since it only caches data we can download again.
+     *
+     * @param context Passed on to the steps
+     * @param db      The database.
+     */
+    static void recreate(Context context, SQLiteDatabase db) {
+        db.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + HourlyEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + MetarEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + CloudLayerEntry.TABLE_NAME);
+        db.execSQL("DROP TABLE IF EXISTS " + TafEntry.TABLE_NAME);
+        createBaseSchema(db);
+        migrate(context, db, BASE_VERSION, LATEST_VERSION);
+    }
+
+    /**
+     * Runs every step after oldVersion up to and including newVersion, in order. SQLiteOpenHelper
+     * already runs onCreate and onUpgrade inside a transaction, so either every step is applied
+     * or none is.
+     *
+     * @param context    Passed on to the steps
+     * @param db         The database.
+     * @param oldVersion The version the schema is at now. Must be at least BASE_VERSION.
+     * @param newVersion The version to bring it to
+     */
+    static void migrate(Context context, SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < BASE_VERSION || newVersion > LATEST_VERSION) {
+            throw new IllegalArgumentException("No migration from version " + oldVersion
+                    + " to " + newVersion);
+        }
+
+        for (Migration migration : MIGRATIONS) {
+            if (migration.toVersion > oldVersion && migration.toVersion <= newVersion) {
+                migration.migrate(context, db);
+            }
+        }
+    }
+
+    private static void addColumn(SQLiteDatabase db, String table, String column, String type) {
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+}
@@ -4,9 +4,21 @@ package com.example.android.weatherForecastMG.data;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
+import android.support.annotation.VisibleForTesting;
 
 import com.example.android.weatherForecastMG.R;
 
+/**
+ * Reads and writes the user's settings and the few values WeatherForecast keeps alongside them.
+ * <p>
+ * The getters are called for every temperature and wind speed formatted, from the main thread
+ * as well as from loaders and the sync. Rather than going to SharedPreferences and resolving the
+ * keys from resources each time, they read a {@link Snapshot} of all the values held in memory.
+ * The snapshot is built the first time a getter is called and built again whenever a preference
+ * changes: right away for the writes made through this class, and through an
+ * OnSharedPreferenceChangeListener for the ones made elsewhere, such as in the SettingsFragment.
+ * A snapshot is immutable and published through a volatile field, so reading it takes no lock.
+ */
 public final class WeatherForecastPreferences {
 
     /*
@@ -17,6 +29,142 @@ public final class WeatherForecastPreferences {
     public static final String PREF_COORD_LAT = "coord_lat";
     public static final String PREF_COORD_LONG = "coord_long";
 
+    /*
+     * What the sync schedule is decided from (see AdaptiveSyncPolicy), and what was decided
+     * last. These are only read once per sync, so they are read straight from SharedPreferences
+     * rather than kept in the snapshot.
+     */
+    private static final String PREF_SYNC_CHANGE_HISTORY = "sync_change_history";
+    private static final String PREF_SYNC_CHANGE_SAMPLES = "sync_change_samples";
+    private static final String PREF_LAST_METAR_OBSERVED = "last_metar_observed";
+    private static final String PREF_LAST_APP_OPENED = "last_app_opened";
+    private static final String PREF_SYNC_INTERVAL_SECONDS = "sync_interval_seconds";
+
+    /* The current snapshot, or null until a getter first asks for it */
+    private static volatile Snapshot sSnapshot;
+
+    /* Used to rebuild the snapshot when a preference changes */
+    private static Context sAppContext;
+
+    /*
+     * SharedPreferences only keeps weak references to its listeners, so ours has to be held
+     * here for as long as the process lives.
+     */
+    private static final SharedPreferences.OnSharedPreferenceChangeListener sListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+                    /* The values the sync keeps for its schedule aren't in the snapshot */
+                    if (PREF_SYNC_CHANGE_HISTORY.equals(key)
+                            || PREF_SYNC_CHANGE_SAMPLES.equals(key)
+                            || PREF_LAST_METAR_OBSERVED.equals(key)
+                            || PREF_LAST_APP_OPENED.equals(key)
+                            || PREF_SYNC_INTERVAL_SECONDS.equals(key)) {
+                        return;
+                    }
+                    refresh();
+                }
+            };
+
+    /**
+     * All the preferences read by the getters below, as they were when it was built.
+     */
+    private static final class Snapshot {
+        final String location;
+        final boolean isMetric;
+        final boolean hasCoordinates;
+        final double latitude;
+        final double longitude;
+        final boolean notificationsEnabled;
+        final long lastNotificationTime;
+
+        Snapshot(Context context, SharedPreferences sp) {
+            location = sp.getString(context.getString(R.string.pref_location_key),
+                    context.getString(R.string.pref_location_default));
+
+            String metric = context.getString(R.string.pref_units_metric);
+            isMetric = metric.equals(sp.getString(context.getString(R.string.pref_units_key), metric));
+
+            /*
+             * This is a hack we have to resort to since you can't store doubles in
+             * SharedPreferences.
+             *
+             * Double.doubleToLongBits returns an integer corresponding to the bits of the given
+             * IEEE 754 double precision value.
+             *
+             * Double.longBitsToDouble does the opposite, converting a long (that represents a
+             * double) into the double itself.
+             */
+            hasCoordinates = sp.contains(PREF_COORD_LAT) && sp.contains(PREF_COORD_LONG);
+            latitude = Double
+                    .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
+            longitude = Double
+                    .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
+
+            /*
+             * In WeatherForecast, the user has the ability to say whether she would like
+             * notifications enabled or not. If no preference has been chosen, we use the bool
+             * stored in bools.xml.
+             */
+            notificationsEnabled = sp.getBoolean(
+                    context.getString(R.string.pref_enable_notifications_key),
+                    context.getResources().getBoolean(R.bool.show_notifications_by_default));
+
+            lastNotificationTime = sp.getLong(context.getString(R.string.pref_last_notification), 0);
+        }
+    }
+
+    /*
+     * Returns the current snapshot, building it and starting to listen for changes the first
+     * time.
+     */
+    private static Snapshot getSnapshot(Context context) {
+        Snapshot snapshot = sSnapshot;
+        if (snapshot != null) return snapshot;
+
+        synchronized (WeatherForecastPreferences.class) {
+            if (sSnapshot == null) {
+                sAppContext = context.getApplicationContext();
+                PreferenceManager.getDefaultSharedPreferences(sAppContext)
+                        .registerOnSharedPreferenceChangeListener(sListener);
+                refresh();
+            }
+            return sSnapshot;
+        }
+    }
+
+    /*
+     * Builds a new snapshot from SharedPreferences. Refreshes are serialized so that an older
+     * snapshot can never replace a newer one. SharedPreferences.Editor.apply updates the values
+     * in memory before it returns, so the setters below can refresh right after applying.
+     */
+    private static void refresh() {
+        synchronized (WeatherForecastPreferences.class) {
+            /* Nothing to refresh before a getter has asked for the snapshot */
+            if (sAppContext == null) return;
+
+            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(sAppContext);
+            sSnapshot = new Snapshot(sAppContext, sp);
+        }
+    }
+
+    /**
+     * Forgets the snapshot and stops listening for changes, so the next getter builds a new
+     * snapshot from the preferences of the context it is given. In an app there is only ever one
+     * application context, but every unit test gets a new one.
+     */
+    @VisibleForTesting
+    public static void resetSnapshot() {
+        synchronized (WeatherForecastPreferences.class) {
+            if (sAppContext != null) {
+                PreferenceManager.getDefaultSharedPreferences(sAppContext)
+                        .unregisterOnSharedPreferenceChangeListener(sListener);
+            }
+            sAppContext = null;
+            sSnapshot = null;
+        }
+    }
+
     /**
      * Helper method to handle setting location details in Preferences (city name, latitude,
      * longitude)
@@ -34,6 +182,7 @@ public final class WeatherForecastPreferences {
         editor.putLong(PREF_COORD_LAT, Double.doubleToRawLongBits(lat));
         editor.putLong(PREF_COORD_LONG, Double.doubleToRawLongBits(lon));
         editor.apply();
+        refresh();
     }
 
     /**
@@ -48,6 +197,7 @@ public final class WeatherForecastPreferences {
         editor.remove(PREF_COORD_LAT);
         editor.remove(PREF_COORD_LONG);
         editor.apply();
+        refresh();
     }
 
     /**
@@ -60,12 +210,7 @@ public final class WeatherForecastPreferences {
      * "94043,USA" if SharedPreferences have not been implemented yet.
      */
     public static String getPreferredWeatherLocation(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForLocation = context.getString(R.string.pref_location_key);
-        String defaultLocation = context.getString(R.string.pref_location_default);
-
-        return sp.getString(keyForLocation, defaultLocation);
+        return getSnapshot(context).location;
     }
 
     /**
@@ -75,19 +220,7 @@ public final class WeatherForecastPreferences {
      * @return true if metric display should be used, false if imperial display should be used
      */
     public static boolean isMetric(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        String keyForUnits = context.getString(R.string.pref_units_key);
-        String defaultUnits = context.getString(R.string.pref_units_metric);
-        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
-        String metric = context.getString(R.string.pref_units_metric);
-
-        boolean userPrefersMetric = false;
-        if (metric.equals(preferredUnits)) {
-            userPrefersMetric = true;
-        }
-
-        return userPrefersMetric;
+        return getSnapshot(context).isMetric;
     }
 
     /**
@@ -99,23 +232,12 @@ public final class WeatherForecastPreferences {
      * @return an array containing the two coordinate values for the user's preferred location
      */
     public static double[] getLocationCoordinates(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        Snapshot snapshot = getSnapshot(context);
 
+        /* A new array every time, so callers can't change the snapshot */
         double[] preferredCoordinates = new double[2];
-
-        /*
-         * This is a hack we have to resort to since you can't store doubles in SharedPreferences.
-         *
-         * Double.doubleToLongBits returns an integer corresponding to the bits of the given
-         * IEEE 754 double precision value.
-         *
-         * Double.longBitsToDouble does the opposite, converting a long (that represents a double)
-         * into the double itself.
-         */
-        preferredCoordinates[0] = Double
-                 .longBitsToDouble(sp.getLong(PREF_COORD_LAT, Double.doubleToRawLongBits(0.0)));
-        preferredCoordinates[1] = Double
-                .longBitsToDouble(sp.getLong(PREF_COORD_LONG, Double.doubleToRawLongBits(0.0)));
+        preferredCoordinates[0] = snapshot.latitude;
+        preferredCoordinates[1] = snapshot.longitude;
 
         return preferredCoordinates;
     }
@@ -128,17 +250,7 @@ public final class WeatherForecastPreferences {
      * @return true if lat/long are saved in SharedPreferences
      */
     public static boolean isLocationLatLonAvailable(Context context) {
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        boolean spContainLatitude = sp.contains(PREF_COORD_LAT);
-        boolean spContainLongitude = sp.contains(PREF_COORD_LONG);
-
-        boolean spContainBothLatitudeAndLongitude = false;
-        if (spContainLatitude && spContainLongitude) {
-            spContainBothLatitudeAndLongitude = true;
-        }
-
-        return spContainBothLatitudeAndLongitude;
+        return getSnapshot(context).hasCoordinates;
     }
 
     /**
@@ -149,26 +261,7 @@ public final class WeatherForecastPreferences {
      * @return true if the user prefers to see notifications, false otherwise
      */
     public static boolean areNotificationsEnabled(Context context) {
-        /* Key for accessing the preference for showing notifications */
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-
-        /*
-         * In WeatherForecast, the user has the ability to say whether she would like notifications
-         * enabled or not. If no preference has been chosen, we want to be able to determine
-         * whether or not to show them. To do this, we reference a bool stored in bools.xml.
-         */
-        boolean shouldDisplayNotificationsByDefault = context
-                .getResources()
-                .getBoolean(R.bool.show_notifications_by_default);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
-        /* If a value is stored with the key, we extract it here. If not, use a default. */
-        boolean shouldDisplayNotifications = sp
-                .getBoolean(displayNotificationsKey, shouldDisplayNotificationsByDefault);
-
-        return shouldDisplayNotifications;
+        return getSnapshot(context).notificationsEnabled;
     }
 
     /**
@@ -178,25 +271,13 @@ public final class WeatherForecastPreferences {
      * @return UNIX time of when the last notification was shown
      */
     public static long getLastNotificationTimeInMillis(Context context) {
-        /* Key for accessing the time at which WeatherForecast last displayed a notification */
-        String lastNotificationKey = context.getString(R.string.pref_last_notification);
-
-        /* As usual, we use the default SharedPreferences to access the user's preferences */
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
-
         /*
-         * Here, we retrieve the time in milliseconds when the last notification was shown. If
-         * SharedPreferences doesn't have a value for lastNotificationKey, we return 0. The reason
-         * we return 0 is because we compare the value returned from this method to the current
-         * system time. If the difference between the last notification time and the current time
-         * is greater than one day, we will show a notification again. When we compare the two
-         * values, we subtract the last notification time from the current system time. If the
-         * time of the last notification was 0, the difference will always be greater than the
-         * number of milliseconds in a day and we will show another notification.
+         * If no notification was shown yet, this is 0. The reason we return 0 is because we
+         * compare the value returned from this method to the current system time. If the
+         * difference between the last notification time and the current time is greater than
+         * one day, we will show a notification again, which it always is for 0.
          */
-        long lastNotificationTime = sp.getLong(lastNotificationKey, 0);
-
-        return lastNotificationTime;
+        return getSnapshot(context).lastNotificationTime;
     }
 
     /**
@@ -227,5 +308,102 @@ public final class WeatherForecastPreferences {
         String lastNotificationKey = context.getString(R.string.pref_last_notification);
         editor.putLong(lastNotificationKey, timeOfNotification);
         editor.apply();
+        refresh();
+    }
+
+    /**
+     * Records whether the forecast of the preferred location changed in a sync. Only the last
+     * historySize syncs are kept, one bit each, the newest in the lowest bit.
+     *
+     * @param context     Used to access SharedPreferences
+     * @param changed     Whether the sync changed the forecast stored for it
+     * @param historySize How many syncs to keep, at most 31
+     */
+    public static void recordSyncOutcome(Context context, boolean changed, int historySize) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        int mask = (1 << historySize) - 1;
+        int history = ((sp.getInt(PREF_SYNC_CHANGE_HISTORY, 0) << 1) | (changed ? 1 : 0)) & mask;
+        int samples = Math.min(sp.getInt(PREF_SYNC_CHANGE_SAMPLES, 0) + 1, historySize);
+
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putInt(PREF_SYNC_CHANGE_HISTORY, history);
+        editor.putInt(PREF_SYNC_CHANGE_SAMPLES, samples);
+        editor.apply();
+    }
+
+    /**
+     * @return One bit per recorded sync, the newest lowest, set if the forecast changed in it
+     */
+    public static int getSyncChangeHistory(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getInt(PREF_SYNC_CHANGE_HISTORY, 0);
+    }
+
+    /**
+     * @return How many syncs {@link #getSyncChangeHistory(Context)} covers
+     */
+    public static int getSyncChangeSamples(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getInt(PREF_SYNC_CHANGE_SAMPLES, 0);
+    }
+
+    /**
+     * Saves the observation time of the newest METAR stored for the preferred location.
+     *
+     * @param context  Used to access SharedPreferences
+     * @param observed Observation time in UTC millis
+     */
+    public static void saveLastMetarObservedTime(Context context, long observed) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(PREF_LAST_METAR_OBSERVED, observed);
+        editor.apply();
+    }
+
+    /**
+     * @return Observation time of the newest METAR stored for the preferred location, or 0
+     */
+    public static long getLastMetarObservedTime(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_LAST_METAR_OBSERVED, 0);
+    }
+
+    /**
+     * Saves the time the app was opened.
+     *
+     * @param context Used to access SharedPreferences
+     * @param opened  Time the app was opened (in UNIX time)
+     */
+    public static void saveLastAppOpenedTime(Context context, long opened) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(PREF_LAST_APP_OPENED, opened);
+        editor.apply();
+    }
+
+    /**
+     * @return The last time the app was opened (in UNIX time), or 0 if it never was
+     */
+    public static long getLastAppOpenedTime(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_LAST_APP_OPENED, 0);
+    }
+
+    /**
+     * Saves the interval the periodic sync was last scheduled with.
+     */
+    public static void saveScheduledSyncInterval(Context context, long intervalSeconds) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        SharedPreferences.Editor editor = sp.edit();
+        editor.putLong(PREF_SYNC_INTERVAL_SECONDS, intervalSeconds);
+        editor.apply();
+    }
+
+    /**
+     * @return The interval the periodic sync was last scheduled with, or 0 if it never was
+     */
+    public static long getScheduledSyncInterval(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context)
+                .getLong(PREF_SYNC_INTERVAL_SECONDS, 0);
     }
 }
\ No newline at end of file
@@ -0,0 +1,169 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.HourlyEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+/**
+ * A precompiled INSERT into the weather table, used by {@link WeatherProvider#bulkInsert} to
+ * store a forecast. {@link #forHourly(SQLiteDatabase)} compiles the same kind of INSERT into the
+ * hourly table, for the 3-hour entries that come with a forecast.
+ * <p>
+ * SQLiteDatabase#insert builds and compiles a new INSERT statement for every row it is given.
+ * When we store a whole forecast inside one transaction, every row has the same columns, so we
+ * compile the statement once and only bind each row's values to it.
+ * <p>
+ * Only rows that contain exactly the columns of the statement can be inserted this way. Callers
+ * should check {@link #canInsert(ContentValues)} and use SQLiteDatabase#insert for anything else.
+ */
+final class WeatherInsertStatement {
+
+    private static final String TAG = WeatherInsertStatement.class.getSimpleName();
+
+    /* The columns of a forecast row, in the order they are bound to the statement */
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry.COLUMN_LOCATION_ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    /* The columns of a 3-hour entry, in the order they are bound to the statement */
+    private static final String[] HOURLY_COLUMNS = {
+            HourlyEntry.COLUMN_LOCATION_ID,
+            HourlyEntry.COLUMN_TIME,
+            HourlyEntry.COLUMN_WEATHER_ID,
+            HourlyEntry.COLUMN_TEMP,
+            HourlyEntry.COLUMN_MIN_TEMP,
+            HourlyEntry.COLUMN_MAX_TEMP,
+            HourlyEntry.COLUMN_HUMIDITY,
+            HourlyEntry.COLUMN_PRESSURE,
+            HourlyEntry.COLUMN_WIND_SPEED,
+            HourlyEntry.COLUMN_DEGREES
+    };
+
+    private static final String SQL_INSERT_WEATHER =
+            buildInsertSql(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS);
+    private static final String SQL_INSERT_HOURLY =
+            buildInsertSql(HourlyEntry.TABLE_NAME, HOURLY_COLUMNS);
+
+    private final String[] mColumns;
+    private final SQLiteStatement mStatement;
+
+    /**
+     * Compiles the statement. It must be closed with {@link #close()} once the transaction it is
+     * used in has finished.
+     *
+     * @param db The database to insert into
+     */
+    WeatherInsertStatement(SQLiteDatabase db) {
+        this(db, SQL_INSERT_WEATHER, WEATHER_COLUMNS);
+    }
+
+    private WeatherInsertStatement(SQLiteDatabase db, String sql, String[] columns) {
+        mStatement = db.compileStatement(sql);
+        mColumns = columns;
+    }
+
+    /**
+     * Compiles the INSERT for 3-hour entries. Like the forecast statement, it must be closed
+     * with {@link #close()} once the transaction it is used in has finished.
+     *
+     * @param db The database to insert into
+     * @return The compiled statement
+     */
+    static WeatherInsertStatement forHourly(SQLiteDatabase db) {
+        return new WeatherInsertStatement(db, SQL_INSERT_HOURLY, HOURLY_COLUMNS);
+    }
+
+    private static String buildInsertSql(String table, String[] columns) {
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+                .append(table)
+                .append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sql.append(", ");
+            sql.append(columns[i]);
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            sql.append(i > 0 ? ", ?" : "?");
+        }
+        return sql.append(')').toString();
+    }
+
+    /**
+     * Returns true if the row contains exactly the columns this statement inserts. A row with a
+     * column missing or an extra column has to go through SQLiteDatabase#insert instead.
+     *
+     * @param values The row to insert
+     * @return true if {@link #insert(ContentValues)} can be used for this row
+     */
+    boolean canInsert(ContentValues values) {
+        if (values.size() != mColumns.length) return false;
+
+        for (String column : mColumns) {
+            if (!values.containsKey(column)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Binds the row's values and executes the statement. Like SQLiteDatabase#insert, a row that
+     * breaks a constraint is logged and reported as -1 rather than thrown.
+     *
+     * @param values The row to insert. {@link #canInsert(ContentValues)} must be true for it.
+     * @return The row ID of the newly inserted row, or -1 if an error occurred
+     */
+    long insert(ContentValues values) {
+        mStatement.clearBindings();
+
+        for (int i = 0; i < mColumns.length; i++) {
+            bind(i + 1, values.get(mColumns[i]));
+        }
+
+        try {
+            return mStatement.executeInsert();
+        } catch (SQLException e) {
+            Log.e(TAG, "Error inserting " + values, e);
+            return -1;
+        }
+    }
+
+    /*
+     * Binds a value the way SQLiteDatabase#insert would: whole numbers as INTEGER, floating
+     * point numbers as REAL, and anything else as its String form.
+     */
+    private void bind(int index, Object value) {
+        if (value == null) {
+            mStatement.bindNull(index);
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            mStatement.bindLong(index, ((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            mStatement.bindDouble(index, ((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            mStatement.bindLong(index, (Boolean) value ? 1 : 0);
+        } else if (value instanceof byte[]) {
+            mStatement.bindBlob(index, (byte[]) value);
+        } else {
+            mStatement.bindString(index, value.toString());
+        }
+    }
+
+    /**
+     * Releases the compiled statement.
+     */
+    void close() {
+        mStatement.close();
+    }
+}
@@ -3,7 +3,11 @@ package com.example.android.weatherForecastMG.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
@@ -13,12 +17,18 @@ import android.support.annotation.Nullable;
 
 import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
 /**
  * This class serves as the ContentProvider for all of WeatherForecast's data. This class allows us to
- * bulkInsert data, query data, and delete data.
+ * bulkInsert data, query data, update data, and delete data.
  * <p>
  * Although ContentProvider implementation requires the implementation of additional methods to
- * perform single inserts, updates, and the ability to get the type of the data from a URI.
+ * perform single weather inserts and the ability to get the type of the data from a URI.
  * However, here, they are not implemented for the sake of brevity and simplicity. If you would
  * like, you may implement them on your own. However, we are not going to be teaching how to do
  * so in this course.
@@ -32,6 +42,17 @@ public class WeatherProvider extends ContentProvider {
      */
     public static final int CODE_WEATHER = 100;
     public static final int CODE_WEATHER_WITH_DATE = 101;
+    public static final int CODE_WEATHER_UPSERT = 102;
+    public static final int CODE_METAR = 200;
+    public static final int CODE_CLOUD_LAYERS = 300;
+    public static final int CODE_TAF = 400;
+    public static final int CODE_LOCATION = 500;
+    public static final int CODE_LOCATION_WITH_ID = 501;
+    public static final int CODE_LOCATION_WEATHER = 510;
+    public static final int CODE_LOCATION_WEATHER_WITH_DATE = 511;
+    public static final int CODE_LOCATION_WEATHER_UPSERT = 512;
+    public static final int CODE_LOCATION_HOURLY = 520;
+    public static final int CODE_HOURLY = 600;
 
     /*
      * The URI Matcher used by this content provider. The leading "s" in this variable name
@@ -41,6 +62,29 @@ public class WeatherProvider extends ContentProvider {
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    /*
+     * While applyBatch runs on a thread, the URIs its operations changed are collected here and
+     * only notified once the whole batch has been committed.
+     */
+    private final ThreadLocal<Set<Uri>> mBatchChanges = new ThreadLocal<Set<Uri>>();
+
+    /*
+     * The weather of the locations queried since the last write, see ForecastSnapshot, and the
+     * _IDs of the locations looked up by their query. Both are guarded by mCacheLock.
+     * mCacheGeneration goes up with every write, so a snapshot loaded while a write was being
+     * committed is never kept.
+     */
+    private final Object mCacheLock = new Object();
+    private final Map<Long, ForecastSnapshot> mSnapshots = new HashMap<Long, ForecastSnapshot>();
+    private final Map<String, Long> mLocationIds = new HashMap<String, Long>();
+    private long mCacheGeneration;
+
+    /* Selections for the rows of one location, and for its row on one date */
+    private static final String SELECTION_LOCATION =
+            WeatherContract.WeatherEntry.COLUMN_LOCATION_ID + " = ?";
+    private static final String SELECTION_LOCATION_AND_DATE =
+            SELECTION_LOCATION + " AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
     /**
      * Creates the UriMatcher that will match each URI to the CODE_WEATHER and
      * CODE_WEATHER_WITH_DATE constants defined above.
@@ -83,6 +127,46 @@ public class WeatherProvider extends ContentProvider {
          */
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/#", CODE_WEATHER_WITH_DATE);
 
+        /*
+         * This URI is content://com.example.android.WeatherForecast/weather/upsert. "upsert" is
+         * not a number, so it can't be mistaken for a date by the "/#" pattern above.
+         */
+        matcher.addURI(authority,
+                WeatherContract.PATH_WEATHER + "/" + WeatherContract.PATH_UPSERT,
+                CODE_WEATHER_UPSERT);
+
+        /* The decoded aviation weather tables, e.g. content://com.example.android.WeatherForecast/metar */
+        matcher.addURI(authority, WeatherContract.PATH_METAR, CODE_METAR);
+        matcher.addURI(authority, WeatherContract.PATH_CLOUD_LAYERS, CODE_CLOUD_LAYERS);
+        matcher.addURI(authority, WeatherContract.PATH_TAF, CODE_TAF);
+
+        /*
+         * The saved locations, content://com.example.android.WeatherForecast/location/ and
+         * content://com.example.android.WeatherForecast/location/3, and the weather of each of
+         * them, which works just like the weather URIs above.
+         */
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION, CODE_LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/#", CODE_LOCATION_WITH_ID);
+        matcher.addURI(authority,
+                WeatherContract.PATH_LOCATION + "/#/" + WeatherContract.PATH_WEATHER,
+                CODE_LOCATION_WEATHER);
+        matcher.addURI(authority,
+                WeatherContract.PATH_LOCATION + "/#/" + WeatherContract.PATH_WEATHER + "/#",
+                CODE_LOCATION_WEATHER_WITH_DATE);
+        matcher.addURI(authority,
+                WeatherContract.PATH_LOCATION + "/#/" + WeatherContract.PATH_WEATHER + "/"
+                        + WeatherContract.PATH_UPSERT,
+                CODE_LOCATION_WEATHER_UPSERT);
+
+        /*
+         * The 3-hour forecast entries, content://com.example.android.WeatherForecast/hourly for
+         * the location picked in the settings and .../location/3/hourly for any saved one
+         */
+        matcher.addURI(authority, WeatherContract.PATH_HOURLY, CODE_HOURLY);
+        matcher.addURI(authority,
+                WeatherContract.PATH_LOCATION + "/#/" + WeatherContract.PATH_HOURLY,
+                CODE_LOCATION_HOURLY);
+
         return matcher;
     }
 
@@ -132,8 +216,16 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
+            case CODE_LOCATION_WEATHER: {
+                long locationId = getLocationId(db, uri, true);
                 db.beginTransaction();
                 int rowsInserted = 0;
+                /*
+                 * Every row of a forecast has the same columns, so rather than letting
+                 * db.insert compile a new INSERT for each row, we compile one for the whole
+                 * transaction and just bind each row's values to it.
+                 */
+                WeatherInsertStatement insertStatement = new WeatherInsertStatement(db);
                 try {
                     for (ContentValues value : values) {
                         long weatherDate =
@@ -142,27 +234,390 @@ public class WeatherProvider extends ContentProvider {
                             throw new IllegalArgumentException("Date must be normalized to insert");
                         }
 
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
+                        if (insertWeatherRow(db, insertStatement, locationId, value) != -1) {
                             rowsInserted++;
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
+                    insertStatement.close();
                     db.endTransaction();
                 }
 
                 if (rowsInserted > 0) {
-                    getContext().getContentResolver().notifyChange(uri, null);
+                    notifyWeatherChange(db, locationId);
                 }
 
                 return rowsInserted;
+            }
+
+            case CODE_WEATHER_UPSERT:
+            case CODE_LOCATION_WEATHER_UPSERT: {
+                long locationId = getLocationId(db, uri, true);
+                int rowsChanged = upsertWeather(db, locationId, values);
+
+                /*
+                 * Everyone interested in the weather observes the weather URI (or a date below
+                 * it), not the upsert URI, so that is the URI we notify.
+                 */
+                if (rowsChanged > 0) {
+                    notifyWeatherChange(db, locationId);
+                }
+
+                return rowsChanged;
+            }
+
+            case CODE_HOURLY:
+            case CODE_LOCATION_HOURLY: {
+                long locationId = getLocationId(db, uri, true);
+                int rowsInserted = replaceHourly(db, locationId, values);
+
+                notifyHourlyChange(db, locationId);
+                return rowsInserted;
+            }
 
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Stores a freshly downloaded forecast, writing only what differs from what we already have.
+     * Each row is matched to the stored row with the same date. New dates are inserted, stored
+     * rows that differ from the new ones are updated, and identical rows are left alone. Rows
+     * from before today are removed. All of it happens in one transaction.
+     *
+     * @param db         The database to write to
+     * @param locationId The location the forecast is for. Other locations are not touched.
+     * @param values     The forecast, one row per date
+     * @return The number of rows inserted, updated or removed
+     */
+    private int upsertWeather(SQLiteDatabase db, long locationId, ContentValues[] values) {
+        String location = Long.toString(locationId);
+        /* Rows are keyed by the local day, so "before today" means before the local today */
+        String[] todayArgs = new String[]{location,
+                Long.toString(WeatherForecastDateUtils.getNormalizedUtcDateForToday())};
+
+        int rowsChanged = 0;
+        db.beginTransaction();
+        WeatherInsertStatement insertStatement = new WeatherInsertStatement(db);
+        Cursor stored = null;
+        try {
+            rowsChanged += db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                    SELECTION_LOCATION + " AND " + WeatherContract.WeatherEntry.COLUMN_DATE + " < ?",
+                    todayArgs);
+
+            /* Remember where each stored date is in the cursor so we can compare against it */
+            stored = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                    null, SELECTION_LOCATION, new String[]{location}, null, null, null);
+            int dateIndex = stored.getColumnIndexOrThrow(WeatherContract.WeatherEntry.COLUMN_DATE);
+            Map<Long, Integer> storedPositions = new HashMap<Long, Integer>(stored.getCount());
+            while (stored.moveToNext()) {
+                storedPositions.put(stored.getLong(dateIndex), stored.getPosition());
+            }
+
+            for (ContentValues value : values) {
+                Long weatherDate = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                if (!WeatherForecastDateUtils.isDateNormalized(weatherDate)) {
+                    throw new IllegalArgumentException("Date must be normalized to insert");
+                }
+
+                Integer storedPosition = storedPositions.get(weatherDate);
+                if (storedPosition == null) {
+                    if (insertWeatherRow(db, insertStatement, locationId, value) != -1) {
+                        rowsChanged++;
+                    }
+                } else {
+                    stored.moveToPosition(storedPosition);
+                    if (!matchesStoredRow(stored, value)) {
+                        rowsChanged += db.update(WeatherContract.WeatherEntry.TABLE_NAME,
+                                value,
+                                SELECTION_LOCATION_AND_DATE,
+                                new String[]{location, Long.toString(weatherDate)});
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            if (stored != null) stored.close();
+            insertStatement.close();
+            db.endTransaction();
+        }
+
+        return rowsChanged;
+    }
+
+    /**
+     * Replaces the 3-hour entries of a location with a freshly downloaded forecast, in one
+     * transaction. Entries are only ever downloaded as a whole forecast, and every one of them
+     * may have changed, so unlike the daily rows they are not diffed.
+     *
+     * @param db         The database to write to
+     * @param locationId The location the entries are for. Other locations are not touched.
+     * @param values     The entries of the forecast
+     * @return The number of entries inserted
+     */
+    private static int replaceHourly(SQLiteDatabase db, long locationId, ContentValues[] values) {
+        int rowsInserted = 0;
+        db.beginTransaction();
+        WeatherInsertStatement insertStatement = WeatherInsertStatement.forHourly(db);
+        try {
+            db.delete(WeatherContract.HourlyEntry.TABLE_NAME,
+                    SELECTION_LOCATION, new String[]{Long.toString(locationId)});
+
+            for (ContentValues value : values) {
+                ContentValues row = new ContentValues(value);
+                row.put(WeatherContract.HourlyEntry.COLUMN_LOCATION_ID, locationId);
+                long rowId = insertStatement.canInsert(row)
+                        ? insertStatement.insert(row)
+                        : db.insert(WeatherContract.HourlyEntry.TABLE_NAME, null, row);
+                if (rowId != -1) {
+                    rowsInserted++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            db.endTransaction();
+        }
+
+        return rowsInserted;
+    }
+
+    /*
+     * Inserts one forecast row for the location, through the compiled statement if the row has
+     * exactly the forecast columns.
+     */
+    private static long insertWeatherRow(SQLiteDatabase db, WeatherInsertStatement insertStatement,
+                                         long locationId, ContentValues value) {
+        ContentValues row = new ContentValues(value);
+        row.put(WeatherContract.WeatherEntry.COLUMN_LOCATION_ID, locationId);
+
+        if (insertStatement.canInsert(row)) {
+            return insertStatement.insert(row);
+        } else {
+            return db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, row);
+        }
+    }
+
+    /**
+     * Returns the _ID of the location a weather URI refers to. URIs below location/# name it
+     * directly. The plain weather URIs refer to the location picked in the settings, which is
+     * what lets the UI switch between saved locations without knowing about them: it queries
+     * CONTENT_URI again and gets the weather of the new location.
+     *
+     * @param db              The database to look the location up in
+     * @param uri             A weather URI
+     * @param createIfMissing Whether to add the location picked in the settings to the
+     *                        location table if it isn't there yet
+     * @return The _ID of the location, or -1 if it isn't in the location table
+     */
+    private long getLocationId(SQLiteDatabase db, Uri uri, boolean createIfMissing) {
+        switch (sUriMatcher.match(uri)) {
+            case CODE_LOCATION_WITH_ID:
+            case CODE_LOCATION_WEATHER:
+            case CODE_LOCATION_WEATHER_WITH_DATE:
+            case CODE_LOCATION_WEATHER_UPSERT:
+            case CODE_LOCATION_HOURLY:
+                /* location/<id>/... */
+                return Long.parseLong(uri.getPathSegments().get(1));
+
+            default:
+                String locationQuery =
+                        WeatherForecastPreferences.getPreferredWeatherLocation(getContext());
+                return getLocationIdForQuery(db, locationQuery, createIfMissing);
+        }
+    }
+
+    /*
+     * Looks a location up by the query the user entered for it, optionally adding it. Locations
+     * found are remembered until one is deleted, as the UI looks up the same one on every query.
+     */
+    private long getLocationIdForQuery(SQLiteDatabase db, String locationQuery,
+                                       boolean createIfMissing) {
+        synchronized (mCacheLock) {
+            Long cachedId = mLocationIds.get(locationQuery);
+            if (cachedId != null) return cachedId;
+        }
+
+        long locationId = -1;
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_QUERY + " = ?",
+                new String[]{locationQuery},
+                null, null, null);
+        try {
+            if (cursor.moveToFirst()) locationId = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+
+        if (locationId == -1 && createIfMissing) {
+            ContentValues location = new ContentValues();
+            location.put(WeatherContract.LocationEntry.COLUMN_QUERY, locationQuery);
+            locationId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, location);
+        }
+
+        /*
+         * Not cached while a batch is open on this thread: its transaction may still be rolled
+         * back, taking a location it inserted with it.
+         */
+        if (locationId != -1 && mBatchChanges.get() == null) {
+            synchronized (mCacheLock) {
+                mLocationIds.put(locationQuery, locationId);
+            }
+        }
+        return locationId;
+    }
+
+    /**
+     * Answers a query for weather rows from the location's snapshot, if it is one the snapshot
+     * can answer: the forecast from a date onwards, or the row for one date, sorted by date. The
+     * list and detail screens only ever ask for these.
+     *
+     * @return A cursor over the snapshot, or null if the query has to go to SQLite
+     */
+    private Cursor querySnapshot(Uri uri, String[] projection, String selection,
+                                 String[] selectionArgs, String sortOrder) {
+        if (!ForecastSnapshot.hasColumns(projection)) return null;
+        if (sortOrder != null
+                && !sortOrder.equals(WeatherContract.WeatherEntry.COLUMN_DATE)
+                && !sortOrder.equals(WeatherContract.WeatherEntry.COLUMN_DATE + " ASC")) {
+            return null;
+        }
+
+        int match = sUriMatcher.match(uri);
+        boolean withDate = match == CODE_WEATHER_WITH_DATE
+                || match == CODE_LOCATION_WEATHER_WITH_DATE;
+
+        long fromDate;
+        if (withDate) {
+            /* As with SQLite below, a selection on a date URI is ignored */
+            fromDate = Long.parseLong(uri.getLastPathSegment());
+        } else if (selection == null) {
+            fromDate = Long.MIN_VALUE;
+        } else if (WeatherContract.WeatherEntry.SQL_SELECT_TODAY_ONWARDS.equals(selection)
+                && selectionArgs != null && selectionArgs.length == 1) {
+            fromDate = Long.parseLong(selectionArgs[0]);
+        } else {
+            return null;
+        }
+
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = getLocationId(db, uri, false);
+        ForecastSnapshot snapshot = getSnapshot(db, locationId);
+
+        return withDate
+                ? snapshot.queryDate(projection, fromDate)
+                : snapshot.queryFromDate(projection, fromDate);
+    }
+
+    /*
+     * Returns the snapshot of a location, loading it if there isn't one since the last write.
+     */
+    private ForecastSnapshot getSnapshot(SQLiteDatabase db, long locationId) {
+        long generation;
+        synchronized (mCacheLock) {
+            ForecastSnapshot snapshot = mSnapshots.get(locationId);
+            if (snapshot != null) return snapshot;
+            generation = mCacheGeneration;
+        }
+
+        ForecastSnapshot snapshot = ForecastSnapshot.load(db, locationId);
+
+        synchronized (mCacheLock) {
+            if (generation == mCacheGeneration) {
+                mSnapshots.put(locationId, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /*
+     * Drops every snapshot once weather has been written, and the known locations too if a
+     * location was deleted. Called after the write has been committed; the next query loads
+     * what was written.
+     */
+    private void invalidateCache(boolean locationsChanged) {
+        synchronized (mCacheLock) {
+            mCacheGeneration++;
+            mSnapshots.clear();
+            if (locationsChanged) mLocationIds.clear();
+        }
+    }
+
+    /*
+     * The weather of a location changed. Observers of that location's weather are notified, and
+     * if it is the location picked in the settings, so are observers of CONTENT_URI.
+     */
+    private void notifyWeatherChange(SQLiteDatabase db, long locationId) {
+        invalidateCache(false);
+        notifyChange(WeatherContract.WeatherEntry.buildWeatherUriForLocation(locationId));
+
+        if (isPreferredLocation(db, locationId)) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+    }
+
+    /* Same as notifyWeatherChange, for the 3-hour entries */
+    private void notifyHourlyChange(SQLiteDatabase db, long locationId) {
+        notifyChange(WeatherContract.HourlyEntry.buildHourlyUriForLocation(locationId));
+
+        if (isPreferredLocation(db, locationId)) {
+            notifyChange(WeatherContract.HourlyEntry.CONTENT_URI);
+        }
+    }
+
+    /* Returns true if the location is the one picked in the settings */
+    private boolean isPreferredLocation(SQLiteDatabase db, long locationId) {
+        String locationQuery =
+                WeatherForecastPreferences.getPreferredWeatherLocation(getContext());
+        return getLocationIdForQuery(db, locationQuery, false) == locationId;
+    }
+
+    /*
+     * Restricts a selection on the weather or hourly table, which name the column the same, to
+     * one location, which is passed as its last argument */
+    private static String selectionForLocation(String selection) {
+        if (selection == null) return SELECTION_LOCATION;
+        return "(" + selection + ") AND " + SELECTION_LOCATION;
+    }
+
+    private static String[] selectionArgsForLocation(String[] selectionArgs, long locationId) {
+        int count = selectionArgs == null ? 0 : selectionArgs.length;
+        String[] args = new String[count + 1];
+        if (count > 0) System.arraycopy(selectionArgs, 0, args, 0, count);
+        args[count] = Long.toString(locationId);
+        return args;
+    }
+
+    /*
+     * Returns true if every column in value holds the same value in the cursor's current row.
+     * Columns the stored row has but value doesn't are not compared, as an update wouldn't touch
+     * them either.
+     */
+    private static boolean matchesStoredRow(Cursor stored, ContentValues value) {
+        for (Map.Entry<String, Object> column : value.valueSet()) {
+            int index = stored.getColumnIndex(column.getKey());
+            if (index == -1) return false;
+
+            Object newValue = column.getValue();
+            if (newValue == null) {
+                if (!stored.isNull(index)) return false;
+            } else if (stored.isNull(index)) {
+                return false;
+            } else if (newValue instanceof Float || newValue instanceof Double) {
+                /* Compare as the REAL SQLite stored, not as the float we were given */
+                if (stored.getDouble(index) != ((Number) newValue).doubleValue()) return false;
+            } else if (newValue instanceof Number) {
+                if (stored.getLong(index) != ((Number) newValue).longValue()) return false;
+            } else if (!newValue.toString().equals(stored.getString(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Handles query requests from clients. We will use this method in WeatherForecast to query for all
      * of our weather data as well as to query for the weather on a particular day.
@@ -203,7 +658,15 @@ public class WeatherProvider extends ContentProvider {
              * In this case, we want to return a cursor that contains one row of weather data for
              * a particular date.
              */
-            case CODE_WEATHER_WITH_DATE: {
+            case CODE_WEATHER_WITH_DATE:
+            case CODE_LOCATION_WEATHER_WITH_DATE: {
+
+                /* The detail screen is answered from memory if it can be, see ForecastSnapshot */
+                cursor = querySnapshot(uri, projection, selection, selectionArgs, sortOrder);
+                if (cursor != null) break;
+
+                /* The row is looked up for the location the URI refers to, see getLocationId */
+                long locationId = getLocationId(mOpenHelper.getReadableDatabase(), uri, false);
 
                 /*
                  * In order to determine the date associated with this URI, we look at the last
@@ -218,7 +681,8 @@ public class WeatherProvider extends ContentProvider {
                  * one "?", we have to create a string array that only contains one element
                  * because this method signature accepts a string array.
                  */
-                String[] selectionArguments = new String[]{normalizedUtcDateString};
+                String[] selectionArguments =
+                        new String[]{Long.toString(locationId), normalizedUtcDateString};
 
                 cursor = mOpenHelper.getReadableDatabase().query(
                         /* Table we are going to query */
@@ -239,7 +703,7 @@ public class WeatherProvider extends ContentProvider {
                          * within the selectionArguments array will be inserted into the
                          * selection statement by SQLite under the hood.
                          */
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ",
+                        SELECTION_LOCATION_AND_DATE,
                         selectionArguments,
                         null,
                         null,
@@ -259,10 +723,72 @@ public class WeatherProvider extends ContentProvider {
              * In this case, we want to return a cursor that contains every row of weather data
              * in our weather table.
              */
-            case CODE_WEATHER: {
+            case CODE_WEATHER:
+            case CODE_LOCATION_WEATHER: {
+                /* So is the forecast list */
+                cursor = querySnapshot(uri, projection, selection, selectionArgs, sortOrder);
+                if (cursor != null) break;
+
+                long locationId = getLocationId(mOpenHelper.getReadableDatabase(), uri, false);
                 cursor = mOpenHelper.getReadableDatabase().query(
                         WeatherContract.WeatherEntry.TABLE_NAME,
                         projection,
+                        selectionForLocation(selection),
+                        selectionArgsForLocation(selectionArgs, locationId),
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case CODE_HOURLY:
+            case CODE_LOCATION_HOURLY: {
+                long locationId = getLocationId(mOpenHelper.getReadableDatabase(), uri, false);
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HourlyEntry.TABLE_NAME,
+                        projection,
+                        selectionForLocation(selection),
+                        selectionArgsForLocation(selectionArgs, locationId),
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case CODE_LOCATION: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case CODE_LOCATION_WITH_ID: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        projection,
+                        WeatherContract.LocationEntry._ID + " = ?",
+                        new String[]{uri.getLastPathSegment()},
+                        null,
+                        null,
+                        sortOrder);
+
+                break;
+            }
+
+            case CODE_METAR:
+            case CODE_CLOUD_LAYERS:
+            case CODE_TAF: {
+                cursor = mOpenHelper.getReadableDatabase().query(
+                        getAviationTableName(uri),
+                        projection,
                         selection,
                         selectionArgs,
                         null,
@@ -306,8 +832,73 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
 
             case CODE_WEATHER:
-                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+            case CODE_LOCATION_WEATHER: {
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                long locationId = getLocationId(db, uri, false);
+                numRowsDeleted = db.delete(
                         WeatherContract.WeatherEntry.TABLE_NAME,
+                        selectionForLocation(selection),
+                        selectionArgsForLocation(selectionArgs, locationId));
+
+                if (numRowsDeleted != 0) {
+                    notifyWeatherChange(db, locationId);
+                }
+                return numRowsDeleted;
+            }
+
+            case CODE_HOURLY:
+            case CODE_LOCATION_HOURLY: {
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                long locationId = getLocationId(db, uri, false);
+                numRowsDeleted = db.delete(
+                        WeatherContract.HourlyEntry.TABLE_NAME,
+                        selectionForLocation(selection),
+                        selectionArgsForLocation(selectionArgs, locationId));
+
+                if (numRowsDeleted != 0) {
+                    notifyHourlyChange(db, locationId);
+                }
+                return numRowsDeleted;
+            }
+
+            /* Removing a location removes its weather too */
+            case CODE_LOCATION:
+            case CODE_LOCATION_WITH_ID: {
+                if (sUriMatcher.match(uri) == CODE_LOCATION_WITH_ID) {
+                    selection = WeatherContract.LocationEntry._ID + " = ?";
+                    selectionArgs = new String[]{uri.getLastPathSegment()};
+                }
+
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                db.beginTransaction();
+                try {
+                    numRowsDeleted = db.delete(WeatherContract.LocationEntry.TABLE_NAME,
+                            selection,
+                            selectionArgs);
+                    String orphaned = WeatherContract.WeatherEntry.COLUMN_LOCATION_ID
+                            + " NOT IN (SELECT " + WeatherContract.LocationEntry._ID + " FROM "
+                            + WeatherContract.LocationEntry.TABLE_NAME + ")";
+                    db.delete(WeatherContract.WeatherEntry.TABLE_NAME, orphaned, null);
+                    db.delete(WeatherContract.HourlyEntry.TABLE_NAME, orphaned, null);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+
+                if (numRowsDeleted != 0) {
+                    invalidateCache(true);
+                    notifyChange(WeatherContract.LocationEntry.CONTENT_URI);
+                    notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+                    notifyChange(WeatherContract.HourlyEntry.CONTENT_URI);
+                }
+                return numRowsDeleted;
+            }
+
+            case CODE_METAR:
+            case CODE_CLOUD_LAYERS:
+            case CODE_TAF:
+                numRowsDeleted = mOpenHelper.getWritableDatabase().delete(
+                        getAviationTableName(uri),
                         selection,
                         selectionArgs);
 
@@ -319,15 +910,82 @@ public class WeatherProvider extends ContentProvider {
 
         /* If we actually deleted any rows, notify that a change has occurred to this URI */
         if (numRowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
 
         return numRowsDeleted;
     }
 
+    /**
+     * Updates rows at a given URI. For updating many dates at once, applyBatch does them all in
+     * one transaction.
+     *
+     * @param uri           The URI of the rows to update. A date URI updates the row for that
+     *                      date.
+     * @param contentValues The new column values
+     * @param selection     An optional restriction to apply to rows when updating.
+     * @param selectionArgs Used in conjunction with the selection statement
+     * @return The number of rows updated
+     */
     @Override
-    public int update(@NonNull Uri uri, @Nullable ContentValues contentValues, @Nullable String s, @Nullable String[] strings) {
-        throw new RuntimeException("We are not implementing update in WeatherForecast");
+    public int update(@NonNull Uri uri, @Nullable ContentValues contentValues,
+                      @Nullable String selection, @Nullable String[] selectionArgs) {
+
+        int numRowsUpdated;
+
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_WEATHER_WITH_DATE:
+            case CODE_LOCATION_WEATHER_WITH_DATE: {
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                long locationId = getLocationId(db, uri, false);
+                numRowsUpdated = db.update(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        contentValues,
+                        SELECTION_LOCATION_AND_DATE,
+                        new String[]{Long.toString(locationId), uri.getLastPathSegment()});
+
+                if (numRowsUpdated != 0) {
+                    notifyWeatherChange(db, locationId);
+                }
+                return numRowsUpdated;
+            }
+
+            case CODE_WEATHER:
+            case CODE_LOCATION_WEATHER: {
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                long locationId = getLocationId(db, uri, false);
+                numRowsUpdated = db.update(
+                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        contentValues,
+                        selectionForLocation(selection),
+                        selectionArgsForLocation(selectionArgs, locationId));
+
+                if (numRowsUpdated != 0) {
+                    notifyWeatherChange(db, locationId);
+                }
+                return numRowsUpdated;
+            }
+
+            case CODE_LOCATION_WITH_ID:
+                numRowsUpdated = mOpenHelper.getWritableDatabase().update(
+                        WeatherContract.LocationEntry.TABLE_NAME,
+                        contentValues,
+                        WeatherContract.LocationEntry._ID + " = ?",
+                        new String[]{uri.getLastPathSegment()});
+
+                break;
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+
+        /* If we actually updated any rows, notify that a change has occurred to this URI */
+        if (numRowsUpdated != 0) {
+            notifyChange(uri);
+        }
+
+        return numRowsUpdated;
     }
 
     /**
@@ -346,25 +1004,123 @@ public class WeatherProvider extends ContentProvider {
     }
 
     /**
-     * In WeatherForecast, we aren't going to do anything with this method. However, we are required to
-     * override it as WeatherProvider extends ContentProvider and insert is an abstract method in
-     * ContentProvider. Rather than the single insert method, we are only going to implement
-     * {@link WeatherProvider#bulkInsert}.
+     * Inserts a single decoded METAR, cloud layer or TAF. Weather rows only ever come in whole
+     * forecasts, so for those, use {@link WeatherProvider#bulkInsert} instead.
      *
      * @param uri    The URI of the insertion request. This must not be null.
      * @param values A set of column_name/value pairs to add to the database.
      *               This must not be null
-     * @return nothing in WeatherForecast, but normally the URI for the newly inserted item.
+     * @return The URI for the newly inserted item, or null if it couldn't be inserted
      */
     @Override
     public Uri insert(@NonNull Uri uri, ContentValues values) {
-        throw new RuntimeException(
-                "We are not implementing insert in WeatherForecast. Use bulkInsert instead");
+        switch (sUriMatcher.match(uri)) {
+
+            case CODE_METAR:
+            case CODE_CLOUD_LAYERS:
+            case CODE_TAF:
+                long _id = mOpenHelper.getWritableDatabase()
+                        .insert(getAviationTableName(uri), null, values);
+                if (_id == -1) return null;
+
+                notifyChange(uri);
+                return ContentUris.withAppendedId(uri, _id);
+
+            /*
+             * A location is only ever saved once, so inserting one we already have returns the
+             * URI of the saved one.
+             */
+            case CODE_LOCATION: {
+                String locationQuery =
+                        values.getAsString(WeatherContract.LocationEntry.COLUMN_QUERY);
+                if (locationQuery == null) {
+                    throw new IllegalArgumentException("A location needs a query");
+                }
+
+                SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+                long locationId = getLocationIdForQuery(db, locationQuery, false);
+                if (locationId == -1) {
+                    locationId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+                    if (locationId == -1) return null;
+                    notifyChange(uri);
+                }
+                return WeatherContract.LocationEntry.buildLocationUri(locationId);
+            }
+
+            case CODE_WEATHER:
+            case CODE_LOCATION_WEATHER:
+                throw new UnsupportedOperationException(
+                        "We are not implementing insert for weather. Use bulkInsert instead");
+
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
     }
 
+    /**
+     * Applies a batch of operations in a single transaction, so either all of them are stored or
+     * none are. Observers are notified once per changed URI after the batch commits, not after
+     * every operation. Sync uses this to store a METAR with its cloud layers and a TAF together.
+     *
+     * @param operations The operations to apply
+     * @return The results of the operations
+     * @throws OperationApplicationException If any operation fails; nothing is stored then
+     */
+    @NonNull
+    @Override
+    public ContentProviderResult[] applyBatch(@NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        Set<Uri> changedUris = new HashSet<Uri>();
+        ContentProviderResult[] results;
+
+        mBatchChanges.set(changedUris);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchChanges.remove();
+        }
+
+        /*
+         * Weather written by the batch dropped the snapshots before it was committed, when one
+         * could still have been loaded from what was there before. Drop them again now.
+         */
+        if (!changedUris.isEmpty()) {
+            invalidateCache(false);
+        }
 
-//    public int updateMETARdata(@NonNull Uri uri, @NonNull ContentValues[] values, String selection, String[] selectionArgs) {
- //       throw new RuntimeException("We are not implementing update in WeatherForecast");
-  //  }
+        for (Uri changedUri : changedUris) {
+            getContext().getContentResolver().notifyChange(changedUri, null);
+        }
+        return results;
+    }
 
+    /*
+     * Notifies observers of uri, or, while a batch is being applied on this thread, remembers to
+     * notify them once it has committed.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> batchChanges = mBatchChanges.get();
+        if (batchChanges != null) {
+            batchChanges.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    private static String getAviationTableName(Uri uri) {
+        switch (sUriMatcher.match(uri)) {
+            case CODE_METAR:
+                return WeatherContract.MetarEntry.TABLE_NAME;
+            case CODE_CLOUD_LAYERS:
+                return WeatherContract.CloudLayerEntry.TABLE_NAME;
+            case CODE_TAF:
+                return WeatherContract.TafEntry.TABLE_NAME;
+            default:
+                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        }
+    }
 }
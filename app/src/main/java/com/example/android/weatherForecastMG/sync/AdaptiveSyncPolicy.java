@@ -0,0 +1,208 @@
+package com.example.android.weatherForecastMG.sync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how often the periodic sync runs, rather than every 3 to 4 hours for everyone.
+ * <p>
+ * The decision is made from a few signals:
+ * <ul>
+ * <li>How often the forecast of the preferred location actually changed over the last syncs.
+ * If it nearly always did, we sync more often; if it hardly ever did, less often.</li>
+ * <li>Whether the app was opened recently. Nobody looks at a forecast in an app that hasn't been
+ * opened for days, so then we sync rarely.</li>
+ * <li>Whether a METAR is tracked for the preferred location. METARs are issued every hour, so
+ * while the app is in use, the sync is timed to pick up the next one soon after it is due.</li>
+ * </ul>
+ * This class uses nothing from Android. Every decision is a function of its {@link Inputs}
+ * alone, which include the time they were taken at, so the inputs recorded by
+ * {@link SyncScheduleLog} can be replayed on the JVM with a simulated {@link Clock}.
+ */
+final class AdaptiveSyncPolicy {
+
+    /**
+     * Where the policy gets the time from, so that a test can supply its own.
+     */
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /* The interval when there is nothing to go on, as it has always been */
+    static final long DEFAULT_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(3);
+
+    private static final long MIN_INTERVAL_SECONDS = TimeUnit.MINUTES.toSeconds(30);
+    private static final long VOLATILE_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(2);
+    private static final long STABLE_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(6);
+    private static final long IDLE_INTERVAL_SECONDS = TimeUnit.HOURS.toSeconds(12);
+
+    /* How many of the last syncs the change history covers, one bit each, newest lowest */
+    static final int HISTORY_SIZE = 8;
+
+    /* The history is only trusted once it covers this many syncs */
+    private static final int MIN_HISTORY_SAMPLES = 4;
+
+    /* The app counts as in use if opened within a day, and as idle if not for three days */
+    private static final long APP_ACTIVE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long APP_IDLE_MILLIS = TimeUnit.DAYS.toMillis(3);
+
+    /* METARs are issued hourly; give the next one this long to reach the server */
+    private static final long METAR_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final long METAR_GRACE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * Everything a decision is made from.
+     */
+    static final class Inputs {
+        /* When the inputs were taken, in UTC millis */
+        final long now;
+
+        /* One bit per sync, newest lowest, set if the forecast changed in that sync */
+        final int changeHistory;
+
+        /* How many syncs changeHistory covers, up to HISTORY_SIZE */
+        final int samples;
+
+        final boolean metarTracked;
+
+        /* Observation time of the last METAR stored, or 0 if none */
+        final long lastMetarObserved;
+
+        /* When the app was last opened, or 0 if never */
+        final long lastAppOpened;
+
+        Inputs(long now, int changeHistory, int samples, boolean metarTracked,
+               long lastMetarObserved, long lastAppOpened) {
+            this.now = now;
+            this.changeHistory = changeHistory;
+            this.samples = Math.min(Math.max(samples, 0), HISTORY_SIZE);
+            this.metarTracked = metarTracked;
+            this.lastMetarObserved = lastMetarObserved;
+            this.lastAppOpened = lastAppOpened;
+        }
+
+        /**
+         * @return The inputs as one line, which {@link #fromRecord(String)} reads back
+         */
+        String toRecord() {
+            return now + " " + changeHistory + " " + samples + " " + metarTracked + " "
+                    + lastMetarObserved + " " + lastAppOpened;
+        }
+
+        static Inputs fromRecord(String record) {
+            String[] fields = record.trim().split(" ");
+            if (fields.length != 6) {
+                throw new IllegalArgumentException("Not a sync schedule record: " + record);
+            }
+            return new Inputs(Long.parseLong(fields[0]),
+                    Integer.parseInt(fields[1]),
+                    Integer.parseInt(fields[2]),
+                    Boolean.parseBoolean(fields[3]),
+                    Long.parseLong(fields[4]),
+                    Long.parseLong(fields[5]));
+        }
+    }
+
+    /**
+     * When the next sync should run: after intervalSeconds, and no later than flexSeconds after
+     * that.
+     */
+    static final class Decision {
+        final long intervalSeconds;
+        final long flexSeconds;
+
+        /* Which signals decided it, for the log */
+        final String reason;
+
+        Decision(long intervalSeconds, String reason) {
+            this.intervalSeconds = intervalSeconds;
+            this.flexSeconds = intervalSeconds / 3;
+            this.reason = reason;
+        }
+
+        String toRecord() {
+            return intervalSeconds + " " + flexSeconds + " " + reason;
+        }
+    }
+
+    private final Clock mClock;
+
+    AdaptiveSyncPolicy(Clock clock) {
+        mClock = clock;
+    }
+
+    /**
+     * Takes the inputs of a decision at the current time of this policy's clock.
+     */
+    Inputs takeInputs(int changeHistory, int samples, boolean metarTracked,
+                      long lastMetarObserved, long lastAppOpened) {
+        return new Inputs(mClock.currentTimeMillis(), changeHistory, samples, metarTracked,
+                lastMetarObserved, lastAppOpened);
+    }
+
+    /**
+     * Returns whether the app counts as in use at the current time of this policy's clock, in
+     * which case opening it again doesn't change the decision.
+     */
+    boolean isAppInUse(long lastAppOpened) {
+        return lastAppOpened > 0
+                && mClock.currentTimeMillis() - lastAppOpened < APP_ACTIVE_MILLIS;
+    }
+
+    /**
+     * Decides the sync interval. The same inputs always give the same decision.
+     */
+    Decision decide(Inputs inputs) {
+        long interval = DEFAULT_INTERVAL_SECONDS;
+        StringBuilder reason = new StringBuilder("default");
+
+        if (inputs.samples >= MIN_HISTORY_SAMPLES) {
+            int changes = Integer.bitCount(inputs.changeHistory & ((1 << inputs.samples) - 1));
+            if (changes * 4 >= inputs.samples * 3) {
+                interval = VOLATILE_INTERVAL_SECONDS;
+                reason.append(",volatile");
+            } else if (changes * 4 <= inputs.samples) {
+                interval = STABLE_INTERVAL_SECONDS;
+                reason.append(",stable");
+            }
+        }
+
+        /* A last opening "in the future" means the clock was changed; count the app as active */
+        long sinceAppOpened = inputs.now - inputs.lastAppOpened;
+        if (inputs.lastAppOpened <= 0 || sinceAppOpened > APP_IDLE_MILLIS) {
+            interval = Math.max(interval, IDLE_INTERVAL_SECONDS);
+            reason.append(",idle");
+        } else if (sinceAppOpened < APP_ACTIVE_MILLIS
+                && inputs.metarTracked && inputs.lastMetarObserved > 0) {
+            long untilMetar = getMillisUntilNextMetar(inputs.now, inputs.lastMetarObserved);
+            long untilMetarSeconds = Math.max(MIN_INTERVAL_SECONDS,
+                    TimeUnit.MILLISECONDS.toSeconds(untilMetar));
+            if (untilMetarSeconds < interval) {
+                interval = untilMetarSeconds;
+                reason.append(",metar");
+            }
+        }
+
+        interval = Math.min(Math.max(interval, MIN_INTERVAL_SECONDS), IDLE_INTERVAL_SECONDS);
+        return new Decision(interval, reason.toString());
+    }
+
+    /*
+     * Returns how long until the METAR after the last one we have should be available. If that
+     * time has passed already, the one after it is meant, and so on.
+     */
+    private static long getMillisUntilNextMetar(long now, long lastMetarObserved) {
+        long due = lastMetarObserved + METAR_INTERVAL_MILLIS + METAR_GRACE_MILLIS;
+        if (due <= now) {
+            long missed = (now - due) / METAR_INTERVAL_MILLIS + 1;
+            due += missed * METAR_INTERVAL_MILLIS;
+        }
+        return due - now;
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.android.weatherForecastMG.sync;
+
+import android.os.SystemClock;
+
+import com.example.android.weatherForecastMG.utilities.NetworkUtils;
+
+import java.net.HttpURLConnection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lets a running sync be stopped from another thread, such as when the job scheduler preempts
+ * the job. The sync checks {@link #throwIfCancelled(String)} between its stages, and once
+ * cancelled, every request it still has open is disconnected, so a sync blocked reading a
+ * response stops right away rather than after the whole response has come in.
+ */
+final class SyncCancellation implements NetworkUtils.ConnectionTracker {
+
+    private volatile boolean mCancelled;
+
+    /* When cancel() was called, to tell how long the sync took to stop */
+    private volatile long mCancelledAtMillis;
+
+    /* The requests in flight, which cancel() cuts off */
+    private final Set<HttpURLConnection> mConnections = new HashSet<HttpURLConnection>();
+
+    /**
+     * Stops the sync at its next check, and disconnects its open requests.
+     */
+    synchronized void cancel() {
+        if (mCancelled) return;
+
+        mCancelledAtMillis = SystemClock.elapsedRealtime();
+        mCancelled = true;
+        for (HttpURLConnection connection : mConnections) {
+            connection.disconnect();
+        }
+        mConnections.clear();
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return Milliseconds since {@link #cancel()} was called, or -1 if it wasn't
+     */
+    long getMillisSinceCancelled() {
+        return mCancelled ? SystemClock.elapsedRealtime() - mCancelledAtMillis : -1;
+    }
+
+    /**
+     * A checkpoint of the sync, between two of its stages.
+     *
+     * @param stage The stage about to start, reported if the sync stops here
+     * @throws SyncCancelledException If the sync has been cancelled
+     */
+    void throwIfCancelled(String stage) throws SyncCancelledException {
+        if (mCancelled) throw new SyncCancelledException(stage);
+    }
+
+    @Override
+    public synchronized boolean onConnectionOpened(HttpURLConnection connection) {
+        if (mCancelled) return false;
+
+        mConnections.add(connection);
+        return true;
+    }
+
+    @Override
+    public synchronized void onConnectionClosed(HttpURLConnection connection) {
+        mConnections.remove(connection);
+    }
+}
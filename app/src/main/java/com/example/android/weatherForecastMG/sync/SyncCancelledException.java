@@ -0,0 +1,15 @@
+package com.example.android.weatherForecastMG.sync;
+
+/**
+ * Thrown out of a sync that has been stopped with {@link SyncCancellation#cancel()}.
+ */
+final class SyncCancelledException extends Exception {
+
+    /* The stage the sync was about to start when it noticed */
+    final String stage;
+
+    SyncCancelledException(String stage) {
+        super("Sync cancelled before " + stage);
+        this.stage = stage;
+    }
+}
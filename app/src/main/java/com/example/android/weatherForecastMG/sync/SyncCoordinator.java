@@ -0,0 +1,224 @@
+package com.example.android.weatherForecastMG.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.VisibleForTesting;
+import android.text.format.DateUtils;
+import android.util.Log;
+
+import com.example.android.weatherForecastMG.data.WeatherContract;
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes sure only one sync downloads at a time, and that the syncs asked for while it runs
+ * don't each download everything again after it.
+ * <p>
+ * A sync can be asked for from several places at once: the check for an empty database when
+ * the app starts, a change of location in the settings, and the periodic job. A request made
+ * while a sync is running attaches to that sync and gets its result. A request for a location
+ * whose forecast was synced within {@link #FRESHNESS_WINDOW_MILLIS} is answered from what is
+ * already in the database, without going to the network.
+ * <p>
+ * A sync reads the preferred location when it starts, so a request for another location
+ * attaching to it couldn't be answered by it. Such a request asks the sync to run once more
+ * when it is done, and gets the result of that run.
+ */
+final class SyncCoordinator {
+
+    private static final String TAG = SyncCoordinator.class.getSimpleName();
+
+    /* A forecast synced this recently is considered current */
+    static final long FRESHNESS_WINDOW_MILLIS = 10 * DateUtils.MINUTE_IN_MILLIS;
+
+    /* How often a request attached to another sync checks whether it was cancelled itself */
+    private static final long ATTACHED_POLL_MILLIS = 50;
+
+    private static final String[] FORECAST_SYNCED_PROJECTION = {
+            WeatherContract.LocationEntry.COLUMN_FORECAST_SYNCED
+    };
+
+    /** Runs a sync, so that a test can count syncs without going to the network. */
+    @VisibleForTesting
+    interface SyncRunner {
+        boolean syncWeather(Context context, SyncCancellation cancellation);
+    }
+
+    @VisibleForTesting
+    static final SyncRunner SYNC_TASK = new SyncRunner() {
+        @Override
+        public boolean syncWeather(Context context, SyncCancellation cancellation) {
+            if (!WeatherForecastSyncTask.syncWeather(context, cancellation)) return false;
+            /* The sync may have changed what the interval of the next one is decided from */
+            WeatherForecastSyncUtils.rescheduleIfNeeded(context);
+            return true;
+        }
+    };
+
+    private static volatile SyncRunner sSyncRunner = SYNC_TASK;
+
+    /* A sync that is running, which requests arriving meanwhile wait for */
+    private static final class Flight {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean completed;
+
+        /* The preferred location when the current run started; guarded by sLock */
+        String location;
+
+        /* Set by a request for another location, to have the sync run again; guarded by sLock */
+        boolean rerunRequested;
+
+        Flight(String location) {
+            this.location = location;
+        }
+    }
+
+    private static final Object sLock = new Object();
+
+    /* The sync running right now, or null; guarded by sLock */
+    private static Flight sFlight;
+
+    /* How many syncs have run to the end; guarded by sLock */
+    private static int sCompletedFlights;
+
+    private SyncCoordinator() {
+    }
+
+    /**
+     * Syncs the weather, unless a sync is already running or the forecast of the preferred
+     * location is fresh.
+     *
+     * @param context      Used to access the ContentResolver and the preferences
+     * @param cancellation Stops this request, and the sync if this request started it
+     * @return true if the weather is now current: the sync ran to the end, the sync this request
+     * attached to did, or the forecast was fresh already. False if it was cancelled.
+     */
+    static boolean sync(Context context, SyncCancellation cancellation) {
+        while (true) {
+            String location = WeatherForecastPreferences.getPreferredWeatherLocation(context);
+
+            /*
+             * The freshness query is not run while holding sLock, so that requests attaching to
+             * a running sync don't wait for it. Whether a sync completed in the meantime is
+             * checked again under the lock, as the answer would then be out of date.
+             */
+            boolean running;
+            int completedBefore;
+            synchronized (sLock) {
+                running = sFlight != null;
+                completedBefore = sCompletedFlights;
+            }
+            boolean fresh = !running && isForecastFresh(context, location);
+
+            Flight flight;
+            boolean owner = false;
+            synchronized (sLock) {
+                flight = sFlight;
+                if (flight != null) {
+                    if (!location.equals(flight.location)) flight.rerunRequested = true;
+                } else if (running || sCompletedFlights != completedBefore) {
+                    /* The sync we saw ended before we got here: look at the forecast again */
+                    continue;
+                } else if (!fresh) {
+                    flight = new Flight(location);
+                    sFlight = flight;
+                    owner = true;
+                }
+            }
+
+            if (flight == null) {
+                Log.v(TAG, "Forecast is fresh, sync skipped");
+                return true;
+            }
+
+            if (owner) return run(context, cancellation, flight);
+
+            Log.v(TAG, "Sync already running, waiting for it");
+            if (!await(flight, cancellation)) return false;
+            if (flight.completed) return true;
+
+            /* The sync we waited for was cancelled, but this request wasn't: try again */
+        }
+    }
+
+    /**
+     * Replaces what runs the syncs. Only for tests; they put {@link #SYNC_TASK} back after.
+     */
+    @VisibleForTesting
+    static void setSyncRunner(SyncRunner syncRunner) {
+        sSyncRunner = syncRunner;
+    }
+
+    private static boolean run(Context context, SyncCancellation cancellation, Flight flight) {
+        boolean completed = false;
+        try {
+            while (true) {
+                completed = sSyncRunner.syncWeather(context, cancellation);
+                if (!completed) return false;
+
+                synchronized (sLock) {
+                    if (!flight.rerunRequested) return true;
+                    flight.rerunRequested = false;
+                    flight.location =
+                            WeatherForecastPreferences.getPreferredWeatherLocation(context);
+                }
+                Log.v(TAG, "Location changed while syncing, syncing again");
+            }
+        } finally {
+            synchronized (sLock) {
+                sFlight = null;
+                if (completed) sCompletedFlights++;
+            }
+            flight.completed = completed;
+            flight.done.countDown();
+        }
+    }
+
+    /*
+     * Waits for a sync started by another request.
+     *
+     * @return false if this request was cancelled first
+     */
+    private static boolean await(Flight flight, SyncCancellation cancellation) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                if (cancellation.isCancelled()) return false;
+                try {
+                    if (flight.done.await(ATTACHED_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Returns true if the forecast of the preferred location was synced within the freshness
+     * window. A sync time in the future means the clock was changed, so it doesn't count.
+     */
+    private static boolean isForecastFresh(Context context, String location) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                FORECAST_SYNCED_PROJECTION,
+                WeatherContract.LocationEntry.COLUMN_QUERY + " = ?",
+                new String[]{location},
+                null);
+        if (cursor == null) return false;
+
+        try {
+            if (!cursor.moveToFirst() || cursor.isNull(0)) return false;
+
+            long age = System.currentTimeMillis() - cursor.getLong(0);
+            return age >= 0 && age < FRESHNESS_WINDOW_MILLIS;
+        } finally {
+            cursor.close();
+        }
+    }
+}
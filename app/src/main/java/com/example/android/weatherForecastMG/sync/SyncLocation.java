@@ -0,0 +1,77 @@
+package com.example.android.weatherForecastMG.sync;
+
+import com.example.android.weatherForecastMG.utilities.NetworkUtils;
+import com.example.android.weatherForecastMG.utilities.ResponseBody;
+
+import java.net.URL;
+import java.util.concurrent.Future;
+
+/**
+ * One saved location being synced, with the requests made for it and their responses.
+ */
+final class SyncLocation {
+
+    /* _ID of the location in the location table */
+    final long id;
+
+    /* The location as the user entered it */
+    final String query;
+
+    /* Latitude and longitude, or null until the location has been synced once */
+    final double[] coordinates;
+
+    /* Whether this is the location picked in the settings, the one the UI shows */
+    final boolean preferred;
+
+    /* OpenWeatherMap's ID of the city, or -1 until the location has been synced once */
+    final long owmId;
+
+    /*
+     * Whether the full forecast, METAR and TAF are requested for this location. If not, only
+     * its current conditions are refreshed, together with other locations in a group request.
+     */
+    final boolean fullRefresh;
+
+    /*
+     * METAR and TAF can only be requested once we know the coordinates, so their URLs may be
+     * null.
+     */
+    final URL weatherUrl;
+    final URL METARUrl;
+    final URL TAFUrl;
+
+    /* The requests in flight, then their responses once they have come back */
+    Future<ResponseBody> weatherFetch;
+    Future<ResponseBody> METARFetch;
+    Future<ResponseBody> TAFFetch;
+
+    ResponseBody weatherResponse;
+    ResponseBody METARResponse;
+    ResponseBody TAFResponse;
+
+    SyncLocation(long id, String query, double[] coordinates, boolean preferred, long owmId,
+                 boolean fullRefresh) {
+        this.id = id;
+        this.query = query;
+        this.coordinates = coordinates;
+        this.preferred = preferred;
+        this.owmId = owmId;
+        this.fullRefresh = fullRefresh;
+
+        weatherUrl = NetworkUtils.getUrl(query, coordinates);
+        METARUrl = NetworkUtils.getMETARUrl(coordinates);
+        TAFUrl = NetworkUtils.getTAFUrl(coordinates);
+    }
+
+    /**
+     * Returns the pooled buffers of the responses.
+     */
+    void release() {
+        if (weatherResponse != null) weatherResponse.release();
+        if (METARResponse != null) METARResponse.release();
+        if (TAFResponse != null) TAFResponse.release();
+        weatherResponse = null;
+        METARResponse = null;
+        TAFResponse = null;
+    }
+}
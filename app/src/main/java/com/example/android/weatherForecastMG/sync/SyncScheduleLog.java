@@ -0,0 +1,91 @@
+package com.example.android.weatherForecastMG.sync;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the inputs and decision of the last scheduling runs of {@link AdaptiveSyncPolicy} in a
+ * file, one run per line: the inputs as {@link AdaptiveSyncPolicy.Inputs#toRecord()} writes
+ * them, " -> ", then the decision. Reading the inputs back and deciding again replays the
+ * policy, on the JVM if need be.
+ */
+final class SyncScheduleLog {
+
+    private static final String TAG = SyncScheduleLog.class.getSimpleName();
+
+    private static final String FILE_NAME = "sync_schedule.log";
+
+    /* Only the most recent runs are kept */
+    private static final int MAX_RECORDS = 100;
+
+    static final String SEPARATOR = " -> ";
+
+    private SyncScheduleLog() {
+    }
+
+    /**
+     * Adds a scheduling run to the log, dropping the oldest run if it is full. The log is only
+     * there to help us tune the policy, so failing to write it is logged and otherwise ignored.
+     */
+    static synchronized void record(Context context, AdaptiveSyncPolicy.Inputs inputs,
+                                    AdaptiveSyncPolicy.Decision decision) {
+        String record = inputs.toRecord() + SEPARATOR + decision.toRecord();
+        Log.v(TAG, record);
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        try {
+            List<String> records = read(file);
+            records.add(record);
+            if (records.size() > MAX_RECORDS) {
+                records = records.subList(records.size() - MAX_RECORDS, records.size());
+            }
+
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            try {
+                for (String line : records) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write " + FILE_NAME, e);
+        }
+    }
+
+    /**
+     * @return The runs in the log, oldest first
+     */
+    static synchronized List<String> read(Context context) throws IOException {
+        return read(new File(context.getFilesDir(), FILE_NAME));
+    }
+
+    private static List<String> read(File file) throws IOException {
+        List<String> records = new ArrayList<String>();
+        if (!file.exists()) return records;
+
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) records.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return records;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.android.weatherForecastMG.sync;
+
+import android.os.SystemClock;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each stage of a sync took, so we can tell where the time goes. Stages that
+ * run on the fetch threads record themselves here too, so all methods are thread safe.
+ */
+final class SyncTimings {
+
+    private final long mStartMillis = SystemClock.elapsedRealtime();
+
+    /* Stage name to duration in milliseconds, in the order the stages finished */
+    private final Map<String, Long> mStageMillis = new LinkedHashMap<>();
+
+    /**
+     * @return The timestamp to pass to {@link #record(String, long)} when the stage is done
+     */
+    long begin() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Records a stage that started at the given timestamp and has just finished.
+     *
+     * @param stage      Name of the stage
+     * @param beginMillis Value returned by {@link #begin()} when the stage started
+     */
+    synchronized void record(String stage, long beginMillis) {
+        mStageMillis.put(stage, SystemClock.elapsedRealtime() - beginMillis);
+    }
+
+    /**
+     * @return Milliseconds elapsed since this object was created
+     */
+    long getTotalMillis() {
+        return SystemClock.elapsedRealtime() - mStartMillis;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> stage : mStageMillis.entrySet()) {
+            builder.append(stage.getKey()).append('=').append(stage.getValue()).append("ms ");
+        }
+        return builder.append("total=").append(getTotalMillis()).append("ms").toString();
+    }
+}
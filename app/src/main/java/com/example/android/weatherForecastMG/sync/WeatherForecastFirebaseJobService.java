@@ -1,17 +1,34 @@
 package com.example.android.weatherForecastMG.sync;
 
 import android.content.Context;
-import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.JobParameters;
 import com.firebase.jobdispatcher.JobService;
 import com.firebase.jobdispatcher.RetryStrategy;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 
 public class WeatherForecastFirebaseJobService extends JobService {
 
-    private AsyncTask<Void, Void, Void> mFetchWeatherTask;
+    private static final String TAG = WeatherForecastFirebaseJobService.class.getSimpleName();
+
+    /*
+     * Every sync job runs on this one thread, which is kept for the life of the process rather
+     * than a new AsyncTask being created for each job. Syncs can't run side by side anyway, as
+     * SyncCoordinator only lets one in at a time. Other work that goes with the syncs, like
+     * rescheduling them, is run on it too.
+     */
+    static final ExecutorService sSyncExecutor = Executors.newSingleThreadExecutor();
+
+    /* The job running or waiting to run, and what stops it */
+    private Future<?> mSyncJob;
+    private SyncCancellation mSyncCancellation;
 
     /**
      * The entry point to your Job. Implementations should offload work to another thread of
@@ -25,29 +42,37 @@ public class WeatherForecastFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStartJob(final JobParameters jobParameters) {
+        final Context context = getApplicationContext();
+        final SyncCancellation cancellation = new SyncCancellation();
 
-        mFetchWeatherTask = new AsyncTask<Void, Void, Void>(){
+        mSyncCancellation = cancellation;
+        mSyncJob = sSyncExecutor.submit(new Runnable() {
             @Override
-            protected Void doInBackground(Void... voids) {
-                Context context = getApplicationContext();
-                WeatherForecastSyncTask.syncWeather(context);
-                jobFinished(jobParameters, false);
-                return null;
-            }
+            public void run() {
+                long begin = SystemClock.elapsedRealtime();
+                boolean completed = SyncCoordinator.sync(context, cancellation);
+                long ranMillis = SystemClock.elapsedRealtime() - begin;
 
-            @Override
-            protected void onPostExecute(Void aVoid) {
-                jobFinished(jobParameters, false);
+                /*
+                 * A job that was stopped must not be reported finished; the dispatcher already
+                 * knows, and reschedules it as onStopJob asked.
+                 */
+                if (completed) {
+                    Log.v(TAG, "Sync job finished after " + ranMillis + "ms");
+                    jobFinished(jobParameters, false);
+                } else {
+                    Log.v(TAG, "Sync job stopped after " + ranMillis + "ms");
+                }
             }
-        };
-
-        mFetchWeatherTask.execute();
+        });
         return true;
     }
 
     /**
      * Called when the scheduling engine has decided to interrupt the execution of a running job,
      * most likely because the runtime constraints associated with the job are no longer satisfied.
+     * The sync is cancelled, and stops at its next check or as soon as its requests in flight
+     * are cut off.
      *
      * @return whether the job should be retried
      * @see Job.Builder#setRetryStrategy(RetryStrategy)
@@ -55,9 +80,13 @@ public class WeatherForecastFirebaseJobService extends JobService {
      */
     @Override
     public boolean onStopJob(JobParameters jobParameters) {
-        if (mFetchWeatherTask != null) {
-            mFetchWeatherTask.cancel(true);
+        if (mSyncCancellation != null) {
+            mSyncCancellation.cancel();
+        }
+        if (mSyncJob != null) {
+            /* Only takes the job out of the queue if it hasn't started yet */
+            mSyncJob.cancel(false);
         }
         return true;
     }
-}
\ No newline at end of file
+}
@@ -15,6 +15,7 @@ public class WeatherForecastSyncIntentService extends IntentService {
 
     @Override
     protected void onHandleIntent(Intent intent) {
-        WeatherForecastSyncTask.syncWeather(this);
+        /* Shares a sync already running, or skips it if the forecast was just synced */
+        SyncCoordinator.sync(this, new SyncCancellation());
     }
 }
\ No newline at end of file
@@ -1,24 +1,55 @@
 package com.example.android.weatherForecastMG.sync;
 
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.RemoteException;
 import android.text.format.DateUtils;
 import android.util.Log;
 
+import com.example.android.weatherForecastMG.data.MetarReport;
+import com.example.android.weatherForecastMG.data.TafReport;
 import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
 import com.example.android.weatherForecastMG.data.WeatherContract;
+import com.example.android.weatherForecastMG.utilities.ForecastCity;
+import com.example.android.weatherForecastMG.utilities.ForecastRollup;
+import com.example.android.weatherForecastMG.utilities.HttpResponseDiskCache;
 import com.example.android.weatherForecastMG.utilities.NetworkUtils;
 import com.example.android.weatherForecastMG.utilities.NotificationUtils;
 import com.example.android.weatherForecastMG.utilities.OpenWeatherJsonUtils;
+import com.example.android.weatherForecastMG.utilities.ResponseBody;
+import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
 
+import org.json.JSONException;
+
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static android.content.ContentValues.TAG;
 
 
 public class WeatherForecastSyncTask {
 
+    /*
+     * Forecasts are parsed with the streaming JsonReader parser where the device supports it.
+     * Flip this to false to go through the JSONObject parser instead, e.g. to compare the two.
+     */
+    private static final boolean USE_STREAMING_FORECAST_PARSER = true;
+
     public static final String[] WEATHER_METAR_PROJECTION = {
             WeatherContract.WeatherEntry.COLUMN_METAR_RAW,
             WeatherContract.WeatherEntry.COLUMN_DEWPOINT_C,
@@ -28,115 +59,787 @@ public class WeatherForecastSyncTask {
             WeatherContract.WeatherEntry.COLUMN_VISIBILITY_METERS
     };
 
+    /* METARs and TAFs are kept for a day, so recent reports can be looked at offline */
+    private static final long AVIATION_HISTORY_MILLIS = DateUtils.DAY_IN_MILLIS;
+
+    /*
+     * Locations other than the one picked in the settings get their full forecast, METAR and
+     * TAF this often. In the syncs in between, only their current conditions are refreshed, all
+     * of them together through OpenWeatherMap's group endpoint.
+     */
+    private static final long SECONDARY_FORECAST_MAX_AGE_MILLIS = 12 * DateUtils.HOUR_IN_MILLIS;
+
+    /* Names of the stages recorded in SyncTimings */
+    private static final String STAGE_LOCATIONS = "locations";
+    private static final String STAGE_FETCH = "fetch";
+    private static final String STAGE_FORECAST = "forecast";
+    private static final String STAGE_GROUP = "group";
+    private static final String STAGE_METAR = "metar";
+    private static final String STAGE_TAF = "taf";
+    private static final String STAGE_AVIATION = "aviation";
+
+    /* The columns of the location table a sync needs, and their indices in the cursor */
+    private static final String[] LOCATION_PROJECTION = {
+            WeatherContract.LocationEntry._ID,
+            WeatherContract.LocationEntry.COLUMN_QUERY,
+            WeatherContract.LocationEntry.COLUMN_LATITUDE,
+            WeatherContract.LocationEntry.COLUMN_LONGITUDE,
+            WeatherContract.LocationEntry.COLUMN_OWM_ID,
+            WeatherContract.LocationEntry.COLUMN_FORECAST_SYNCED
+    };
+    private static final int INDEX_LOCATION_ID = 0;
+    private static final int INDEX_LOCATION_QUERY = 1;
+    private static final int INDEX_LOCATION_LATITUDE = 2;
+    private static final int INDEX_LOCATION_LONGITUDE = 3;
+    private static final int INDEX_LOCATION_OWM_ID = 4;
+    private static final int INDEX_LOCATION_FORECAST_SYNCED = 5;
+
+    /* What storeForecast returns when there was no new forecast to store */
+    private static final int FORECAST_NOT_STORED = -1;
+
+    /*
+     * The forecast, METAR and TAF requests of a sync are made at the same time on these threads.
+     * With several saved locations there are more requests than threads, and the rest wait in
+     * the queue, so no more than this many are ever in flight. The threads time out when there
+     * is nothing to do.
+     */
+    private static final int FETCH_THREAD_COUNT = 4;
+    private static final long FETCH_THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final ThreadPoolExecutor sFetchExecutor = new ThreadPoolExecutor(
+            FETCH_THREAD_COUNT, FETCH_THREAD_COUNT,
+            FETCH_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+
+    static {
+        sFetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
     /**
-     * Performs the network request for updated weather, parses the JSON from that request, and
+     * Performs the network requests for updated weather, parses the JSON from those requests, and
      * inserts the new weather information into our ContentProvider. Will notify the user that new
      * weather has been loaded if the user hasn't been notified of the weather within the last day
      * AND they haven't disabled notifications in the preferences screen.
+     * <p>
+     * Every saved location is synced, so switching to any of them shows fresh weather without
+     * waiting on the network. The sync runs in two stages. First the forecast, METAR and TAF
+     * requests of all locations are sent at once (the fetch threads bound how many are in
+     * flight), so the sync waits about as long as the slowest of them rather than all of them
+     * in a row. Once they have all come back, the responses are parsed and stored one location
+     * after another.
+     * <p>
+     * Only the location picked in the settings, and locations whose forecast is older than
+     * SECONDARY_FORECAST_MAX_AGE_MILLIS, get the three requests each. The current conditions of
+     * the others are refreshed with one group request per twenty locations.
+     * <p>
+     * Requests are made conditional on the response we parsed last time (see
+     * {@link HttpResponseDiskCache}). If the server tells us nothing has changed, parsing and
+     * writing to the database are skipped entirely.
+     *
+     * <p>
+     * The sync can be stopped part way through with {@link SyncCancellation#cancel()}. It checks
+     * for that between its stages, and cancelling cuts off the requests in flight, so it stops
+     * within moments. Whatever was stored before it stopped stays stored.
+     * <p>
+     * Syncs are started through {@link SyncCoordinator#sync(Context, SyncCancellation)}, which
+     * lets requests made while one runs share it.
+     *
+     * @param context      Used to access utility methods and the ContentResolver
+     * @param cancellation Stops the sync when cancelled
+     * @return true if the sync ran to the end, false if it was cancelled
+     */
+    synchronized static boolean syncWeather(Context context, SyncCancellation cancellation) {
+        SyncTimings timings = new SyncTimings();
+        try {
+            syncWeather(context, cancellation, timings);
+        } catch (SyncCancelledException e) {
+            Log.v(TAG, "Sync cancelled before " + e.stage + ", stopped "
+                    + cancellation.getMillisSinceCancelled() + "ms after the request. "
+                    + "Sync timings: " + timings);
+            return false;
+        }
+
+        Log.v(TAG, "Sync timings: " + timings);
+        return true;
+    }
+
+    private static void syncWeather(Context context, SyncCancellation cancellation,
+                                    SyncTimings timings) throws SyncCancelledException {
+        HttpResponseDiskCache responseCache = HttpResponseDiskCache.getInstance(context);
+
+        cancellation.throwIfCancelled(STAGE_LOCATIONS);
+        List<SyncLocation> locations = loadLocations(context);
+        cancellation.throwIfCancelled(STAGE_FETCH);
+        List<SyncLocation> groupLocations = new ArrayList<SyncLocation>();
+
+        /* Fan out: send all requests at once */
+        long fetchBegin = timings.begin();
+        for (SyncLocation location : locations) {
+            if (!location.fullRefresh) {
+                groupLocations.add(location);
+                continue;
+            }
+            location.weatherFetch = startFetch(timings, cancellation,
+                    NetworkUtils.ENDPOINT_FORECAST, location.weatherUrl,
+                    NetworkUtils.NO_HEADERS, responseCache);
+            location.METARFetch = startFetch(timings, cancellation,
+                    NetworkUtils.ENDPOINT_METAR, location.METARUrl,
+                    NetworkUtils.CHECKWX_HEADERS, responseCache);
+            location.TAFFetch = startFetch(timings, cancellation,
+                    NetworkUtils.ENDPOINT_TAF, location.TAFUrl,
+                    NetworkUtils.CHECKWX_HEADERS, responseCache);
+        }
+
+        /*
+         * The current weather changes with every request, so group requests are not made
+         * conditional.
+         */
+        List<URL> groupUrls = NetworkUtils.getGroupUrls(getOwmIds(groupLocations));
+        List<Future<ResponseBody>> groupFetches = new ArrayList<Future<ResponseBody>>();
+        for (URL groupUrl : groupUrls) {
+            groupFetches.add(startFetch(timings, cancellation,
+                    NetworkUtils.ENDPOINT_GROUP, groupUrl, NetworkUtils.NO_HEADERS, null));
+        }
+
+        List<ResponseBody> groupResponses = new ArrayList<ResponseBody>();
+        try {
+            /*
+             * All requests are waited for even if the sync is cancelled meanwhile, so that every
+             * response that did come back is released below. Once cancelled, the requests in
+             * flight fail and the queued ones don't start, so this doesn't take long.
+             */
+            for (SyncLocation location : locations) {
+                location.weatherResponse = awaitFetch(location.weatherFetch, cancellation);
+                location.METARResponse = awaitFetch(location.METARFetch, cancellation);
+                location.TAFResponse = awaitFetch(location.TAFFetch, cancellation);
+            }
+            for (Future<ResponseBody> groupFetch : groupFetches) {
+                groupResponses.add(awaitFetch(groupFetch, cancellation));
+            }
+            timings.record(STAGE_FETCH, fetchBegin);
+
+            /* Join: parse and store whatever came back */
+            cancellation.throwIfCancelled(STAGE_GROUP);
+            long stageBegin = timings.begin();
+            try {
+                storeCurrentWeather(context, groupLocations, groupResponses);
+            } catch (Exception e) {
+                /* Server probably invalid. The full refreshes can still be stored. */
+                e.printStackTrace();
+            }
+            timings.record(STAGE_GROUP, stageBegin);
+
+            for (SyncLocation location : locations) {
+                if (!location.fullRefresh) continue;
+                try {
+                    storeLocation(context, timings, cancellation, responseCache, location);
+                } catch (SyncCancelledException e) {
+                    throw e;
+                } catch (Exception e) {
+                    /* Server probably invalid. The other locations can still be stored. */
+                    e.printStackTrace();
+                }
+            }
+
+            /* If the code reaches this point, we have successfully performed our sync */
+
+        } finally {
+            for (SyncLocation location : locations) {
+                location.release();
+            }
+            for (ResponseBody groupResponse : groupResponses) {
+                releaseQuietly(groupResponse);
+            }
+        }
+    }
+
+    /**
+     * Returns the saved locations, and decides which of them get a full refresh. The location
+     * picked in the settings is saved first if it isn't yet.
+     */
+    private static List<SyncLocation> loadLocations(Context context) {
+        ContentResolver resolver = context.getContentResolver();
+        String preferredQuery = WeatherForecastPreferences.getPreferredWeatherLocation(context);
+
+        ContentValues preferredLocation = new ContentValues();
+        preferredLocation.put(WeatherContract.LocationEntry.COLUMN_QUERY, preferredQuery);
+        resolver.insert(WeatherContract.LocationEntry.CONTENT_URI, preferredLocation);
+
+        List<SyncLocation> locations = new ArrayList<SyncLocation>();
+        Cursor cursor = resolver.query(WeatherContract.LocationEntry.CONTENT_URI,
+                LOCATION_PROJECTION, null, null, null);
+        if (cursor == null) return locations;
+        long now = System.currentTimeMillis();
+        try {
+            while (cursor.moveToNext()) {
+                String query = cursor.getString(INDEX_LOCATION_QUERY);
+
+                double[] coordinates = null;
+                if (!cursor.isNull(INDEX_LOCATION_LATITUDE)
+                        && !cursor.isNull(INDEX_LOCATION_LONGITUDE)) {
+                    coordinates = new double[]{
+                            cursor.getDouble(INDEX_LOCATION_LATITUDE),
+                            cursor.getDouble(INDEX_LOCATION_LONGITUDE)};
+                }
+
+                boolean preferred = query.equals(preferredQuery);
+                long owmId = cursor.isNull(INDEX_LOCATION_OWM_ID)
+                        ? -1 : cursor.getLong(INDEX_LOCATION_OWM_ID);
+
+                /*
+                 * Without an ID the group endpoint can't be asked about the location. A
+                 * forecast synced "in the future" means the clock was changed, so it is
+                 * refreshed too.
+                 */
+                long forecastAge = now - cursor.getLong(INDEX_LOCATION_FORECAST_SYNCED);
+                boolean fullRefresh = preferred
+                        || owmId < 0
+                        || cursor.isNull(INDEX_LOCATION_FORECAST_SYNCED)
+                        || forecastAge < 0
+                        || forecastAge >= SECONDARY_FORECAST_MAX_AGE_MILLIS;
+
+                locations.add(new SyncLocation(cursor.getLong(INDEX_LOCATION_ID), query,
+                        coordinates, preferred, owmId, fullRefresh));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locations;
+    }
+
+    private static long[] getOwmIds(List<SyncLocation> locations) {
+        long[] owmIds = new long[locations.size()];
+        for (int i = 0; i < owmIds.length; i++) {
+            owmIds[i] = locations.get(i).owmId;
+        }
+        return owmIds;
+    }
+
+    /**
+     * Writes the current conditions from the group responses onto today's forecast row of each
+     * location, all in one batch.
+     */
+    private static void storeCurrentWeather(Context context, List<SyncLocation> groupLocations,
+                                            List<ResponseBody> groupResponses)
+            throws JSONException, RemoteException, OperationApplicationException {
+        Map<Long, ContentValues> currentWeather = new HashMap<Long, ContentValues>();
+        for (ResponseBody groupResponse : groupResponses) {
+            if (groupResponse == null) continue;
+            currentWeather.putAll(
+                    OpenWeatherJsonUtils.getCurrentWeatherFromGroupJson(groupResponse.string()));
+        }
+        if (currentWeather.isEmpty()) return;
+
+        long today = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        for (SyncLocation location : groupLocations) {
+            ContentValues todayValues = currentWeather.get(location.owmId);
+            if (todayValues == null) continue;
+
+            operations.add(ContentProviderOperation
+                    .newUpdate(WeatherContract.WeatherEntry.buildWeatherUriForLocationWithDate(
+                            location.id, today))
+                    .withValues(todayValues)
+                    .build());
+        }
+
+        if (!operations.isEmpty()) {
+            context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+        }
+    }
+
+    /**
+     * Parses and stores everything that came back for one location.
+     */
+    private static void storeLocation(Context context, SyncTimings timings,
+                                      SyncCancellation cancellation,
+                                      HttpResponseDiskCache responseCache,
+                                      SyncLocation location) throws Exception {
+        String stageSuffix = ":" + location.id;
+
+        cancellation.throwIfCancelled(STAGE_FORECAST + stageSuffix);
+        long stageBegin = timings.begin();
+        int forecastRowsChanged = storeForecast(context, responseCache, location);
+        if (forecastRowsChanged != FORECAST_NOT_STORED && location.preferred) {
+            /*
+             * Finally, after we insert data into the ContentProvider, determine whether or not
+             * we should notify the user that the weather has been refreshed.
+             */
+            notifyUserIfNeeded(context);
+        }
+        if (location.preferred) {
+            /*
+             * How often the forecast changes decides how often we sync, see AdaptiveSyncPolicy.
+             * A forecast that was downloaded again but gave the same days doesn't count.
+             */
+            WeatherForecastPreferences.recordSyncOutcome(context, forecastRowsChanged > 0,
+                    AdaptiveSyncPolicy.HISTORY_SIZE);
+        }
+        timings.record(STAGE_FORECAST + stageSuffix, stageBegin);
+
+        /* The METAR and TAF today's row shows, which a report not modified since may lack */
+        long today = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+        String[] shownToday = location.METARResponse != null || location.TAFResponse != null
+                ? getAviationShownOnDate(context, location.id, today)
+                : new String[2];
+
+        cancellation.throwIfCancelled(STAGE_METAR + stageSuffix);
+        stageBegin = timings.begin();
+        MetarReport METARReport = parseMETAR(responseCache, location, shownToday[0] != null);
+        timings.record(STAGE_METAR + stageSuffix, stageBegin);
+
+        cancellation.throwIfCancelled(STAGE_TAF + stageSuffix);
+        stageBegin = timings.begin();
+        TafReport TAFReport = parseTAF(responseCache, location, shownToday[1] != null);
+        timings.record(STAGE_TAF + stageSuffix, stageBegin);
+
+        cancellation.throwIfCancelled(STAGE_AVIATION + stageSuffix);
+        stageBegin = timings.begin();
+        storeAviationWeather(context, responseCache, location, today, shownToday,
+                METARReport, TAFReport);
+        if (location.preferred && METARReport != null) {
+            /* The next METAR is due an hour after this one, see AdaptiveSyncPolicy */
+            WeatherForecastPreferences.saveLastMetarObservedTime(context, METARReport.observed);
+        }
+        timings.record(STAGE_AVIATION + stageSuffix, stageBegin);
+    }
+
+    /**
+     * Starts a request on the fetch threads. The request is cut off if the sync is cancelled,
+     * and not made at all if that happens while it waits for a thread.
+     *
+     * @return The pending response, or null if there is no URL to fetch
+     */
+    static Future<ResponseBody> startFetch(final SyncTimings timings,
+                                           final SyncCancellation cancellation,
+                                           final String endpoint,
+                                           final URL url,
+                                           final Map<String, String> headers,
+                                           final HttpResponseDiskCache responseCache) {
+        if (url == null) return null;
+
+        return sFetchExecutor.submit(new Callable<ResponseBody>() {
+            @Override
+            public ResponseBody call() throws Exception {
+                if (cancellation.isCancelled()) return null;
+
+                long begin = timings.begin();
+                try {
+                    return NetworkUtils.fetch(endpoint, url, headers, responseCache,
+                            cancellation);
+                } finally {
+                    timings.record(STAGE_FETCH + ":" + endpoint, begin);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for a request started with {@link #startFetch}. A failed request doesn't fail the
+     * whole sync; the data it was for is simply not updated this time.
      *
-     * @param context Used to access utility methods and the ContentResolver
+     * @return The response, or null if there was no request, it failed or it was cancelled
      */
-    synchronized public static void syncWeather(Context context) {
+    static ResponseBody awaitFetch(Future<ResponseBody> fetch, SyncCancellation cancellation) {
+        if (fetch == null) return null;
 
         try {
+            return fetch.get();
+        } catch (ExecutionException e) {
+            /* A request cut off by cancelling the sync didn't fail as such */
+            if (!cancellation.isCancelled()) Log.w(TAG, "Request failed", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            fetch.cancel(true);
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static void releaseQuietly(ResponseBody body) {
+        if (body != null) body.release();
+    }
+
+    /**
+     * Parses and stores the forecast of a location, and the city details the forecast gives for
+     * it.
+     *
+     * @return How many days of forecast the database changed by, or FORECAST_NOT_STORED if
+     * there was no new forecast to store
+     */
+    private static int storeForecast(Context context, HttpResponseDiskCache responseCache,
+                                         SyncLocation location)
+            throws IOException, JSONException {
+        ResponseBody weatherResponse = location.weatherResponse;
+        if (weatherResponse == null) return FORECAST_NOT_STORED;
+
+        ResponseBody cachedResponse = null;
+        if (weatherResponse.isNotModified()) {
             /*
-             * The getUrl method will return the URL that we need to get the forecast JSON for the
-             * weather. It will decide whether to create a URL based off of the latitude and
-             * longitude or off of a simple location as a String.
+             * The forecast we parsed last time is still current. That only helps us if its rows
+             * are still in the database, otherwise we parse the copy we kept on disk.
              */
-            URL weatherRequestUrl = NetworkUtils.getUrl(context);
+            if (hasForecastFromToday(context, location.id)) {
+                Log.v(TAG, "Forecast not modified, skipping parse");
+                storeLocationDetails(context, location, null);
+                return FORECAST_NOT_STORED;
+            }
 
-            /* Use the URL to retrieve the JSON */
-            String jsonWeatherResponse = NetworkUtils.getResponseFromHttpUrl(weatherRequestUrl);
+            cachedResponse = responseCache.getBody(location.weatherUrl);
+            if (cachedResponse == null) return FORECAST_NOT_STORED;
+            weatherResponse = cachedResponse;
+        }
 
-            /* Parse the JSON into a list of weather values */
-            ContentValues[] weatherValues = OpenWeatherJsonUtils
-                    .getWeatherContentValuesFromJson(context, jsonWeatherResponse);
+        try {
+            /* Parse the JSON into a list of 3-hour entries */
+            ContentValues[] hourlyValues;
+            ForecastCity city = new ForecastCity();
+            if (USE_STREAMING_FORECAST_PARSER
+                    && OpenWeatherJsonUtils.isStreamingParserAvailable()) {
+                hourlyValues = OpenWeatherJsonUtils.getHourlyContentValuesFromStream(
+                        weatherResponse.openStream(), city);
+            } else {
+                hourlyValues = OpenWeatherJsonUtils.getHourlyContentValuesFromJson(
+                        weatherResponse.string(), city);
+            }
 
             /*
-             * In cases where our JSON contained an error code, getWeatherContentValuesFromJson
+             * In cases where our JSON contained an error code, getHourlyContentValuesFromJson
              * would have returned null. We need to check for those cases here to prevent any
              * NullPointerExceptions being thrown. We also have no reason to insert fresh data if
              * there isn't any to insert.
              */
-            if (weatherValues != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                ContentResolver WeatherForecastContentResolver = context.getContentResolver();
+            if (hourlyValues == null || hourlyValues.length == 0) return FORECAST_NOT_STORED;
 
-                /* Delete old weather data because we don't need to keep multiple days' data */
-                WeatherForecastContentResolver.delete(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        null,
-                        null);
+            /* Roll the entries up into the days the forecast list shows */
+            ContentValues[] weatherValues = ForecastRollup.getDailyContentValues(hourlyValues);
 
-                /* Insert our new weather data into WeatherForecast's ContentProvider */
-                WeatherForecastContentResolver.bulkInsert(
-                        WeatherContract.WeatherEntry.CONTENT_URI,
-                        weatherValues);
+            /*
+             * Store the forecast through the upsert URI. Rather than deleting everything and
+             * inserting it all again, the provider only writes the days that changed and drops
+             * the days that have passed, and notifies observers once (or not at all if nothing
+             * changed). It returns how many days it inserted, updated or removed.
+             */
+            ContentResolver WeatherForecastContentResolver = context.getContentResolver();
+            int rowsChanged = WeatherForecastContentResolver.bulkInsert(
+                    WeatherContract.WeatherEntry.buildUpsertUriForLocation(location.id),
+                    weatherValues);
+            WeatherForecastContentResolver.bulkInsert(
+                    WeatherContract.HourlyEntry.buildHourlyUriForLocation(location.id),
+                    hourlyValues);
 
-                /*
-                 * Finally, after we insert data into the ContentProvider, determine whether or not
-                 * we should notify the user that the weather has been refreshed.
-                 */
-                boolean notificationsEnabled = WeatherForecastPreferences.areNotificationsEnabled(context);
+            storeLocationDetails(context, location, city);
 
-                /*
-                 * If the last notification was shown was more than 1 day ago, we want to send
-                 * another notification to the user that the weather has been updated. Remember,
-                 * it's important that you shouldn't spam your users with notifications.
-                 */
-                long timeSinceLastNotification = WeatherForecastPreferences
-                        .getEllapsedTimeSinceLastNotification(context);
+            /*
+             * Only now that the data is stored is a later 304 safe to act on. A forecast parsed
+             * from the cache is in it already.
+             */
+            if (cachedResponse == null) responseCache.put(location.weatherUrl, weatherResponse);
+            return rowsChanged;
+        } finally {
+            releaseQuietly(cachedResponse);
+        }
+    }
 
-                boolean oneDayPassedSinceLastNotification = false;
+    /**
+     * Records that the forecast of a location is current, along with the city details it gives.
+     * The coordinates let its METAR and TAF be requested from the next sync on, and the
+     * OpenWeatherMap ID lets it be refreshed in group requests. The preferences keep the
+     * coordinates of the location picked in the settings for the rest of the app, e.g. to show it
+     * on a map.
+     *
+     * @param city The city from the forecast, or null if the forecast was not modified
+     */
+    private static void storeLocationDetails(Context context, SyncLocation location,
+                                             ForecastCity city) {
+        ContentValues details = new ContentValues();
+        details.put(WeatherContract.LocationEntry.COLUMN_FORECAST_SYNCED,
+                System.currentTimeMillis());
 
-                if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
-                    oneDayPassedSinceLastNotification = true;
-                }
+        if (city != null && city.id >= 0 && city.id != location.owmId) {
+            details.put(WeatherContract.LocationEntry.COLUMN_OWM_ID, city.id);
+        }
 
-                /*
-                 * We only want to show the notification if the user wants them shown and we
-                 * haven't shown a notification in the past day.
-                 */
-                if (notificationsEnabled && oneDayPassedSinceLastNotification) {
-                    NotificationUtils.notifyUserOfNewWeather(context);
-                }
+        if (city != null && city.hasCoordinates()) {
+            if (location.coordinates == null
+                    || location.coordinates[0] != city.latitude
+                    || location.coordinates[1] != city.longitude) {
+                details.put(WeatherContract.LocationEntry.COLUMN_LATITUDE, city.latitude);
+                details.put(WeatherContract.LocationEntry.COLUMN_LONGITUDE, city.longitude);
+            }
 
-            /* If the code reaches this point, we have successfully performed our sync */
+            if (location.preferred) {
+                WeatherForecastPreferences.setLocationDetails(context,
+                        city.latitude, city.longitude);
+            }
+        }
 
-            /*METAR data */
-                URL METARRequestUrl = NetworkUtils.getMETARUrl(context);
-            /* Use the URL to retrieve the JSON */
-                String jsonWeatherResponseMETAR = NetworkUtils.getResponseFromHttpUrlWithHeader(METARRequestUrl);
-                Log.v(TAG, "METAR JSON " + jsonWeatherResponseMETAR);
+        context.getContentResolver().update(
+                WeatherContract.LocationEntry.buildLocationUri(location.id),
+                details, null, null);
+    }
 
-            /* Parse the JSON into a list of weather values */
-                ContentValues[] weatherValuesMETAR = OpenWeatherJsonUtils
-                        .getWeatherContentValuesFromJsonMETAR(context, jsonWeatherResponseMETAR);
+    /**
+     * Parses the METAR for a location. A METAR that was not modified is parsed again from the
+     * copy we kept on disk if today's row doesn't show it, as happens once the day changes.
+     *
+     * @param shownToday Whether today's row of the location shows a METAR
+     * @return The decoded METAR, or null if there is nothing new to store
+     */
+    private static MetarReport parseMETAR(HttpResponseDiskCache responseCache,
+                                          SyncLocation location, boolean shownToday)
+            throws JSONException {
+        ResponseBody body = getBodyToParse(responseCache, location.METARUrl,
+                location.METARResponse, shownToday);
+        if (body == null) return null;
 
-                if (weatherValuesMETAR != null && weatherValues.length != 0) {
-                /* Get a handle on the ContentResolver to delete and insert data */
-                    ContentResolver WeatherMETARContentResolver = context.getContentResolver();
+        try {
+            return OpenWeatherJsonUtils.getMetarReportFromJson(body.string());
+        } finally {
+            /* A copy read from the cache is ours to release */
+            if (body != location.METARResponse) releaseQuietly(body);
+        }
+    }
 
+    /**
+     * Parses the TAF for a location, like {@link #parseMETAR} does the METAR.
+     *
+     * @param shownToday Whether today's row of the location shows a TAF
+     * @return The TAF, or null if there is nothing new to store
+     */
+    private static TafReport parseTAF(HttpResponseDiskCache responseCache,
+                                      SyncLocation location, boolean shownToday)
+            throws JSONException {
+        ResponseBody body = getBodyToParse(responseCache, location.TAFUrl,
+                location.TAFResponse, shownToday);
+        if (body == null) return null;
 
-                /* update WeatherForecast's ContentProvider */
-//                    WeatherMETARContentResolver.updateMETARdata(
-  //                          WeatherContract.WeatherEntry.CONTENT_URI,
-    //                        weatherValuesMETAR,
-      //                      WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-        ///                    WEATHER_METAR_PROJECTION
+        try {
+            return OpenWeatherJsonUtils.getTafReportFromJson(body.string());
+        } finally {
+            if (body != location.TAFResponse) releaseQuietly(body);
+        }
+    }
 
-           //                 );
-                }
-            /*METAR data-end */
+    /*
+     * Returns the body to parse a METAR or TAF from: the response, or for a 304 the copy on
+     * disk if today's row doesn't show the report yet. Null if there is nothing to parse.
+     */
+    private static ResponseBody getBodyToParse(HttpResponseDiskCache responseCache, URL url,
+                                               ResponseBody response, boolean shownToday) {
+        if (response == null) return null;
+        if (!response.isNotModified()) return response;
 
+        if (shownToday) {
+            Log.v(TAG, "Report not modified, skipping parse");
+            return null;
+        }
+        return responseCache.getBody(url);
+    }
 
+    /**
+     * Stores the METAR with its cloud layers and the TAF, and copies them onto today's forecast
+     * row of the location for the UI. Everything is written in one batch, so it is stored in one
+     * transaction and the UI only reloads once. Reports older than AVIATION_HISTORY_MILLIS are
+     * removed in the same batch.
+     * <p>
+     * The same METAR and TAF come back from every sync until new ones are issued. A report that
+     * is stored and shown on today's row already is not written again, so that a sync that
+     * brings nothing new doesn't make the forecast list reload.
+     * <p>
+     * A response is only kept for conditional requests once what we parsed from it has been
+     * written.
+     */
+    private static void storeAviationWeather(Context context,
+                                             HttpResponseDiskCache responseCache,
+                                             SyncLocation location,
+                                             long today,
+                                             String[] shownToday,
+                                             MetarReport METARReport,
+                                             TafReport TAFReport)
+            throws RemoteException, OperationApplicationException {
+        if (METARReport == null && TAFReport == null) return;
 
+        boolean newMETAR = METARReport != null
+                && !(METARReport.rawText.equals(shownToday[0])
+                        && isReportStored(context, WeatherContract.MetarEntry.CONTENT_URI,
+                                WeatherContract.MetarEntry.COLUMN_STATION,
+                                WeatherContract.MetarEntry.COLUMN_OBSERVED,
+                                METARReport.station, METARReport.observed));
+        boolean newTAF = TAFReport != null
+                && !(TAFReport.rawText.equals(shownToday[1])
+                        && isReportStored(context, WeatherContract.TafEntry.CONTENT_URI,
+                                WeatherContract.TafEntry.COLUMN_STATION,
+                                WeatherContract.TafEntry.COLUMN_ISSUED,
+                                TAFReport.station, TAFReport.issued));
+
+        if (!newMETAR && !newTAF) {
+            Log.v(TAG, "METAR and TAF already stored, skipping write");
+        } else {
+            writeAviationWeather(context, location, today,
+                    newMETAR ? METARReport : null, newTAF ? TAFReport : null);
+        }
+
+        /* Whatever came back is stored now, whether by this sync or an earlier one */
+        if (METARReport != null) {
+            responseCache.put(location.METARUrl, location.METARResponse);
+        }
+        if (TAFReport != null) {
+            responseCache.put(location.TAFUrl, location.TAFResponse);
+        }
+    }
+
+    /*
+     * Writes the reports that are new, and removes the old ones, in one batch.
+     */
+    private static void writeAviationWeather(Context context, SyncLocation location, long today,
+                                             MetarReport METARReport, TafReport TAFReport)
+            throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        ContentValues todayValues = new ContentValues();
+
+        if (METARReport != null) {
+            todayValues.putAll(METARReport.toWeatherValues());
+
+            /* A report we have seen before replaces its old layers rather than adding to them */
+            operations.add(ContentProviderOperation
+                    .newDelete(WeatherContract.CloudLayerEntry.CONTENT_URI)
+                    .withSelection(WeatherContract.CloudLayerEntry.COLUMN_STATION + " = ? AND "
+                                    + WeatherContract.CloudLayerEntry.COLUMN_OBSERVED + " = ?",
+                            new String[]{METARReport.station, Long.toString(METARReport.observed)})
+                    .build());
+            operations.add(ContentProviderOperation
+                    .newInsert(WeatherContract.MetarEntry.CONTENT_URI)
+                    .withValues(METARReport.toMetarValues())
+                    .build());
+            for (int layer = 0; layer < METARReport.cloudLayers.size(); layer++) {
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.CloudLayerEntry.CONTENT_URI)
+                        .withValues(METARReport.toCloudLayerValues(layer))
+                        .build());
             }
+        }
+
+        if (TAFReport != null) {
+            todayValues.put(WeatherContract.WeatherEntry.COLUMN_TAF_RAW, TAFReport.rawText);
+
+            operations.add(ContentProviderOperation
+                    .newInsert(WeatherContract.TafEntry.CONTENT_URI)
+                    .withValues(TAFReport.toTafValues())
+                    .build());
+        }
+
+        operations.add(ContentProviderOperation
+                .newUpdate(WeatherContract.WeatherEntry.buildWeatherUriForLocationWithDate(
+                        location.id, today))
+                .withValues(todayValues)
+                .build());
+
+        String[] historyArgs = new String[]{
+                Long.toString(System.currentTimeMillis() - AVIATION_HISTORY_MILLIS)};
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.MetarEntry.CONTENT_URI)
+                .withSelection(WeatherContract.MetarEntry.COLUMN_OBSERVED + " < ?", historyArgs)
+                .build());
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.CloudLayerEntry.CONTENT_URI)
+                .withSelection(WeatherContract.CloudLayerEntry.COLUMN_OBSERVED + " < ?",
+                        historyArgs)
+                .build());
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.TafEntry.CONTENT_URI)
+                .withSelection(WeatherContract.TafEntry.COLUMN_ISSUED + " < ?", historyArgs)
+                .build());
+
+        context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+    }
+
+    /*
+     * Returns the raw METAR and TAF on the forecast row of a location for a date, either of
+     * which may be null.
+     */
+    private static String[] getAviationShownOnDate(Context context, long locationId, long date) {
+        String[] shown = new String[2];
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriForLocationWithDate(locationId, date),
+                new String[]{
+                        WeatherContract.WeatherEntry.COLUMN_METAR_RAW,
+                        WeatherContract.WeatherEntry.COLUMN_TAF_RAW},
+                null, null, null);
+        if (cursor == null) return shown;
+        try {
+            if (cursor.moveToFirst()) {
+                shown[0] = cursor.getString(0);
+                shown[1] = cursor.getString(1);
+            }
+        } finally {
+            cursor.close();
+        }
+        return shown;
+    }
+
+    /*
+     * Returns true if a report from the station with the same observation or issue time is
+     * stored already.
+     */
+    private static boolean isReportStored(Context context, Uri reportUri, String stationColumn,
+                                          String timeColumn, String station, long time) {
+        Cursor cursor = context.getContentResolver().query(reportUri,
+                new String[]{timeColumn},
+                stationColumn + " = ? AND " + timeColumn + " = ?",
+                new String[]{station, Long.toString(time)},
+                null);
+        if (cursor == null) return false;
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns true if the weather table has forecast rows from today onwards for a location.
+     */
+    private static boolean hasForecastFromToday(Context context, long locationId) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriForLocation(locationId),
+                new String[]{WeatherContract.WeatherEntry._ID},
+                WeatherContract.WeatherEntry.SQL_SELECT_TODAY_ONWARDS,
+                WeatherContract.WeatherEntry.getSelectionArgsForTodayOnwards(),
+                null);
+        if (cursor == null) return false;
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Shows the new weather notification if the user wants them and hasn't seen one in a day.
+     */
+    private static void notifyUserIfNeeded(Context context) {
+        boolean notificationsEnabled = WeatherForecastPreferences.areNotificationsEnabled(context);
+
+        /*
+         * If the last notification was shown was more than 1 day ago, we want to send
+         * another notification to the user that the weather has been updated. Remember,
+         * it's important that you shouldn't spam your users with notifications.
+         */
+        long timeSinceLastNotification = WeatherForecastPreferences
+                .getEllapsedTimeSinceLastNotification(context);
+
+        boolean oneDayPassedSinceLastNotification = false;
+
+        if (timeSinceLastNotification >= DateUtils.DAY_IN_MILLIS) {
+            oneDayPassedSinceLastNotification = true;
+        }
 
-        } catch (Exception e) {
-            /* Server probably invalid */
-            e.printStackTrace();
+        /*
+         * We only want to show the notification if the user wants them shown and we
+         * haven't shown a notification in the past day.
+         */
+        if (notificationsEnabled && oneDayPassedSinceLastNotification) {
+            NotificationUtils.notifyUserOfNewWeather(context);
         }
     }
-}
\ No newline at end of file
+}
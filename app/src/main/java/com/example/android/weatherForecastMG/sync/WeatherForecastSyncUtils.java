@@ -1,5 +1,8 @@
 package com.example.android.weatherForecastMG.sync;
 
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
@@ -7,6 +10,7 @@ import android.net.Uri;
 import android.support.annotation.NonNull;
 
 import com.example.android.weatherForecastMG.data.WeatherContract;
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
 import com.firebase.jobdispatcher.Constraint;
 import com.firebase.jobdispatcher.Driver;
 import com.firebase.jobdispatcher.FirebaseJobDispatcher;
@@ -15,28 +19,69 @@ import com.firebase.jobdispatcher.Job;
 import com.firebase.jobdispatcher.Lifetime;
 import com.firebase.jobdispatcher.Trigger;
 
-import java.util.concurrent.TimeUnit;
-
 public class WeatherForecastSyncUtils {
 
     /*
-     * Interval at which to sync with the weather. Use TimeUnit for convenience, rather than
-     * writing out a bunch of multiplication ourselves and risk making a silly mistake.
+     * The interval at which to sync with the weather isn't fixed; AdaptiveSyncPolicy decides it
+     * from how often the forecast changes, when the next METAR is due and whether the app is in
+     * use.
      */
-    private static final int SYNC_INTERVAL_HOURS = 3;
-    private static final int SYNC_INTERVAL_SECONDS = (int) TimeUnit.HOURS.toSeconds(SYNC_INTERVAL_HOURS);
-    private static final int SYNC_FLEXTIME_SECONDS = SYNC_INTERVAL_SECONDS / 3;
+    private static final AdaptiveSyncPolicy sSyncPolicy =
+            new AdaptiveSyncPolicy(AdaptiveSyncPolicy.SYSTEM_CLOCK);
 
     private static boolean sInitialized;
 
     private static final String WeatherForecast_SYNC_TAG = "WeatherForecast-sync";
 
+    private static final String[] LOCATION_COORDINATES_PROJECTION = {
+            WeatherContract.LocationEntry.COLUMN_LATITUDE,
+            WeatherContract.LocationEntry.COLUMN_LONGITUDE
+    };
+
     /**
      * Schedules a repeating sync of WeatherForecast's weather data using FirebaseJobDispatcher.
      * @param context Context used to create the GooglePlayDriver that powers the
      *                FirebaseJobDispatcher
      */
     static void scheduleFirebaseJobDispatcherSync(@NonNull final Context context) {
+        scheduleFirebaseJobDispatcherSync(context, decideSyncInterval(context));
+    }
+
+    /**
+     * Schedules the periodic sync again if the policy now decides on another interval than the
+     * one it is scheduled with. Called after every sync, as each one changes what the decision
+     * is made from.
+     *
+     * @param context Context used to access the preferences and to schedule the sync
+     */
+    static void rescheduleIfNeeded(@NonNull final Context context) {
+        AdaptiveSyncPolicy.Decision decision = decideSyncInterval(context);
+        if (decision.intervalSeconds
+                != WeatherForecastPreferences.getScheduledSyncInterval(context)) {
+            scheduleFirebaseJobDispatcherSync(context, decision);
+        }
+    }
+
+    /*
+     * Takes the inputs of the sync policy from the preferences, and records them in the
+     * SyncScheduleLog together with what was decided.
+     */
+    private static AdaptiveSyncPolicy.Decision decideSyncInterval(Context context) {
+        AdaptiveSyncPolicy.Inputs inputs = sSyncPolicy.takeInputs(
+                WeatherForecastPreferences.getSyncChangeHistory(context),
+                WeatherForecastPreferences.getSyncChangeSamples(context),
+                WeatherForecastPreferences.isLocationLatLonAvailable(context),
+                WeatherForecastPreferences.getLastMetarObservedTime(context),
+                WeatherForecastPreferences.getLastAppOpenedTime(context));
+        AdaptiveSyncPolicy.Decision decision = sSyncPolicy.decide(inputs);
+        SyncScheduleLog.record(context, inputs, decision);
+        return decision;
+    }
+
+    private static void scheduleFirebaseJobDispatcherSync(Context context,
+                                                          AdaptiveSyncPolicy.Decision decision) {
+        int intervalSeconds = (int) decision.intervalSeconds;
+        int flexSeconds = (int) decision.flexSeconds;
 
         Driver driver = new GooglePlayDriver(context);
         FirebaseJobDispatcher dispatcher = new FirebaseJobDispatcher(driver);
@@ -64,15 +109,16 @@ public class WeatherForecastSyncUtils {
                  */
                 .setRecurring(true)
                 /*
-                 * We want the weather data to be synced every 3 to 4 hours. The first argument for
+                 * We want the weather data to be synced every interval the policy decided on,
+                 * give or take a third of it. The first argument for
                  * Trigger's static executionWindow method is the start of the time frame when the
                  * sync should be performed. The second argument is the latest point in time at
                  * which the data should be synced. Please note that this end time is not
                  * guaranteed, but is more of a guideline for FirebaseJobDispatcher to go off of.
                  */
                 .setTrigger(Trigger.executionWindow(
-                        SYNC_INTERVAL_SECONDS,
-                        SYNC_INTERVAL_SECONDS + SYNC_FLEXTIME_SECONDS))
+                        intervalSeconds,
+                        intervalSeconds + flexSeconds))
                 /*
                  * If a Job with the tag with provided already exists, this new job will replace
                  * the old one.
@@ -83,7 +129,9 @@ public class WeatherForecastSyncUtils {
 
         /* Schedule the Job with the dispatcher */
         dispatcher.schedule(syncWeatherForecastJob);
+        WeatherForecastPreferences.saveScheduledSyncInterval(context, decision.intervalSeconds);
     }
+
     /**
      * Creates periodic sync tasks and checks to see if an immediate sync is required. If an
      * immediate sync is required, this method will take care of making sure that sync occurs.
@@ -94,29 +142,52 @@ public class WeatherForecastSyncUtils {
     synchronized public static void initialize(@NonNull final Context context) {
 
         /*
-         * Only perform initialization once per app lifetime. If initialization has already been
-         * performed, we have nothing to do in this method.
+         * Whether the app is in use is one of the things the sync interval is decided from.
+         * Opening it only changes the decision if it wasn't in use until now, e.g. because it
+         * hadn't been opened for days.
          */
-        if (sInitialized) return;
-
-        sInitialized = true;
+        boolean wasInUse = sSyncPolicy.isAppInUse(
+                WeatherForecastPreferences.getLastAppOpenedTime(context));
+        WeatherForecastPreferences.saveLastAppOpenedTime(context, System.currentTimeMillis());
 
         /*
-         * This method call triggers WeatherForecast to create its task to synchronize weather data
-         * periodically.
+         * Only perform initialization once per app lifetime. If initialization has already been
+         * performed, all that is left to do is to reschedule the sync if the app has come back
+         * into use. Deciding the interval writes to the SyncScheduleLog file, so it is done on
+         * the thread the syncs run on.
          */
-        scheduleFirebaseJobDispatcherSync(context);
+        if (sInitialized) {
+            if (!wasInUse) {
+                final Context appContext = context.getApplicationContext();
+                WeatherForecastFirebaseJobService.sSyncExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        rescheduleIfNeeded(appContext);
+                    }
+                });
+            }
+            return;
+        }
+
+        sInitialized = true;
 
         /*
          * We need to check to see if our ContentProvider has data to display in our forecast
          * list. However, performing a query on the main thread is a bad idea as this may
          * cause our UI to lag. Therefore, we create a thread in which we will run the query
-         * to check the contents of our ContentProvider.
+         * to check the contents of our ContentProvider. Scheduling the periodic sync writes to
+         * the SyncScheduleLog file, so it is done on that thread too.
          */
         Thread checkForEmpty = new Thread(new Runnable() {
             @Override
             public void run() {
 
+                /*
+                 * This method call triggers WeatherForecast to create its task to synchronize
+                 * weather data periodically.
+                 */
+                scheduleFirebaseJobDispatcherSync(context);
+
                 /* URI for every row of weather data in our weather table*/
                 Uri forecastQueryUri = WeatherContract.WeatherEntry.CONTENT_URI;
 
@@ -127,15 +198,16 @@ public class WeatherForecastSyncUtils {
                  * to determine what weather details need to be displayed.
                  */
                 String[] projectionColumns = {WeatherContract.WeatherEntry._ID};
-                String selectionStatement = WeatherContract.WeatherEntry
-                        .getSqlSelectForTodayOnwards();
+                String selectionStatement = WeatherContract.WeatherEntry.SQL_SELECT_TODAY_ONWARDS;
+                String[] selectionArguments =
+                        WeatherContract.WeatherEntry.getSelectionArgsForTodayOnwards();
 
                 /* Here, we perform the query to check to see if we have any weather data */
                 Cursor cursor = context.getContentResolver().query(
                         forecastQueryUri,
                         projectionColumns,
                         selectionStatement,
-                        null,
+                        selectionArguments,
                         null);
                 /*
                  * A Cursor object can be null for various different reasons. A few are
@@ -164,6 +236,80 @@ public class WeatherForecastSyncUtils {
         checkForEmpty.start();
     }
 
+    /**
+     * Switches the app to the location just picked in the settings. Every saved location is
+     * kept in the database, so when the user goes back to one they used before its forecast can
+     * be shown right away from what was synced last. We only go to the network if there is
+     * nothing from today for that location yet, e.g. because it was never picked before.
+     * <p>
+     * Like {@link #initialize(Context)}, the queries are run on a separate thread to keep them
+     * off the main thread.
+     *
+     * @param context Context used to access the ContentResolver and the preferences
+     */
+    public static void onLocationChanged(@NonNull final Context context) {
+        final Context appContext = context.getApplicationContext();
+
+        Thread switchLocation = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ContentResolver resolver = appContext.getContentResolver();
+
+                /* Save the location if it is new, and find out its _ID */
+                ContentValues location = new ContentValues();
+                location.put(WeatherContract.LocationEntry.COLUMN_QUERY,
+                        WeatherForecastPreferences.getPreferredWeatherLocation(appContext));
+                Uri locationUri = resolver.insert(
+                        WeatherContract.LocationEntry.CONTENT_URI, location);
+                if (locationUri == null) {
+                    startImmediateSync(appContext);
+                    return;
+                }
+
+                /* Bring back the coordinates we already know for it, if any */
+                Cursor cursor = resolver.query(locationUri, LOCATION_COORDINATES_PROJECTION,
+                        null, null, null);
+                if (cursor != null) {
+                    if (cursor.moveToFirst() && !cursor.isNull(0) && !cursor.isNull(1)) {
+                        WeatherForecastPreferences.setLocationDetails(appContext,
+                                cursor.getDouble(0), cursor.getDouble(1));
+                    }
+                    cursor.close();
+                }
+
+                /*
+                 * WeatherEntry.CONTENT_URI always shows the preferred location, so anything
+                 * observing it reloads with the forecast of the new one.
+                 */
+                resolver.notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+
+                if (!hasForecastFromToday(appContext, ContentUris.parseId(locationUri))) {
+                    startImmediateSync(appContext);
+                }
+            }
+        });
+
+        switchLocation.start();
+    }
+
+    /*
+     * Returns true if there are forecast rows from today onwards for the location.
+     */
+    private static boolean hasForecastFromToday(Context context, long locationId) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherUriForLocation(locationId),
+                new String[]{WeatherContract.WeatherEntry._ID},
+                WeatherContract.WeatherEntry.SQL_SELECT_TODAY_ONWARDS,
+                WeatherContract.WeatherEntry.getSelectionArgsForTodayOnwards(),
+                null);
+        if (cursor == null) return false;
+        try {
+            return cursor.getCount() > 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
     /**
      * Helper method to perform a sync immediately using an IntentService for asynchronous
      * execution.
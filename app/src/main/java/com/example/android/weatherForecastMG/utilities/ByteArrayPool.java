@@ -0,0 +1,53 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of fixed size byte arrays used to hold HTTP response bodies. Sync runs again and
+ * again in the background, so handing the same few chunks around saves the garbage collector
+ * from cleaning up a fresh copy of every response.
+ */
+public final class ByteArrayPool {
+
+    /* Size of every chunk handed out by the pool */
+    public static final int CHUNK_SIZE = 8 * 1024;
+
+    /* Upper bound on the memory the pool keeps around when nothing is using it (256 KB) */
+    private static final int MAX_POOLED_CHUNKS = 32;
+
+    private static final ArrayDeque<byte[]> sChunks = new ArrayDeque<>();
+
+    private ByteArrayPool() {
+    }
+
+    /**
+     * Returns a chunk of {@link #CHUNK_SIZE} bytes, reusing a released one if there is any. The
+     * contents of the returned array are undefined.
+     *
+     * @return A byte array of CHUNK_SIZE bytes
+     */
+    public static byte[] acquire() {
+        synchronized (sChunks) {
+            byte[] chunk = sChunks.pollFirst();
+            if (chunk != null) {
+                return chunk;
+            }
+        }
+        return new byte[CHUNK_SIZE];
+    }
+
+    /**
+     * Gives a chunk back to the pool. The caller must not touch the array afterwards.
+     *
+     * @param chunk A chunk previously returned by {@link #acquire()}
+     */
+    public static void release(byte[] chunk) {
+        if (chunk == null || chunk.length != CHUNK_SIZE) return;
+
+        synchronized (sChunks) {
+            if (sChunks.size() < MAX_POOLED_CHUNKS) {
+                sChunks.addFirst(chunk);
+            }
+        }
+    }
+}
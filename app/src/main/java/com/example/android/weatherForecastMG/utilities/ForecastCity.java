@@ -0,0 +1,22 @@
+package com.example.android.weatherForecastMG.utilities;
+
+/**
+ * The city an OpenWeatherMap forecast is for, as read from the "city" object of the response.
+ * Filled in by {@link OpenWeatherJsonUtils} while it parses the forecast.
+ */
+public final class ForecastCity {
+
+    /* OpenWeatherMap's ID of the city, or -1 if the response didn't include one */
+    public long id = -1;
+
+    /* Coordinates of the city, or NaN if the response didn't include them */
+    public double latitude = Double.NaN;
+    public double longitude = Double.NaN;
+
+    /**
+     * @return true if the response included the coordinates of the city
+     */
+    public boolean hasCoordinates() {
+        return !Double.isNaN(latitude) && !Double.isNaN(longitude);
+    }
+}
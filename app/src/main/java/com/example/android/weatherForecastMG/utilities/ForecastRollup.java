@@ -0,0 +1,146 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.ContentValues;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.HourlyEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rolls the 3-hour entries of an OpenWeatherMap forecast up into one row per day for the weather
+ * table. The entries are walked once, in time order, and each day is finished as soon as the
+ * first entry of the next one comes along, so only the day being rolled up is held at a time.
+ * <p>
+ * A day gets:
+ * <ul>
+ * <li>the lowest minimum and highest maximum temperature of its entries</li>
+ * <li>the weather ID that occurs most often among its entries; on a tie, the earliest one</li>
+ * <li>the mean wind speed, and the mean wind direction, weighted by wind speed. Directions are
+ * averaged as vectors, so north-westerly and north-easterly winds average to north rather than
+ * south.</li>
+ * <li>the mean humidity and pressure</li>
+ * </ul>
+ * Days are the days of the local time zone, normalized the same way as every other date in the
+ * weather table (see {@link WeatherForecastDateUtils#getNormalizedUtcDateForTime(long)}). The
+ * first and last day of a forecast are usually only partly covered by its entries.
+ */
+public final class ForecastRollup {
+
+    private ForecastRollup() {
+    }
+
+    /**
+     * @param hourlyValues The rows for the hourly table, in time order as OpenWeatherMap sends
+     *                     them
+     * @return The rows for the weather table, one per day, oldest first
+     */
+    public static ContentValues[] getDailyContentValues(ContentValues[] hourlyValues) {
+        List<ContentValues> dailyValues = new ArrayList<ContentValues>();
+
+        /* The weather IDs seen on the current day and how often, in the order first seen */
+        int[] weatherIds = new int[hourlyValues.length];
+        int[] weatherIdCounts = new int[hourlyValues.length];
+        int distinctWeatherIds = 0;
+
+        long day = Long.MIN_VALUE;
+        int entries = 0;
+        double low = 0;
+        double high = 0;
+        double humiditySum = 0;
+        double pressureSum = 0;
+        double windSpeedSum = 0;
+        double windEastSum = 0;
+        double windNorthSum = 0;
+
+        for (ContentValues entry : hourlyValues) {
+            long entryDay = WeatherForecastDateUtils.getNormalizedUtcDateForTime(
+                    entry.getAsLong(HourlyEntry.COLUMN_TIME));
+
+            if (entryDay != day) {
+                if (entries > 0) {
+                    dailyValues.add(buildDay(day, weatherIds, weatherIdCounts, distinctWeatherIds,
+                            entries, low, high, humiditySum, pressureSum,
+                            windSpeedSum, windEastSum, windNorthSum));
+                }
+
+                day = entryDay;
+                entries = 0;
+                distinctWeatherIds = 0;
+                low = Double.POSITIVE_INFINITY;
+                high = Double.NEGATIVE_INFINITY;
+                humiditySum = 0;
+                pressureSum = 0;
+                windSpeedSum = 0;
+                windEastSum = 0;
+                windNorthSum = 0;
+            }
+
+            entries++;
+            low = Math.min(low, entry.getAsDouble(HourlyEntry.COLUMN_MIN_TEMP));
+            high = Math.max(high, entry.getAsDouble(HourlyEntry.COLUMN_MAX_TEMP));
+            humiditySum += entry.getAsDouble(HourlyEntry.COLUMN_HUMIDITY);
+            pressureSum += entry.getAsDouble(HourlyEntry.COLUMN_PRESSURE);
+
+            /* Meteorological degrees: 0 is wind from the north, 90 wind from the east */
+            double windSpeed = entry.getAsDouble(HourlyEntry.COLUMN_WIND_SPEED);
+            double windRadians = Math.toRadians(entry.getAsDouble(HourlyEntry.COLUMN_DEGREES));
+            windSpeedSum += windSpeed;
+            windEastSum += windSpeed * Math.sin(windRadians);
+            windNorthSum += windSpeed * Math.cos(windRadians);
+
+            int weatherId = entry.getAsInteger(HourlyEntry.COLUMN_WEATHER_ID);
+            int i = 0;
+            while (i < distinctWeatherIds && weatherIds[i] != weatherId) i++;
+            if (i == distinctWeatherIds) {
+                weatherIds[i] = weatherId;
+                weatherIdCounts[i] = 0;
+                distinctWeatherIds++;
+            }
+            weatherIdCounts[i]++;
+        }
+
+        if (entries > 0) {
+            dailyValues.add(buildDay(day, weatherIds, weatherIdCounts, distinctWeatherIds,
+                    entries, low, high, humiditySum, pressureSum,
+                    windSpeedSum, windEastSum, windNorthSum));
+        }
+
+        return dailyValues.toArray(new ContentValues[dailyValues.size()]);
+    }
+
+    /*
+     * Builds the weather row of a day from what was accumulated over its entries. The row has
+     * exactly the columns the forecast rows have always had, so it can be upserted like before.
+     */
+    private static ContentValues buildDay(long day, int[] weatherIds, int[] weatherIdCounts,
+                                          int distinctWeatherIds, int entries,
+                                          double low, double high,
+                                          double humiditySum, double pressureSum,
+                                          double windSpeedSum,
+                                          double windEastSum, double windNorthSum) {
+        int dominant = 0;
+        for (int i = 1; i < distinctWeatherIds; i++) {
+            if (weatherIdCounts[i] > weatherIdCounts[dominant]) dominant = i;
+        }
+
+        /* With no wind at all there is no direction to average; call it north like OWM does */
+        double windDirection = 0;
+        if (windEastSum != 0 || windNorthSum != 0) {
+            windDirection = Math.toDegrees(Math.atan2(windEastSum, windNorthSum));
+            if (windDirection < 0) windDirection += 360;
+        }
+
+        ContentValues dayValues = new ContentValues();
+        dayValues.put(WeatherEntry.COLUMN_DATE, day);
+        dayValues.put(WeatherEntry.COLUMN_WEATHER_ID, weatherIds[dominant]);
+        dayValues.put(WeatherEntry.COLUMN_MIN_TEMP, low);
+        dayValues.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        dayValues.put(WeatherEntry.COLUMN_HUMIDITY, (int) Math.round(humiditySum / entries));
+        dayValues.put(WeatherEntry.COLUMN_PRESSURE, pressureSum / entries);
+        dayValues.put(WeatherEntry.COLUMN_WIND_SPEED, windSpeedSum / entries);
+        dayValues.put(WeatherEntry.COLUMN_DEGREES, windDirection);
+        return dayValues;
+    }
+}
@@ -1,11 +1,14 @@
 package com.example.android.weatherForecastMG.utilities;
 
 import android.content.Context;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.example.android.weatherForecastMG.R;
 import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
 
+import java.util.Locale;
+
 /**
  * Contains useful utilities for a weather app, such as conversion between Celsius and Fahrenheit,
  * from kph to mph, and from degrees to NSEW.  It also contains the mapping of weather condition
@@ -15,6 +18,53 @@ public final class ForecastWeatherUtils {
 
     private static final String LOG_TAG = ForecastWeatherUtils.class.getSimpleName();
 
+    /* Compass directions, each covering the 45 degrees centered on it, starting from north */
+    private static final String[] WIND_DIRECTIONS = {
+            "N", "NE", "E", "SE", "S", "SW", "W", "NW"
+    };
+
+    /*
+     * The weather condition IDs OpenWeatherMap uses all lie between 200 and 962. For each of
+     * them, CONDITIONS holds its string resource, small art and large art next to each other,
+     * 0 for any the ID doesn't have. The table is built once from the lookUp methods below, so
+     * the rows and notifications don't walk those each time.
+     */
+    private static final int FIRST_WEATHER_ID = 200;
+    private static final int LAST_WEATHER_ID = 962;
+    private static final int WEATHER_ID_COUNT = LAST_WEATHER_ID - FIRST_WEATHER_ID + 1;
+
+    private static final int CONDITION_STRING = 0;
+    private static final int CONDITION_SMALL_ART = 1;
+    private static final int CONDITION_LARGE_ART = 2;
+    private static final int CONDITION_FIELDS = 3;
+
+    private static final int[] CONDITIONS = new int[WEATHER_ID_COUNT * CONDITION_FIELDS];
+
+    static {
+        for (int weatherId = FIRST_WEATHER_ID; weatherId <= LAST_WEATHER_ID; weatherId++) {
+            int entry = (weatherId - FIRST_WEATHER_ID) * CONDITION_FIELDS;
+            CONDITIONS[entry + CONDITION_STRING] = lookUpConditionStringId(weatherId);
+            CONDITIONS[entry + CONDITION_SMALL_ART] = lookUpSmallArtResourceId(weatherId);
+            CONDITIONS[entry + CONDITION_LARGE_ART] = lookUpLargeArtResourceId(weatherId);
+        }
+    }
+
+    /*
+     * The condition strings of one locale, read from resources as they are first asked for.
+     * Strings are immutable, so an entry filled in by one thread can be read by any other.
+     */
+    private static final class ConditionStrings {
+        final Locale locale;
+        final String[] strings = new String[WEATHER_ID_COUNT];
+
+        ConditionStrings(Locale locale) {
+            this.locale = locale;
+        }
+    }
+
+    /* The strings of the locale last asked for; replaced when the locale changes */
+    private static volatile ConditionStrings sConditionStrings;
+
     /**
      * This method will convert a temperature from Celsius to Fahrenheit.
      *
@@ -40,14 +90,32 @@ public final class ForecastWeatherUtils {
      * "21°"
      */
     public static String formatTemperature(Context context, double temperature) {
-        if (!WeatherForecastPreferences.isMetric(context)) {
+        return formatTemperature(context, temperature, WeatherForecastPreferences.isMetric(context));
+    }
+
+    /**
+     * Same as {@link #formatTemperature(Context, double)}, for callers that format many
+     * temperatures at once and have already read the units preference.
+     *
+     * @param context     Android Context to access resources
+     * @param temperature Temperature in degrees Celsius (°C)
+     * @param isMetric    Whether the user prefers Celsius
+     *
+     * @return Formatted temperature String in the following form:
+     * "21°"
+     */
+    public static String formatTemperature(Context context, double temperature, boolean isMetric) {
+        if (!isMetric) {
             temperature = celsiusToFahrenheit(temperature);
         }
 
         int temperatureFormatResourceId = R.string.format_temperature;
 
-        /* For presentation, assume the user doesn't care about tenths of a degree. */
-        return String.format(context.getString(temperatureFormatResourceId), temperature);
+        /*
+         * For presentation, assume the user doesn't care about tenths of a degree. The format is
+         * parsed once and reused, as this runs for every temperature on screen.
+         */
+        return TemplateFormatter.format(context, temperatureFormatResourceId, temperature);
     }
 
     /**
@@ -90,30 +158,22 @@ public final class ForecastWeatherUtils {
             windSpeed = .621371192237334f * windSpeed;
         }
 
-        /*
-         * You know what's fun? Writing really long if/else statements with tons of possible
-         * conditions. Seriously, try it!
-         */
-        String direction = "Unknown";
-        if (degrees >= 337.5 || degrees < 22.5) {
-            direction = "N";
-        } else if (degrees >= 22.5 && degrees < 67.5) {
-            direction = "NE";
-        } else if (degrees >= 67.5 && degrees < 112.5) {
-            direction = "E";
-        } else if (degrees >= 112.5 && degrees < 157.5) {
-            direction = "SE";
-        } else if (degrees >= 157.5 && degrees < 202.5) {
-            direction = "S";
-        } else if (degrees >= 202.5 && degrees < 247.5) {
-            direction = "SW";
-        } else if (degrees >= 247.5 && degrees < 292.5) {
-            direction = "W";
-        } else if (degrees >= 292.5 && degrees < 337.5) {
-            direction = "NW";
-        }
+        String direction = getWindDirection(degrees);
 
-        return String.format(context.getString(windFormat), windSpeed, direction);
+        return TemplateFormatter.format(context, windFormat, windSpeed, direction);
+    }
+
+    /*
+     * Returns the compass direction of a wind direction in degrees. Each direction covers the
+     * 45 degrees centered on it, so the direction is found by dividing rather than by comparing
+     * against each range in turn. North also covers anything below 22.5 or from 337.5 up, as it
+     * always has, including degrees outside 0 to 360.
+     */
+    private static String getWindDirection(float degrees) {
+        if (Float.isNaN(degrees)) return "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) return "N";
+
+        return WIND_DIRECTIONS[(int) ((degrees + 22.5) / 45)];
     }
 
     /**
@@ -127,6 +187,33 @@ public final class ForecastWeatherUtils {
      * @return String for the weather condition, null if no relation is found.
      */
     public static String getStringForWeatherCondition(Context context, int weatherId) {
+        Locale locale = context.getResources().getConfiguration().locale;
+
+        ConditionStrings strings = sConditionStrings;
+        if (strings == null || !strings.locale.equals(locale)) {
+            strings = new ConditionStrings(locale);
+            sConditionStrings = strings;
+        }
+
+        int index = weatherId - FIRST_WEATHER_ID;
+        boolean inTable = index >= 0 && index < WEATHER_ID_COUNT;
+        if (inTable && strings.strings[index] != null) return strings.strings[index];
+
+        int stringId = inTable ? CONDITIONS[index * CONDITION_FIELDS + CONDITION_STRING] : 0;
+        String string = stringId != 0
+                ? context.getString(stringId)
+                : context.getString(R.string.condition_unknown, weatherId);
+
+        if (inTable) strings.strings[index] = string;
+        return string;
+    }
+
+    /*
+     * The string resource for a weather condition ID, or 0 if there is none. Only used to build
+     * CONDITIONS, and by the tests to check it.
+     */
+    @VisibleForTesting
+    static int lookUpConditionStringId(int weatherId) {
         int stringId;
         if (weatherId >= 200 && weatherId <= 232) {
             stringId = R.string.condition_2xx;
@@ -290,10 +377,10 @@ public final class ForecastWeatherUtils {
                 stringId = R.string.condition_962;
                 break;
             default:
-                return context.getString(R.string.condition_unknown, weatherId);
+                return 0;
         }
 
-        return context.getString(stringId);
+        return stringId;
     }
 
     /**
@@ -311,6 +398,22 @@ public final class ForecastWeatherUtils {
      * @return resource id for the corresponding icon. -1 if no relation is found.
      */
     public static int getSmallArtResourceIdForWeatherCondition(int weatherId) {
+        int index = weatherId - FIRST_WEATHER_ID;
+        if (index >= 0 && index < WEATHER_ID_COUNT) {
+            int artId = CONDITIONS[index * CONDITION_FIELDS + CONDITION_SMALL_ART];
+            if (artId != 0) return artId;
+        }
+
+        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
+        return R.drawable.ic_storm;
+    }
+
+    /*
+     * The small art resource for a weather condition ID, or 0 if there is none. Only used to
+     * build CONDITIONS, and by the tests to check it.
+     */
+    @VisibleForTesting
+    static int lookUpSmallArtResourceId(int weatherId) {
 
         /*
          * Based on weather code data for Open Weather Map.
@@ -345,8 +448,7 @@ public final class ForecastWeatherUtils {
             return R.drawable.ic_clear;
         }
 
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.ic_storm;
+        return 0;
     }
 
     /**
@@ -364,6 +466,22 @@ public final class ForecastWeatherUtils {
      * @return resource ID for the corresponding icon. -1 if no relation is found.
      */
     public static int getLargeArtResourceIdForWeatherCondition(int weatherId) {
+        int index = weatherId - FIRST_WEATHER_ID;
+        if (index >= 0 && index < WEATHER_ID_COUNT) {
+            int artId = CONDITIONS[index * CONDITION_FIELDS + CONDITION_LARGE_ART];
+            if (artId != 0) return artId;
+        }
+
+        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
+        return R.drawable.art_storm;
+    }
+
+    /*
+     * The large art resource for a weather condition ID, or 0 if there is none. Only used to
+     * build CONDITIONS, and by the tests to check it.
+     */
+    @VisibleForTesting
+    static int lookUpLargeArtResourceId(int weatherId) {
 
         /*
          * Based on weather code data for Open Weather Map.
@@ -398,7 +516,6 @@ public final class ForecastWeatherUtils {
             return R.drawable.art_clear;
         }
 
-        Log.e(LOG_TAG, "Unknown Weather: " + weatherId);
-        return R.drawable.art_storm;
+        return 0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,206 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+
+/**
+ * Stores the last response body we parsed for each URL, along with the ETag and Last-Modified
+ * validators the server sent with it, in the app's cache directory. {@link NetworkUtils#fetch}
+ * uses the validators to make conditional requests, so a server whose data hasn't changed can
+ * answer "304 Not Modified" instead of sending the whole body again.
+ * <p>
+ * Each URL gets two files: a ".meta" file holding the URL and its validators, and a ".body"
+ * file holding the body itself. Both are written to a temporary file first and then renamed,
+ * so a crash halfway through never leaves a half written entry behind.
+ */
+public final class HttpResponseDiskCache {
+
+    private static final String TAG = HttpResponseDiskCache.class.getSimpleName();
+
+    private static final String CACHE_DIRECTORY_NAME = "http-cache";
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String BODY_SUFFIX = ".body";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static HttpResponseDiskCache sInstance;
+
+    private final File mDirectory;
+
+    /**
+     * The validators of a cached response.
+     */
+    public static final class Validators {
+        /* Value of the ETag header, or null if the server didn't send one */
+        public final String etag;
+        /* Value of the Last-Modified header, or null if the server didn't send one */
+        public final String lastModified;
+
+        Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private HttpResponseDiskCache(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the cache stored in the app's cache directory.
+     *
+     * @param context Used to find the cache directory
+     * @return The response cache
+     */
+    public static synchronized HttpResponseDiskCache getInstance(Context context) {
+        if (sInstance == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(),
+                    CACHE_DIRECTORY_NAME);
+            sInstance = new HttpResponseDiskCache(directory);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the validators stored for a URL. Entries whose body is missing are treated as if
+     * there was no entry, as there would be nothing to fall back on after a 304.
+     *
+     * @param url The URL of the request
+     * @return The validators for the URL, or null if there is no usable entry
+     */
+    public synchronized Validators getValidators(URL url) {
+        File metaFile = getFile(url, META_SUFFIX);
+        if (!metaFile.exists() || !getFile(url, BODY_SUFFIX).exists()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(metaFile)));
+            String cachedUrl = in.readUTF();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+
+            /* Two URLs can share a file name, so make sure this entry is really ours */
+            if (!cachedUrl.equals(url.toString())) return null;
+
+            return new Validators(etag.isEmpty() ? null : etag,
+                    lastModified.isEmpty() ? null : lastModified);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read cache entry for " + url, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Reads the body stored for a URL back into pooled buffers. This is used after a 304 when
+     * the data we parsed from the cached body is no longer around.
+     *
+     * @param url The URL of the request
+     * @return The cached body, or null if there is none
+     */
+    public synchronized ResponseBody getBody(URL url) {
+        Validators validators = getValidators(url);
+        if (validators == null) return null;
+
+        InputStream in = null;
+        try {
+            in = new FileInputStream(getFile(url, BODY_SUFFIX));
+            return ResponseBody.readFrom(in, validators.etag, validators.lastModified);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read cached body for " + url, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /**
+     * Stores a response body and its validators. Call this only after the body has been parsed
+     * and stored successfully, so that a later 304 really means we have the data already. Bodies
+     * sent without any validators are not stored, as we couldn't make a conditional request for
+     * them anyway.
+     *
+     * @param url  The URL of the request
+     * @param body The body of the response
+     */
+    public synchronized void put(URL url, ResponseBody body) {
+        if (body.isNotModified()) return;
+        if (body.getEtag() == null && body.getLastModified() == null) {
+            remove(url);
+            return;
+        }
+
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Unable to create " + mDirectory);
+            return;
+        }
+
+        File bodyTemp = getFile(url, BODY_SUFFIX + TEMP_SUFFIX);
+        File metaTemp = getFile(url, META_SUFFIX + TEMP_SUFFIX);
+        OutputStream bodyOut = null;
+        DataOutputStream metaOut = null;
+        try {
+            bodyOut = new BufferedOutputStream(new FileOutputStream(bodyTemp));
+            body.writeTo(bodyOut);
+            bodyOut.close();
+            bodyOut = null;
+
+            metaOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(metaTemp)));
+            metaOut.writeUTF(url.toString());
+            metaOut.writeUTF(body.getEtag() == null ? "" : body.getEtag());
+            metaOut.writeUTF(body.getLastModified() == null ? "" : body.getLastModified());
+            metaOut.close();
+            metaOut = null;
+
+            if (!bodyTemp.renameTo(getFile(url, BODY_SUFFIX))
+                    || !metaTemp.renameTo(getFile(url, META_SUFFIX))) {
+                throw new IOException("Unable to commit cache entry");
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to store cache entry for " + url, e);
+            remove(url);
+        } finally {
+            closeQuietly(bodyOut);
+            closeQuietly(metaOut);
+            bodyTemp.delete();
+            metaTemp.delete();
+        }
+    }
+
+    /**
+     * Removes the entry stored for a URL, if any.
+     *
+     * @param url The URL of the request
+     */
+    public synchronized void remove(URL url) {
+        getFile(url, META_SUFFIX).delete();
+        getFile(url, BODY_SUFFIX).delete();
+    }
+
+    private File getFile(URL url, String suffix) {
+        String name = Integer.toHexString(url.toString().hashCode());
+        return new File(mDirectory, name + suffix);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
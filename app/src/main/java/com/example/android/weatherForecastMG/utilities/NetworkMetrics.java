@@ -0,0 +1,101 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps count of the requests made to each of the endpoints WeatherForecast talks to, how many
+ * bytes came over the network for them and how many bytes those decoded to. When a response is
+ * sent compressed the two differ, which tells us how much gzip is saving us. The numbers only
+ * live as long as the process does.
+ */
+public final class NetworkMetrics {
+
+    /**
+     * A snapshot of the counters kept for one endpoint.
+     */
+    public static final class EndpointStats {
+        public final long requestCount;
+        /* Bytes received over the network, before content decoding */
+        public final long totalCompressedBytes;
+        /* Bytes of response body after content decoding */
+        public final long totalDecompressedBytes;
+        public final long lastCompressedBytes;
+        public final long lastDecompressedBytes;
+
+        EndpointStats(long[] stats) {
+            requestCount = stats[REQUEST_COUNT];
+            totalCompressedBytes = stats[TOTAL_COMPRESSED_BYTES];
+            totalDecompressedBytes = stats[TOTAL_DECOMPRESSED_BYTES];
+            lastCompressedBytes = stats[LAST_COMPRESSED_BYTES];
+            lastDecompressedBytes = stats[LAST_DECOMPRESSED_BYTES];
+        }
+
+        /**
+         * @return How many times larger the decoded bodies were than what was transferred, or 1
+         * if nothing has been transferred yet
+         */
+        public double getCompressionRatio() {
+            if (totalCompressedBytes == 0) return 1;
+            return (double) totalDecompressedBytes / totalCompressedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requestCount
+                    + " compressedBytes=" + totalCompressedBytes
+                    + " decompressedBytes=" + totalDecompressedBytes
+                    + " last=" + lastCompressedBytes + "/" + lastDecompressedBytes;
+        }
+    }
+
+    /* Index of each counter in the arrays stored in sStats */
+    private static final int REQUEST_COUNT = 0;
+    private static final int TOTAL_COMPRESSED_BYTES = 1;
+    private static final int TOTAL_DECOMPRESSED_BYTES = 2;
+    private static final int LAST_COMPRESSED_BYTES = 3;
+    private static final int LAST_DECOMPRESSED_BYTES = 4;
+    private static final int STAT_COUNT = 5;
+
+    private static final Map<String, long[]> sStats = new HashMap<>();
+
+    private NetworkMetrics() {
+    }
+
+    /**
+     * Records a completed request.
+     *
+     * @param endpoint          Name of the endpoint, such as {@link NetworkUtils#ENDPOINT_FORECAST}
+     * @param compressedBytes   Number of bytes received over the network
+     * @param decompressedBytes Number of bytes in the decoded response body
+     */
+    public static void recordResponse(String endpoint, long compressedBytes,
+                                      long decompressedBytes) {
+        synchronized (sStats) {
+            long[] stats = sStats.get(endpoint);
+            if (stats == null) {
+                stats = new long[STAT_COUNT];
+                sStats.put(endpoint, stats);
+            }
+            stats[REQUEST_COUNT]++;
+            stats[TOTAL_COMPRESSED_BYTES] += compressedBytes;
+            stats[TOTAL_DECOMPRESSED_BYTES] += decompressedBytes;
+            stats[LAST_COMPRESSED_BYTES] = compressedBytes;
+            stats[LAST_DECOMPRESSED_BYTES] = decompressedBytes;
+        }
+    }
+
+    /**
+     * Returns the counters recorded for an endpoint so far.
+     *
+     * @param endpoint Name of the endpoint, such as {@link NetworkUtils#ENDPOINT_FORECAST}
+     * @return The counters for the endpoint, all zero if no request was made to it yet
+     */
+    public static EndpointStats getStats(String endpoint) {
+        synchronized (sStats) {
+            long[] stats = sStats.get(endpoint);
+            if (stats == null) stats = new long[STAT_COUNT];
+            return new EndpointStats(stats);
+        }
+    }
+}
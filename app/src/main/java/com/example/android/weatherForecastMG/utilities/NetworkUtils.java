@@ -9,10 +9,16 @@ import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * These utilities will be used to communicate with the weather servers.
@@ -24,6 +30,13 @@ public final class NetworkUtils {
     private static final String DYNAMIC_WEATHER_URL =
             "http://api.openweathermap.org/data/2.5/forecast?APPID=9ce6b38410e63ef3deae35742ce27029";
 
+    /* Current weather of up to GROUP_MAX_IDS cities at once, by OpenWeatherMap city ID */
+    private static final String GROUP_WEATHER_URL =
+            "http://api.openweathermap.org/data/2.5/group?APPID=9ce6b38410e63ef3deae35742ce27029";
+
+    /* The group endpoint refuses requests for more cities than this */
+    public static final int GROUP_MAX_IDS = 20;
+
     private static final String METAR_URL =  "https://api.checkwx.com/metar";
     private static final String TAF_URL =  "https://api.checkwx.com/taf";
 
@@ -43,12 +56,18 @@ public final class NetworkUtils {
     private static final String format = "json";
     /* The units we want our API to return */
     private static final String units = "metric";
-    /* The number of days we want our API to return */
-    private static final int numDays = 5;
+    /*
+     * The number of entries we want our API to return. The forecast comes in 3-hour entries, so
+     * 40 of them are the whole 5 days it covers. They are rolled up into days after parsing.
+     */
+    private static final int numEntries = 40;
 
     /* The query parameter allows us to provide a location string to the API */
     private static final String QUERY_PARAM = "q";
 
+    /* The id parameter lists the OpenWeatherMap IDs of the cities, separated by commas */
+    private static final String ID_PARAM = "id";
+
     private static final String LAT_PARAM = "lat";
     private static final String LON_PARAM = "lon";
 
@@ -56,8 +75,27 @@ public final class NetworkUtils {
     private static final String FORMAT_PARAM = "mode";
     /* The units parameter allows us to designate whether we want metric units or imperial units */
     private static final String UNITS_PARAM = "units";
-    /* The days parameter allows us to designate how many days of weather data we want */
-    private static final String DAYS_PARAM = "cnt";
+    /* The count parameter allows us to designate how many entries of weather data we want */
+    private static final String COUNT_PARAM = "cnt";
+
+    /* Names under which requests to each endpoint are recorded in NetworkMetrics */
+    public static final String ENDPOINT_FORECAST = "forecast";
+    public static final String ENDPOINT_GROUP = "group";
+    public static final String ENDPOINT_METAR = "metar";
+    public static final String ENDPOINT_TAF = "taf";
+
+    /* Compressed encodings we accept, see decodeContent */
+    private static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+    private static final String ACCEPT_ENCODING = ENCODING_GZIP + ", " + ENCODING_DEFLATE;
+
+    /* Headers for servers that don't need anything beyond the URL, such as OpenWeatherMap */
+    public static final Map<String, String> NO_HEADERS = Collections.emptyMap();
+
+    /* Headers for the CheckWX METAR and TAF API, which wants its key in a header */
+    public static final Map<String, String> CHECKWX_HEADERS =
+            Collections.singletonMap("X-API-Key", METAR_TAF_KEY);
 
     /**
      * Retrieves the proper URL to query for the weather data. The reason for both this method as
@@ -119,6 +157,83 @@ public final class NetworkUtils {
 
     }
 
+    /**
+     * Retrieves the URL to query for the forecast of a saved location. Like
+     * {@link #getUrl(Context)}, it asks by latitude and longitude once they are known, and by
+     * the location as the user entered it until then.
+     *
+     * @param locationQuery The location as the user entered it
+     * @param coordinates   Latitude and longitude of the location, or null if not known yet
+     * @return URL to query weather service
+     */
+    public static URL getUrl(String locationQuery, double[] coordinates) {
+        if (coordinates != null) {
+            return buildUrlWithLatitudeLongitude(coordinates[0], coordinates[1]);
+        } else {
+            return buildUrlWithLocationQuery(locationQuery);
+        }
+    }
+
+    /**
+     * Retrieves the URL to query for the METAR of a saved location.
+     *
+     * @param coordinates Latitude and longitude of the location, or null if not known yet
+     * @return URL to query the METAR, or null if the coordinates aren't known yet
+     */
+    public static URL getMETARUrl(double[] coordinates) {
+        if (coordinates == null) return null;
+        return buildMETARURLLongitudeLatitude(coordinates[0], coordinates[1]);
+    }
+
+    /**
+     * Retrieves the URL to query for the TAF of a saved location.
+     *
+     * @param coordinates Latitude and longitude of the location, or null if not known yet
+     * @return URL to query the TAF, or null if the coordinates aren't known yet
+     */
+    public static URL getTAFUrl(double[] coordinates) {
+        if (coordinates == null) return null;
+        return buildTAFURLLongitudeLatitude(coordinates[0], coordinates[1]);
+    }
+
+    /**
+     * Builds the URLs to query for the current weather of many cities at once. The group
+     * endpoint takes up to {@link #GROUP_MAX_IDS} city IDs per request, so longer lists are split
+     * into several URLs. One request per twenty cities costs much less in connections, handshakes
+     * and radio time than one request per city.
+     *
+     * @param cityIds OpenWeatherMap IDs of the cities
+     * @return The URLs to query, together covering every city. Empty if there are no cities.
+     */
+    public static List<URL> getGroupUrls(long[] cityIds) {
+        List<URL> groupUrls = new ArrayList<URL>();
+
+        for (int start = 0; start < cityIds.length; start += GROUP_MAX_IDS) {
+            int end = Math.min(start + GROUP_MAX_IDS, cityIds.length);
+
+            StringBuilder ids = new StringBuilder();
+            for (int i = start; i < end; i++) {
+                if (i > start) ids.append(',');
+                ids.append(cityIds[i]);
+            }
+
+            Uri groupQueryUri = Uri.parse(GROUP_WEATHER_URL).buildUpon()
+                    .appendQueryParameter(ID_PARAM, ids.toString())
+                    .appendQueryParameter(UNITS_PARAM, units)
+                    .build();
+
+            try {
+                URL groupQueryUrl = new URL(groupQueryUri.toString());
+                Log.v(TAG, "Group URL: " + groupQueryUrl);
+                groupUrls.add(groupQueryUrl);
+            } catch (MalformedURLException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return groupUrls;
+    }
+
     /**
      * Builds the URL used to talk to the weather server using latitude and longitude of a
      * location.
@@ -133,7 +248,7 @@ public final class NetworkUtils {
                 .appendQueryParameter(LON_PARAM, String.valueOf(longitude))
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(COUNT_PARAM, Integer.toString(numEntries))
                 .build();
 
         try {
@@ -158,7 +273,7 @@ public final class NetworkUtils {
                 .appendQueryParameter(QUERY_PARAM, locationQuery)
                 .appendQueryParameter(FORMAT_PARAM, format)
                 .appendQueryParameter(UNITS_PARAM, units)
-                .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
+                .appendQueryParameter(COUNT_PARAM, Integer.toString(numEntries))
                 .build();
 
         try {
@@ -224,59 +339,172 @@ public final class NetworkUtils {
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Performs a GET request and reads the whole body of the response into pooled buffers. Every
+     * request goes through here, the headers being the only difference between the servers we
+     * talk to. Responses are requested gzip or deflate compressed and decoded while they are
+     * read. The number of bytes received and the number of bytes they decoded to are recorded in
+     * {@link NetworkMetrics} under the given endpoint name.
+     *
+     * The caller owns the returned body and must {@link ResponseBody#release()} it once it has
+     * been parsed.
      *
-     * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response, null if no response
+     * @param endpoint Name the request is recorded under, such as {@link #ENDPOINT_FORECAST}
+     * @param url      The URL to fetch the HTTP response from.
+     * @param headers  Request headers to send, such as {@link #NO_HEADERS} or
+     *                 {@link #CHECKWX_HEADERS}
+     * @return The body of the HTTP response
      * @throws IOException Related to network and stream reading
      */
-    public static String getResponseFromHttpUrl(URL url) throws IOException {
-        HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-        try {
-            InputStream in = urlConnection.getInputStream();
+    public static ResponseBody fetch(String endpoint, URL url, Map<String, String> headers)
+            throws IOException {
+        return fetch(endpoint, url, headers, null);
+    }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+    /**
+     * Same as {@link #fetch(String, URL, Map)}, but if the cache holds validators for the URL,
+     * the request is made conditional with If-None-Match and If-Modified-Since. If the server
+     * answers "304 Not Modified", the returned body is empty and
+     * {@link ResponseBody#isNotModified()} returns true.
+     *
+     * The response is NOT stored in the cache by this method. Once the body has been parsed and
+     * stored, the caller hands it to {@link HttpResponseDiskCache#put(URL, ResponseBody)}.
+     *
+     * @param endpoint Name the request is recorded under, such as {@link #ENDPOINT_FORECAST}
+     * @param url      The URL to fetch the HTTP response from.
+     * @param headers  Request headers to send
+     * @param cache    Cache to take the validators from, or null for an unconditional request
+     * @return The body of the HTTP response
+     * @throws IOException Related to network and stream reading
+     */
+    public static ResponseBody fetch(String endpoint, URL url, Map<String, String> headers,
+                                     HttpResponseDiskCache cache) throws IOException {
+        return fetch(endpoint, url, headers, cache, null);
+    }
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
-            }
-            scanner.close();
-            return response;
-        } finally {
-            urlConnection.disconnect();
-        }
+    /**
+     * Told about each connection {@link #fetch(String, URL, Map, HttpResponseDiskCache,
+     * ConnectionTracker)} opens, so that it can be cut off from another thread. A thread blocked
+     * reading a response doesn't notice being interrupted, but it does notice its connection
+     * being disconnected: the read fails with an IOException right away.
+     */
+    public interface ConnectionTracker {
+
+        /**
+         * @return false if the request shouldn't be made after all, in which case the fetch
+         * fails with an InterruptedIOException
+         */
+        boolean onConnectionOpened(HttpURLConnection connection);
+
+        /**
+         * Asked again once the connection has been registered, and once it has connected.
+         * Disconnecting a connection that hasn't connected yet does nothing, so a request
+         * cancelled in between would otherwise go ahead anyway.
+         *
+         * @return true if the request shouldn't go on, in which case the fetch fails with an
+         * InterruptedIOException
+         */
+        boolean isCancelled();
+
+        void onConnectionClosed(HttpURLConnection connection);
     }
 
     /**
-     * This method returns the entire result from the HTTP response.
+     * Same as {@link #fetch(String, URL, Map, HttpResponseDiskCache)}, telling a tracker about
+     * the connection while the request is made.
      *
-     * @param url The URL to fetch the HTTP response from.
-     * @return The contents of the HTTP response, null if no response
-     * @throws IOException Related to network and stream reading
+     * @param tracker Told about the connection, or null
      */
-    public static String getResponseFromHttpUrlWithHeader(URL url) throws IOException {
+    public static ResponseBody fetch(String endpoint, URL url, Map<String, String> headers,
+                                     HttpResponseDiskCache cache, ConnectionTracker tracker)
+            throws IOException {
         HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
-        urlConnection.setRequestProperty("X-API-Key",METAR_TAF_KEY);
+        if (tracker != null && !tracker.onConnectionOpened(urlConnection)) {
+            throw new InterruptedIOException(endpoint + " request cancelled");
+        }
+
+        /*
+         * Setting Accept-Encoding ourselves means HttpURLConnection leaves decoding to us, which
+         * is what lets us see how many bytes actually came over the network.
+         */
+        urlConnection.setRequestProperty(ACCEPT_ENCODING_HEADER, ACCEPT_ENCODING);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            urlConnection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        HttpResponseDiskCache.Validators validators = cache == null ? null : cache.getValidators(url);
+        if (validators != null) {
+            if (validators.etag != null) {
+                urlConnection.setRequestProperty("If-None-Match", validators.etag);
+            }
+            if (validators.lastModified != null) {
+                urlConnection.setRequestProperty("If-Modified-Since", validators.lastModified);
+            }
+        }
 
         try {
-            InputStream in = urlConnection.getInputStream();
+            /*
+             * A cancel that came while the connection was set up or connecting couldn't
+             * disconnect it, so it is looked for on either side of connecting. From then on,
+             * disconnecting stops the request.
+             */
+            if (tracker != null) {
+                throwIfCancelled(tracker, endpoint);
+                urlConnection.connect();
+                throwIfCancelled(tracker, endpoint);
+            }
 
-            Scanner scanner = new Scanner(in);
-            scanner.useDelimiter("\\A");
+            if (validators != null
+                    && urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                NetworkMetrics.recordResponse(endpoint, 0, 0);
+                Log.v(TAG, endpoint + " response: not modified");
+                return ResponseBody.notModified();
+            }
 
-            boolean hasInput = scanner.hasNext();
-            String response = null;
-            if (hasInput) {
-                response = scanner.next();
+            CountingInputStream transferred = new CountingInputStream(urlConnection.getInputStream());
+            InputStream in = decodeContent(transferred, urlConnection.getContentEncoding());
+            ResponseBody body;
+            try {
+                body = ResponseBody.readFrom(in,
+                        urlConnection.getHeaderField("ETag"),
+                        urlConnection.getHeaderField("Last-Modified"));
+            } finally {
+                in.close();
             }
-            scanner.close();
-            return response;
+
+            NetworkMetrics.recordResponse(endpoint, transferred.getCount(), body.length());
+            Log.v(TAG, endpoint + " response: " + transferred.getCount() + " bytes transferred, "
+                    + body.length() + " bytes decoded");
+            return body;
         } finally {
             urlConnection.disconnect();
+            if (tracker != null) tracker.onConnectionClosed(urlConnection);
         }
     }
 
-}
\ No newline at end of file
+    private static void throwIfCancelled(ConnectionTracker tracker, String endpoint)
+            throws InterruptedIOException {
+        if (tracker.isCancelled()) {
+            throw new InterruptedIOException(endpoint + " request cancelled");
+        }
+    }
+
+    /**
+     * Wraps the body stream of a response in the decoder for its Content-Encoding.
+     *
+     * @param in              The raw body stream
+     * @param contentEncoding Value of the Content-Encoding header, or null
+     * @return A stream of the decoded body
+     * @throws IOException If the body is not in the format the server announced
+     */
+    private static InputStream decodeContent(InputStream in, String contentEncoding)
+            throws IOException {
+        if (contentEncoding == null) return in;
+
+        if (ENCODING_GZIP.equalsIgnoreCase(contentEncoding)) {
+            return new GZIPInputStream(in, ByteArrayPool.CHUNK_SIZE);
+        } else if (ENCODING_DEFLATE.equalsIgnoreCase(contentEncoding)) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+}
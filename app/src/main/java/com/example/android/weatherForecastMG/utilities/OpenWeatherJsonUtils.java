@@ -1,18 +1,39 @@
 
 package com.example.android.weatherForecastMG.utilities;
 
+import android.annotation.TargetApi;
 import android.content.ContentValues;
 import android.content.Context;
+import android.os.Build;
+import android.util.JsonReader;
 import android.util.Log;
 
 import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+import com.example.android.weatherForecastMG.data.MetarReport;
+import com.example.android.weatherForecastMG.data.TafReport;
 import com.example.android.weatherForecastMG.data.WeatherContract;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static android.content.ContentValues.TAG;
 
@@ -24,6 +45,7 @@ public final class OpenWeatherJsonUtils {
     /* Location information */
     private static final String OWM_CITY = "city";
     private static final String OWM_COORD = "coord";
+    private static final String OWM_CITY_ID = "id";
 
     /* Location coordinate */
     private static final String OWM_LATITUDE = "lat";
@@ -38,8 +60,11 @@ public final class OpenWeatherJsonUtils {
     private static final String OWM_WINDSPEED = "speed";
     private static final String OWM_WIND_DIRECTION = "deg";
 
-    /* All temperatures are children of the "temp" object */
-   // private static final String OWM_TEMPERATURE = "temp";
+    /* Temperature at the start of a 3-hour entry, a child of the "main" object */
+    private static final String OWM_TEMPERATURE = "temp";
+
+    /* Start of a 3-hour entry in seconds since the epoch */
+    private static final String OWM_DATE_TIME = "dt";
 
     /* Max temperature for the day */
     private static final String OWM_MAX = "temp_max";
@@ -48,27 +73,73 @@ public final class OpenWeatherJsonUtils {
     private static final String OWM_WEATHER = "weather";
     private static final String OWM_WEATHER_ID = "id";
 
+    private static final String OWM_WIND = "wind";
+
     private static final String OWM_MESSAGE_CODE = "cod";
 
 
+    /* CheckWX METAR and TAF responses. Each report is an element of the "data" array */
+    private static final String CHECKWX_DATA = "data";
+    private static final String CHECKWX_ICAO = "icao";
+    private static final String CHECKWX_RAW_TEXT = "raw_text";
+
+    private static final String METAR_OBSERVED = "observed";
     private static final String METAR_CLOUDS="clouds";
+    private static final String METAR_CONDITIONS = "conditions";
+    private static final String METAR_CODE = "code";
+    private static final String METAR_TEXT = "text";
+    private static final String METAR_BASE_FEET_AGL = "base_feet_agl";
+    private static final String METAR_BASE_METERS_AGL = "base_meters_agl";
+    private static final String METAR_DEWPOINT = "dewpoint";
+    private static final String METAR_CELSIUS = "celsius";
+    private static final String METAR_FAHRENHEIT = "fahrenheit";
+    private static final String METAR_FLIGHT_CATEGORY = "flight_category";
+    private static final String METAR_VISIBILITY = "visibility";
+    private static final String METAR_MILES = "miles";
+    private static final String METAR_METERS = "meters";
+
+    private static final String TAF_TIMESTAMP = "timestamp";
+    private static final String TAF_ISSUED = "issued";
 
     /**
-     * This method parses JSON from a web response and returns an array of Strings
-     * describing the weather over various days from the forecast.
-     * <p/>
-     * Later on, we'll be parsing the JSON into structured data within the
-     * getFullWeatherDataFromJson function, leveraging the data we have stored in the JSON. For
-     * now, we just convert the JSON into human-readable strings.
+     * This method parses JSON from a web response and returns the weather over the days of the
+     * forecast, one row per day. OpenWeatherMap sends the forecast in 3-hour entries, which are
+     * rolled up into days by {@link ForecastRollup}.
      *
      * @param forecastJsonStr JSON response from server
      *
-     * @return Array of Strings describing weather data
+     * @return Array of ContentValues for the weather table, or null if the server returned an
+     * error code
      *
      * @throws JSONException If JSON data cannot be properly parsed
      */
     public static ContentValues[] getWeatherContentValuesFromJson(Context context, String forecastJsonStr)
             throws JSONException {
+        ForecastCity city = new ForecastCity();
+        ContentValues[] hourlyContentValues =
+                getHourlyContentValuesFromJson(forecastJsonStr, city);
+        if (hourlyContentValues == null) return null;
+
+        WeatherForecastPreferences.setLocationDetails(context, city.latitude, city.longitude);
+        return ForecastRollup.getDailyContentValues(hourlyContentValues);
+    }
+
+    /**
+     * Parses every 3-hour entry of a forecast into a row of the hourly table. Rather than storing
+     * the coordinates of the city in the preferences, hands them back. Sync uses this, since it
+     * also parses forecasts for locations other than the one in the preferences, and keeps the
+     * entries as well as the days rolled up from them (see {@link ForecastRollup}).
+     *
+     * @param forecastJsonStr JSON response from server
+     * @param city            Receives the ID and coordinates of the city
+     *
+     * @return Array of ContentValues for the hourly table, in time order, or null if the server
+     * returned an error code
+     *
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static ContentValues[] getHourlyContentValuesFromJson(String forecastJsonStr,
+            ForecastCity city) throws JSONException {
 
         JSONObject forecastJson = new JSONObject(forecastJsonStr);
 
@@ -96,148 +167,525 @@ public final class OpenWeatherJsonUtils {
         double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
         double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
 
-        WeatherForecastPreferences.setLocationDetails(context, cityLatitude, cityLongitude);
+        city.id = cityJson.optLong(OWM_CITY_ID, -1);
+        city.latitude = cityLatitude;
+        city.longitude = cityLongitude;
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArray.length()];
-
-        /*
-         * OWM returns daily forecasts based upon the local time of the city that is being asked
-         * for, which means that we need to know the GMT offset to translate this data properly.
-         * Since this data is also sent in-order and the first day is always the current day, we're
-         * going to take advantage of that to get a nice normalized UTC date for all of our weather.
-         */
-//        long now = System.currentTimeMillis();
-//        long normalizedUtcStartDay = WeatherForecastDateUtils.normalizeDate(now);
-
-        long normalizedUtcStartDay = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+        ContentValues[] hourlyContentValues = new ContentValues[jsonWeatherArray.length()];
 
         for (int i = 0; i < jsonWeatherArray.length(); i++) {
 
-            long dateTimeMillis;
-            double pressure;
-            int humidity;
-            double windSpeed;
-            double windDirection;
-
-            double high;
-            double low;
-
-            int weatherId;
-
-            /* Get the JSON object representing the day */
-            JSONObject dayForecast = jsonWeatherArray.getJSONObject(i);
+            /* Get the JSON object representing the 3-hour entry */
+            JSONObject entryForecast = jsonWeatherArray.getJSONObject(i);
 
             /*
-             * We ignore all the datetime values embedded in the JSON and assume that
-             * the values are returned in-order by day (which is not guaranteed to be correct).
+             * Each entry carries the start of its slot in seconds since the epoch. Unlike the
+             * days, these are kept as they are, not normalized.
              */
-            dateTimeMillis = normalizedUtcStartDay + WeatherForecastDateUtils.DAY_IN_MILLIS * i;
+            long timeMillis = TimeUnit.SECONDS.toMillis(entryForecast.getLong(OWM_DATE_TIME));
 
-            pressure = dayForecast.getJSONObject(OWM_MAIN).getDouble(OWM_PRESSURE);
-            humidity = dayForecast.getJSONObject(OWM_MAIN).getInt(OWM_HUMIDITY);
-            windDirection=dayForecast.getJSONObject("wind").getDouble("deg");
-            windSpeed=dayForecast.getJSONObject("wind").getDouble("speed");;
+            /*
+             * Temperatures and the rest of the atmospheric readings are sent by Open Weather Map
+             * in a child object called "main".
+             */
+            JSONObject mainObject = entryForecast.getJSONObject(OWM_MAIN);
+            JSONObject windObject = entryForecast.getJSONObject(OWM_WIND);
 
             /*
              * Description is in a child array called "weather", which is 1 element long.
              * That element also contains a weather code.
              */
-            JSONObject weatherObject = dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            JSONObject weatherObject = entryForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+
+            ContentValues hourlyValues = new ContentValues();
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_TIME, timeMillis);
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID,
+                    weatherObject.getInt(OWM_WEATHER_ID));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_TEMP,
+                    mainObject.getDouble(OWM_TEMPERATURE));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_MIN_TEMP,
+                    mainObject.getDouble(OWM_MIN));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_MAX_TEMP,
+                    mainObject.getDouble(OWM_MAX));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_HUMIDITY,
+                    mainObject.getInt(OWM_HUMIDITY));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_PRESSURE,
+                    mainObject.getDouble(OWM_PRESSURE));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED,
+                    windObject.getDouble(OWM_WINDSPEED));
+            hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_DEGREES,
+                    windObject.getDouble(OWM_WIND_DIRECTION));
+
+            hourlyContentValues[i] = hourlyValues;
+        }
 
-            weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+        return hourlyContentValues;
+    }
 
-            /*
-             * Temperatures are sent by Open Weather Map in a child object called "temp".
-             *
-             * Editor's Note: Try not to name variables "temp" when working with temperature.
-             * It confuses everybody. Temp could easily mean any number of things, including
-             * temperature, temporary variable, temporary folder, temporary employee, or many
-             * others, and is just a bad variable name.
-             */
-            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_MAIN);
-            high = temperatureObject.getDouble(OWM_MAX);
-            low = temperatureObject.getDouble(OWM_MIN);
+    /**
+     * Returns true if this device can use {@link #getWeatherContentValuesFromStream}. JsonReader
+     * was only added in API 11, so older devices have to stay on the JSONObject based parser.
+     *
+     * @return true if the streaming parser is available on this device
+     */
+    public static boolean isStreamingParserAvailable() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
 
-            ContentValues weatherValues = new ContentValues();
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTimeMillis);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+    /**
+     * Streaming counterpart of {@link #getWeatherContentValuesFromJson(Context, String)}. Rather
+     * than building a JSONObject tree of the whole response, this walks the tokens of the stream
+     * once and only keeps the values we store in {@link WeatherContract.HourlyEntry}. Everything
+     * else in the response is skipped without being materialized. The entries are rolled up
+     * into days the same way.
+     *
+     * @param context           Used to store the coordinates of the city in the preferences
+     * @param forecastJsonStream Stream of the JSON response from the server
+     *
+     * @return Array of ContentValues for the weather table, or null if the server returned an
+     * error code
+     *
+     * @throws IOException If the stream cannot be read or is not well formed JSON
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ContentValues[] getWeatherContentValuesFromStream(Context context,
+            InputStream forecastJsonStream) throws IOException {
+        ForecastCity city = new ForecastCity();
+        ContentValues[] hourlyContentValues =
+                getHourlyContentValuesFromStream(forecastJsonStream, city);
+        if (hourlyContentValues == null) return null;
+
+        if (city.hasCoordinates()) {
+            WeatherForecastPreferences.setLocationDetails(context,
+                    city.latitude, city.longitude);
+        }
+        return ForecastRollup.getDailyContentValues(hourlyContentValues);
+    }
 
-            weatherContentValues[i] = weatherValues;
+    /**
+     * Streaming counterpart of {@link #getHourlyContentValuesFromJson(String, ForecastCity)}.
+     *
+     * @param forecastJsonStream Stream of the JSON response from the server
+     * @param city               Receives the ID and coordinates of the city. Left as it is if
+     *                           the response has no city.
+     *
+     * @return Array of ContentValues for the hourly table, in time order, or null if the server
+     * returned an error code
+     *
+     * @throws IOException If the stream cannot be read or is not well formed JSON
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static ContentValues[] getHourlyContentValuesFromStream(
+            InputStream forecastJsonStream, ForecastCity city) throws IOException {
+
+        JsonReader reader = new JsonReader(new InputStreamReader(forecastJsonStream, "UTF-8"));
+        try {
+            List<ContentValues> hourlyContentValues = new ArrayList<>();
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    /* "cod" comes first in OWM responses, so errors end the parse right away */
+                    if (reader.nextInt() != HttpURLConnection.HTTP_OK) {
+                        return null;
+                    }
+                } else if (OWM_LIST.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        hourlyContentValues.add(readForecastEntry(reader));
+                    }
+                    reader.endArray();
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, city);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            return hourlyContentValues.toArray(new ContentValues[hourlyContentValues.size()]);
+        } finally {
+            reader.close();
         }
+    }
 
-        return weatherContentValues;
+    /**
+     * Reads a single element of the "list" array into the columns of the hourly table.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static ContentValues readForecastEntry(JsonReader reader) throws IOException {
+        long timeMillis = 0;
+        double temperature = 0;
+        double pressure = 0;
+        int humidity = 0;
+        double windSpeed = 0;
+        double windDirection = 0;
+        double high = 0;
+        double low = 0;
+        int weatherId = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_DATE_TIME.equals(name)) {
+                timeMillis = TimeUnit.SECONDS.toMillis(reader.nextLong());
+            } else if (OWM_MAIN.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String mainName = reader.nextName();
+                    if (OWM_TEMPERATURE.equals(mainName)) {
+                        temperature = reader.nextDouble();
+                    } else if (OWM_PRESSURE.equals(mainName)) {
+                        pressure = reader.nextDouble();
+                    } else if (OWM_HUMIDITY.equals(mainName)) {
+                        humidity = (int) reader.nextDouble();
+                    } else if (OWM_MAX.equals(mainName)) {
+                        high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(mainName)) {
+                        low = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WIND.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String windName = reader.nextName();
+                    if (OWM_WINDSPEED.equals(windName)) {
+                        windSpeed = reader.nextDouble();
+                    } else if (OWM_WIND_DIRECTION.equals(windName)) {
+                        windDirection = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                /* Only the first element of the "weather" array carries the condition we use */
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (first) {
+                        weatherId = readWeatherId(reader);
+                        first = false;
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        ContentValues hourlyValues = new ContentValues();
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_TIME, timeMillis);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WEATHER_ID, weatherId);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_TEMP, temperature);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_MIN_TEMP, low);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_MAX_TEMP, high);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_HUMIDITY, humidity);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_PRESSURE, pressure);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_WIND_SPEED, windSpeed);
+        hourlyValues.put(WeatherContract.HourlyEntry.COLUMN_DEGREES, windDirection);
+        return hourlyValues;
     }
 
-    /*
-    Parses JSON from METAR weather data
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static int readWeatherId(JsonReader reader) throws IOException {
+        int weatherId = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (OWM_WEATHER_ID.equals(reader.nextName())) {
+                weatherId = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return weatherId;
+    }
+
+    /**
+     * Reads the ID and coordinates out of the "city" object.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, ForecastCity city) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_ID.equals(name)) {
+                city.id = reader.nextLong();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        city.latitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        city.longitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Parses a response of OpenWeatherMap's group endpoint, which holds the current weather of
+     * several cities (see NetworkUtils#getGroupUrls). The current conditions of each city are
+     * returned as values for its forecast row of today. The temperatures are left out, since
+     * the current ones are no substitute for the day's forecast high and low.
+     *
+     * @param groupJsonStr JSON response from server
+     * @return The values for today's row, keyed by OpenWeatherMap city ID. Empty if the server
+     * returned an error code.
+     * @throws JSONException If JSON data cannot be properly parsed
      */
-    public static ContentValues[] getWeatherContentValuesFromJsonMETAR(Context context, String forecastJsonStr)
+    public static Map<Long, ContentValues> getCurrentWeatherFromGroupJson(String groupJsonStr)
             throws JSONException {
+        Map<Long, ContentValues> currentWeather = new HashMap<Long, ContentValues>();
 
-        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        JSONObject groupJson = new JSONObject(groupJsonStr);
+        if (groupJson.has(OWM_MESSAGE_CODE)
+                && groupJson.getInt(OWM_MESSAGE_CODE) != HttpURLConnection.HTTP_OK) {
+            return currentWeather;
+        }
+
+        JSONArray cities = groupJson.optJSONArray(OWM_LIST);
+        if (cities == null) return currentWeather;
+
+        for (int i = 0; i < cities.length(); i++) {
+            JSONObject cityWeather = cities.getJSONObject(i);
+            JSONObject main = cityWeather.getJSONObject(OWM_MAIN);
+            JSONObject wind = cityWeather.optJSONObject(OWM_WIND);
+
+            ContentValues weatherValues = new ContentValues();
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                    cityWeather.getJSONArray(OWM_WEATHER).getJSONObject(0).getInt(OWM_WEATHER_ID));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                    main.getInt(OWM_HUMIDITY));
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                    main.getDouble(OWM_PRESSURE));
+            /* Calm winds come without a direction */
+            if (wind != null && wind.has(OWM_WINDSPEED)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                        wind.getDouble(OWM_WINDSPEED));
+            }
+            if (wind != null && wind.has(OWM_WIND_DIRECTION)) {
+                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES,
+                        wind.getDouble(OWM_WIND_DIRECTION));
+            }
+
+            currentWeather.put(cityWeather.getLong(OWM_CITY_ID), weatherValues);
+        }
+
+        return currentWeather;
+    }
+
+    /**
+     * Parses the first METAR out of a CheckWX METAR response. Each cloud layer is read once, as
+     * a whole object.
+     *
+     * @param metarJsonStr JSON response from server
+     * @return The decoded METAR, or null if the response holds none
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static MetarReport getMetarReportFromJson(String metarJsonStr) throws JSONException {
+
+        JSONObject metarJson = new JSONObject(metarJsonStr);
 
         /* Is there an error? */
-        if (forecastJson.has(OWM_MESSAGE_CODE)) {
-            int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+        if (metarJson.has(OWM_MESSAGE_CODE)) {
+            int errorCode = metarJson.getInt(OWM_MESSAGE_CODE);
 
-            switch (errorCode) {
-                case HttpURLConnection.HTTP_OK:
-                    break;
-                case HttpURLConnection.HTTP_NOT_FOUND:
-                    /* Location invalid */
-                    return null;
-                default:
-                    /* Server probably down */
-                    return null;
+            if (errorCode != HttpURLConnection.HTTP_OK) {
+                /* Location invalid or server probably down */
+                return null;
             }
         }
 
-        JSONArray jsonWeatherArrayData = forecastJson.getJSONArray("data");
-JSONObject data= jsonWeatherArrayData.getJSONObject(0);
-String metar_raw=data.getString("raw_text");
+        JSONArray metarArrayData = metarJson.optJSONArray(CHECKWX_DATA);
+        if (metarArrayData == null || metarArrayData.length() == 0) return null;
 
-        Log.v(TAG, "METAR raw: "+metar_raw);
+        JSONObject data = metarArrayData.getJSONObject(0);
+        String rawText = data.getString(CHECKWX_RAW_TEXT);
+        long observed = parseCheckWxTime(data.optString(METAR_OBSERVED, null), rawText);
+        if (observed == -1) {
+            Log.w(TAG, "No observation time in METAR " + rawText);
+            return null;
+        }
 
-        JSONArray clouds=data.getJSONArray("clouds");
+        List<MetarReport.CloudLayer> cloudLayers = new ArrayList<MetarReport.CloudLayer>();
+        JSONArray clouds = data.optJSONArray(METAR_CLOUDS);
+        if (clouds != null) {
+            for (int i = 0; i < clouds.length(); i++) {
+                JSONObject cloud = clouds.getJSONObject(i);
+                cloudLayers.add(new MetarReport.CloudLayer(
+                        cloud.getString(METAR_CODE),
+                        cloud.optString(METAR_TEXT, null),
+                        optInteger(cloud, METAR_BASE_FEET_AGL),
+                        optInteger(cloud, METAR_BASE_METERS_AGL)));
+            }
+        }
 
-for (int i=0; i< clouds.length();i++) {
-    String clouds_code = clouds.getJSONObject(i).getString("code");
-    String clouds_text = clouds.getJSONObject(i).getString("text");
-    String clouds_feet_agl = clouds.getJSONObject(i).getString("base_feet_agl");
-    String clouds_meters_agl = clouds.getJSONObject(i).getString("base_meters_agl");
+        /* Newer responses list every condition, older ones only report one */
+        String conditions = null;
+        JSONArray conditionsArray = data.optJSONArray(METAR_CONDITIONS);
+        if (conditionsArray != null) {
+            StringBuilder codes = new StringBuilder();
+            for (int i = 0; i < conditionsArray.length(); i++) {
+                if (i > 0) codes.append(' ');
+                codes.append(conditionsArray.getJSONObject(i).getString(METAR_CODE));
+            }
+            if (codes.length() > 0) conditions = codes.toString();
+        } else {
+            JSONObject conditionsObject = data.optJSONObject(METAR_CONDITIONS);
+            if (conditionsObject != null) {
+                conditions = conditionsObject.optString(METAR_CODE, null);
+            }
+        }
 
-    Log.v(TAG, "Clouds text(code): "+clouds_text+"("+clouds_code+")");
-    Log.v(TAG, "Clouds above ground level feet(meters): "+clouds_feet_agl+"("+clouds_meters_agl+")");
+        /* Stations don't report every field, so each group is optional */
+        Double dewpointC = null;
+        Double dewpointF = null;
+        JSONObject dewpoint = data.optJSONObject(METAR_DEWPOINT);
+        if (dewpoint != null) {
+            dewpointC = dewpoint.getDouble(METAR_CELSIUS);
+            dewpointF = dewpoint.getDouble(METAR_FAHRENHEIT);
+        }
 
-}
+        String visibilityMiles = null;
+        String visibilityMeters = null;
+        JSONObject visibility = data.optJSONObject(METAR_VISIBILITY);
+        if (visibility != null) {
+            visibilityMiles = visibility.optString(METAR_MILES, null);
+            visibilityMeters = visibility.optString(METAR_METERS, null);
+        }
+
+        return new MetarReport(
+                getReportStation(data, rawText),
+                observed,
+                rawText,
+                conditions,
+                dewpointC,
+                dewpointF,
+                data.optString(METAR_FLIGHT_CATEGORY, null),
+                visibilityMiles,
+                visibilityMeters,
+                cloudLayers);
+    }
+
+    /**
+     * Parses the first TAF out of a CheckWX TAF response.
+     *
+     * @param tafJsonStr JSON response from server
+     * @return The TAF, or null if the response holds none
+     * @throws JSONException If JSON data cannot be properly parsed
+     */
+    public static TafReport getTafReportFromJson(String tafJsonStr) throws JSONException {
+        JSONObject tafJson = new JSONObject(tafJsonStr);
+
+        JSONArray tafArrayData = tafJson.optJSONArray(CHECKWX_DATA);
+        if (tafArrayData == null || tafArrayData.length() == 0) return null;
+
+        JSONObject data = tafArrayData.getJSONObject(0);
+        String rawText = data.optString(CHECKWX_RAW_TEXT, null);
+        if (rawText == null) return null;
+
+        String issuedTime = null;
+        JSONObject timestamp = data.optJSONObject(TAF_TIMESTAMP);
+        if (timestamp != null) {
+            issuedTime = timestamp.optString(TAF_ISSUED, null);
+        }
+
+        long issued = parseCheckWxTime(issuedTime, rawText);
+        if (issued == -1) {
+            Log.w(TAG, "No issue time in TAF " + rawText);
+            return null;
+        }
+
+        return new TafReport(getReportStation(data, rawText), issued, rawText);
+    }
 
-        JSONObject conditions=data.getJSONObject("conditions");
-        String conditions_code=conditions.getString("code");
-        String conditions_text=conditions.getString("text");
+    /*
+     * Reports are stored by station, so if CheckWX leaves it out we read it from the report
+     * itself, where it is the first group after the report type (e.g. "METAR EPWA 051730Z ...").
+     */
+    private static String getReportStation(JSONObject data, String rawText) {
+        String station = data.optString(CHECKWX_ICAO, null);
+        if (station != null) return station;
+
+        for (String group : rawText.trim().split("\\s+")) {
+            if (REPORT_TYPE_GROUPS.contains(group)) continue;
+            return group;
+        }
+        return "";
+    }
+
+    private static Integer optInteger(JSONObject object, String name) {
+        if (object.isNull(name)) return null;
+
+        double value = object.optDouble(name);
+        return Double.isNaN(value) ? null : (int) value;
+    }
 
-        JSONObject dew_point=data.getJSONObject("dewpoint");
-        String dew_point_C=dew_point.getString("celsius");
-        String dew_point_F=dew_point.getString("fahrenheit");
+    /*
+     * CheckWX has reported times in a few formats over the years. If none of them match, the
+     * time is taken from the report itself: METARs and TAFs both start with a "DDHHMMZ" group
+     * giving the day of the month and time in UTC.
+     */
+    private static final String[] CHECKWX_TIME_FORMATS = {
+            "yyyy-MM-dd'T'HH:mm:ss'Z'",
+            "yyyy-MM-dd'T'HH:mm:ss",
+            "dd-MM-yyyy '@' HH:mm'Z'"
+    };
 
-        String flight_category=data.getString("flight_category");
-        JSONObject visibility=data.getJSONObject("visibility");
-        String visibility_miles=visibility.getString("miles");
-        String visibility_meters=visibility.getString("meters");
+    private static final List<String> REPORT_TYPE_GROUPS =
+            Arrays.asList("METAR", "SPECI", "TAF", "AMD", "COR");
 
-        Log.v(TAG, "Conditions code(text): "+conditions_code+"("+conditions_text+")");
-        Log.v(TAG, "Dew point C(F): "+dew_point_C+"("+dew_point_F+")");
-        Log.v(TAG, "Flight category: "+flight_category);
-        Log.v(TAG, "Visibility miles(metres): "+visibility_miles+"("+visibility_meters+")");
+    private static final Pattern REPORT_TIME_GROUP = Pattern.compile("\\b(\\d{2})(\\d{2})(\\d{2})Z\\b");
 
-        ContentValues[] weatherContentValues = new ContentValues[jsonWeatherArrayData.length()];
+    /**
+     * @return The time in UTC milliseconds, or -1 if it can't be worked out
+     */
+    private static long parseCheckWxTime(String time, String rawText) {
+        if (time != null) {
+            for (String format : CHECKWX_TIME_FORMATS) {
+                SimpleDateFormat dateFormat = new SimpleDateFormat(format, Locale.US);
+                dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+                try {
+                    return dateFormat.parse(time).getTime();
+                } catch (ParseException e) {
+                    /* Try the next format */
+                }
+            }
+        }
 
+        Matcher timeGroup = REPORT_TIME_GROUP.matcher(rawText);
+        if (!timeGroup.find()) return -1;
 
-        return weatherContentValues;
+        int day = Integer.parseInt(timeGroup.group(1));
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        /* A day of the month after today's must be from last month */
+        if (day > calendar.get(Calendar.DAY_OF_MONTH)) {
+            calendar.add(Calendar.MONTH, -1);
+        }
+        if (day > calendar.getActualMaximum(Calendar.DAY_OF_MONTH)) return -1;
+
+        calendar.set(Calendar.DAY_OF_MONTH, day);
+        calendar.set(Calendar.HOUR_OF_DAY, Integer.parseInt(timeGroup.group(2)));
+        calendar.set(Calendar.MINUTE, Integer.parseInt(timeGroup.group(3)));
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTimeInMillis();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,213 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The body of an HTTP response, held in chunks borrowed from {@link ByteArrayPool}. Parsers read
+ * it through {@link #openStream()} or {@link #openReader()} so the body never has to be turned
+ * into one big String. Call {@link #release()} once the body has been parsed to give the chunks
+ * back to the pool.
+ * <p>
+ * A body can also stand for a "304 Not Modified" answer to a conditional request, in which case
+ * {@link #isNotModified()} returns true and the body is empty.
+ */
+public final class ResponseBody {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final List<byte[]> mChunks;
+    private final int mLength;
+    private final boolean mNotModified;
+    private final String mEtag;
+    private final String mLastModified;
+    private boolean mReleased;
+
+    private ResponseBody(List<byte[]> chunks, int length, boolean notModified, String etag,
+                         String lastModified) {
+        mChunks = chunks;
+        mLength = length;
+        mNotModified = notModified;
+        mEtag = etag;
+        mLastModified = lastModified;
+    }
+
+    /**
+     * Returns the empty body that stands for a "304 Not Modified" response.
+     */
+    static ResponseBody notModified() {
+        return new ResponseBody(new ArrayList<byte[]>(0), 0, true, null, null);
+    }
+
+    /**
+     * Reads the given stream to its end into pooled chunks. The stream is not closed.
+     *
+     * @param in           Stream of the response body
+     * @param etag         Value of the ETag header of the response, or null
+     * @param lastModified Value of the Last-Modified header of the response, or null
+     * @return The buffered response body
+     * @throws IOException Related to stream reading
+     */
+    static ResponseBody readFrom(InputStream in, String etag, String lastModified)
+            throws IOException {
+        List<byte[]> chunks = new ArrayList<>();
+        int length = 0;
+        try {
+            byte[] chunk = null;
+            int chunkOffset = ByteArrayPool.CHUNK_SIZE;
+            while (true) {
+                if (chunkOffset == ByteArrayPool.CHUNK_SIZE) {
+                    chunk = ByteArrayPool.acquire();
+                    chunks.add(chunk);
+                    chunkOffset = 0;
+                }
+                int read = in.read(chunk, chunkOffset, ByteArrayPool.CHUNK_SIZE - chunkOffset);
+                if (read == -1) break;
+                chunkOffset += read;
+                length += read;
+            }
+        } catch (IOException e) {
+            for (byte[] chunk : chunks) {
+                ByteArrayPool.release(chunk);
+            }
+            throw e;
+        }
+        return new ResponseBody(chunks, length, false, etag, lastModified);
+    }
+
+    /**
+     * @return The number of bytes in this body
+     */
+    public int length() {
+        return mLength;
+    }
+
+    /**
+     * @return true if the server answered "304 Not Modified", meaning the copy we already have is
+     * still current. Such a body is empty.
+     */
+    public boolean isNotModified() {
+        return mNotModified;
+    }
+
+    /**
+     * @return The ETag the server sent with this body, or null
+     */
+    public String getEtag() {
+        return mEtag;
+    }
+
+    /**
+     * @return The Last-Modified date the server sent with this body, or null
+     */
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * Writes the bytes of this body to the given stream. The stream is not closed.
+     *
+     * @param out Stream to write to
+     * @throws IOException Related to stream writing
+     */
+    void writeTo(OutputStream out) throws IOException {
+        if (mReleased) throw new IllegalStateException("Response body has already been released");
+        int remaining = mLength;
+        for (byte[] chunk : mChunks) {
+            int count = Math.min(chunk.length, remaining);
+            out.write(chunk, 0, count);
+            remaining -= count;
+        }
+    }
+
+    /**
+     * Returns a new stream over the bytes of this body. The stream must not be used after
+     * {@link #release()} has been called.
+     *
+     * @return An InputStream that reads this body from the beginning
+     */
+    public InputStream openStream() {
+        if (mReleased) throw new IllegalStateException("Response body has already been released");
+        return new ChunkInputStream();
+    }
+
+    /**
+     * Returns a new UTF-8 Reader over this body, for parsers that work on characters.
+     *
+     * @return A Reader that reads this body from the beginning
+     */
+    public Reader openReader() {
+        return new InputStreamReader(openStream(), UTF_8);
+    }
+
+    /**
+     * Decodes the whole body into a String. Only use this for parsers that can't work on a
+     * stream, such as the JSONObject based ones.
+     *
+     * @return The body decoded as UTF-8
+     */
+    public String string() {
+        if (mReleased) throw new IllegalStateException("Response body has already been released");
+        byte[] bytes = new byte[mLength];
+        int offset = 0;
+        for (byte[] chunk : mChunks) {
+            int count = Math.min(chunk.length, mLength - offset);
+            System.arraycopy(chunk, 0, bytes, offset, count);
+            offset += count;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Gives the chunks of this body back to {@link ByteArrayPool}. Calling this more than once
+     * has no effect.
+     */
+    public void release() {
+        if (mReleased) return;
+        mReleased = true;
+        for (byte[] chunk : mChunks) {
+            ByteArrayPool.release(chunk);
+        }
+        mChunks.clear();
+    }
+
+    /**
+     * Reads the chunks of the body one after another.
+     */
+    private final class ChunkInputStream extends InputStream {
+
+        private int mPosition;
+
+        @Override
+        public int read() throws IOException {
+            if (mPosition >= mLength) return -1;
+            byte[] chunk = mChunks.get(mPosition / ByteArrayPool.CHUNK_SIZE);
+            return chunk[mPosition++ % ByteArrayPool.CHUNK_SIZE] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            if (count == 0) return 0;
+            if (mPosition >= mLength) return -1;
+
+            int chunkOffset = mPosition % ByteArrayPool.CHUNK_SIZE;
+            byte[] chunk = mChunks.get(mPosition / ByteArrayPool.CHUNK_SIZE);
+            int available = Math.min(ByteArrayPool.CHUNK_SIZE - chunkOffset, mLength - mPosition);
+            int read = Math.min(count, available);
+            System.arraycopy(chunk, chunkOffset, buffer, offset, read);
+            mPosition += read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return mLength - mPosition;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.Context;
+
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formats a number, and optionally a String, into one of our format string resources, the way
+ * String.format would but without parsing the format string or creating a Formatter each time.
+ * <p>
+ * Every temperature and wind speed in the app goes through one of a handful of formats such as
+ * "%1.0f°" or "%1$1.0f km/h %2$s". Each is parsed once per locale into the literal text between
+ * its placeholders, and values are written into a StringBuilder kept per thread. The only thing
+ * allocated per call is the resulting String.
+ * <p>
+ * Only what our resources use is understood: rounded numbers ("%1.0f", "%1$1.0f") as the first
+ * argument, Strings ("%2$s") as the second, and "%%". A format using anything else is handed to
+ * String.format as before. Numbers are rounded half up like String.format does, so -0.4 is
+ * written as "-0" just as it always was.
+ */
+public final class TemplateFormatter {
+
+    /* Parsed formats, most recently used first. There are only ever a few of them. */
+    private static volatile Template[] sTemplates = new Template[0];
+
+    private static final ThreadLocal<StringBuilder> sBuilder = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(32);
+        }
+    };
+
+    private TemplateFormatter() {
+    }
+
+    /**
+     * Formats a number into a format string resource with a single placeholder.
+     *
+     * @param context  Used to read the format string resource
+     * @param formatId Resource ID of the format string
+     * @param number   The number, written rounded to a whole number
+     */
+    public static String format(Context context, int formatId, double number) {
+        return format(context, formatId, number, null);
+    }
+
+    /**
+     * Formats a number and a String into a format string resource.
+     *
+     * @param context  Used to read the format string resource
+     * @param formatId Resource ID of the format string
+     * @param number   The first argument, written rounded to a whole number
+     * @param text     The second argument
+     */
+    public static String format(Context context, int formatId, double number, String text) {
+        Template template = getTemplate(context, formatId);
+
+        if (!template.supported || Double.isNaN(number) || Double.isInfinite(number)
+                || Math.abs(number) >= Long.MAX_VALUE) {
+            return String.format(template.format, number, text);
+        }
+
+        StringBuilder builder = sBuilder.get();
+        builder.setLength(0);
+
+        int placeholders = template.arguments.length;
+        for (int i = 0; i < placeholders; i++) {
+            builder.append(template.literals[i]);
+            if (template.arguments[i] == Template.ARGUMENT_NUMBER) {
+                appendRounded(builder, number, template.zeroDigit);
+            } else {
+                builder.append(text);
+            }
+        }
+        builder.append(template.literals[placeholders]);
+
+        return builder.toString();
+    }
+
+    /*
+     * Writes a number rounded half up (away from zero), with the sign String.format would give
+     * it: a minus for anything below zero, -0.0 included, even if it rounds to 0.
+     */
+    private static void appendRounded(StringBuilder builder, double number, char zeroDigit) {
+        boolean negative = Double.compare(number, 0.0) < 0;
+        double magnitude = Math.abs(number);
+
+        long rounded = (long) magnitude;
+        if (magnitude - rounded >= 0.5) rounded++;
+
+        if (negative) builder.append('-');
+
+        int start = builder.length();
+        do {
+            builder.append((char) (zeroDigit + (int) (rounded % 10)));
+            rounded /= 10;
+        } while (rounded != 0);
+
+        /* The digits were written lowest first */
+        for (int i = start, j = builder.length() - 1; i < j; i++, j--) {
+            char digit = builder.charAt(i);
+            builder.setCharAt(i, builder.charAt(j));
+            builder.setCharAt(j, digit);
+        }
+    }
+
+    /* Returns the parsed format for the current locale, parsing it if needed */
+    private static Template getTemplate(Context context, int formatId) {
+        Locale locale = Locale.getDefault();
+
+        Template[] templates = sTemplates;
+        for (Template template : templates) {
+            if (template.formatId == formatId && template.locale.equals(locale)) {
+                return template;
+            }
+        }
+
+        Template template = new Template(formatId, locale, context.getString(formatId));
+
+        /* Keep the others, minus any parsed for another locale or the same format */
+        List<Template> updated = new ArrayList<Template>(templates.length + 1);
+        updated.add(template);
+        for (Template other : templates) {
+            if (other.formatId != formatId && other.locale.equals(locale)) updated.add(other);
+        }
+        sTemplates = updated.toArray(new Template[updated.size()]);
+
+        return template;
+    }
+
+    /**
+     * A format string split into the literal text around its placeholders.
+     */
+    private static final class Template {
+
+        static final int ARGUMENT_NUMBER = 1;
+        static final int ARGUMENT_TEXT = 2;
+
+        final int formatId;
+        final Locale locale;
+        final String format;
+
+        /* The digit 0 of the locale, which String.format writes digits with */
+        final char zeroDigit;
+
+        /* False if the format uses anything not understood here */
+        final boolean supported;
+
+        /* The text before each placeholder, then the text after the last one */
+        final String[] literals;
+
+        /* Which argument each placeholder is replaced with */
+        final int[] arguments;
+
+        Template(int formatId, Locale locale, String format) {
+            this.formatId = formatId;
+            this.locale = locale;
+            this.format = format;
+            zeroDigit = new DecimalFormatSymbols(locale).getZeroDigit();
+
+            List<String> literals = new ArrayList<String>();
+            List<Integer> arguments = new ArrayList<Integer>();
+            boolean supported = true;
+
+            StringBuilder literal = new StringBuilder();
+            int nextArgument = 1;
+            int i = 0;
+            while (supported && i < format.length()) {
+                char c = format.charAt(i++);
+                if (c != '%') {
+                    literal.append(c);
+                    continue;
+                }
+
+                /* %[argument$][width][.precision]conversion */
+                int start = i;
+                while (i < format.length() && Character.isDigit(format.charAt(i))) i++;
+
+                int argument = -1;
+                int width = -1;
+                if (i < format.length() && format.charAt(i) == '$' && i > start) {
+                    argument = Integer.parseInt(format.substring(start, i));
+                    start = ++i;
+                    while (i < format.length() && Character.isDigit(format.charAt(i))) i++;
+                }
+                if (i > start) width = Integer.parseInt(format.substring(start, i));
+
+                int precision = -1;
+                if (i < format.length() && format.charAt(i) == '.') {
+                    start = ++i;
+                    while (i < format.length() && Character.isDigit(format.charAt(i))) i++;
+                    if (i == start) {
+                        supported = false;
+                        break;
+                    }
+                    precision = Integer.parseInt(format.substring(start, i));
+                }
+
+                if (i == format.length()) {
+                    supported = false;
+                    break;
+                }
+                char conversion = format.charAt(i++);
+
+                if (conversion == '%' && argument == -1 && width == -1 && precision == -1) {
+                    literal.append('%');
+                    continue;
+                }
+
+                if (argument == -1) argument = nextArgument++;
+
+                /* A width of 1 changes nothing, as there is always at least one digit */
+                if (conversion == 'f' && argument == ARGUMENT_NUMBER
+                        && width <= 1 && precision == 0) {
+                    arguments.add(ARGUMENT_NUMBER);
+                } else if (conversion == 's' && argument == ARGUMENT_TEXT
+                        && width == -1 && precision == -1) {
+                    arguments.add(ARGUMENT_TEXT);
+                } else {
+                    supported = false;
+                    break;
+                }
+
+                literals.add(literal.toString());
+                literal.setLength(0);
+            }
+            literals.add(literal.toString());
+
+            this.supported = supported;
+            this.literals = literals.toArray(new String[literals.size()]);
+            this.arguments = new int[arguments.size()];
+            for (int a = 0; a < this.arguments.length; a++) {
+                this.arguments[a] = arguments.get(a);
+            }
+        }
+    }
+}
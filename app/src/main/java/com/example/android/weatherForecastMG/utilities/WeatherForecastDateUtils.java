@@ -1,12 +1,17 @@
 
 package com.example.android.weatherForecastMG.utilities;
 
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.support.annotation.VisibleForTesting;
 import android.text.format.DateUtils;
 
 import com.example.android.weatherForecastMG.R;
 
 import java.text.SimpleDateFormat;
+import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
@@ -18,6 +23,90 @@ public final class WeatherForecastDateUtils {
     /* Milliseconds in a day */
     public static final long DAY_IN_MILLIS = TimeUnit.DAYS.toMillis(1);
 
+    /*
+     * Friendly date strings are cached for the days from yesterday up to this many days ahead,
+     * which covers every day the forecast list shows.
+     */
+    private static final int FRIENDLY_DATE_CACHE_DAYS = 32;
+
+    /**
+     * Where the friendly dates get the time from, so that a test can move it past midnight.
+     */
+    @VisibleForTesting
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    @VisibleForTesting
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private static volatile Clock sClock = SYSTEM_CLOCK;
+
+    /* The friendly date strings of the current day, or null until they are first asked for */
+    private static volatile FriendlyDates sFriendlyDates;
+
+    /* Incremented whenever the time zone or locale changes, to replace the day formatters */
+    private static volatile int sFormatGeneration;
+
+    /* Set once the receiver below has been registered */
+    private static boolean sReceiverRegistered;
+
+    /*
+     * Drops everything cached when the clock, time zone, date or locale changes. Midnight is
+     * also caught without it, as each set of cached strings knows when it expires.
+     */
+    private static final BroadcastReceiver sChangeReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            sFormatGeneration++;
+            sFriendlyDates = null;
+        }
+    };
+
+    /*
+     * The day name formatter of each thread. SimpleDateFormat isn't thread safe, and it takes
+     * the time zone and locale when it is created, so it is created again after either changes.
+     */
+    private static final ThreadLocal<DayFormat> sDayFormat = new ThreadLocal<DayFormat>();
+
+    private static final class DayFormat {
+        final int generation;
+        final Locale locale;
+        final SimpleDateFormat format;
+
+        DayFormat(int generation, Locale locale) {
+            this.generation = generation;
+            this.locale = locale;
+            format = new SimpleDateFormat("EEEE", locale);
+        }
+    }
+
+    /*
+     * The friendly date strings of one day, for one locale. Whether a date is shown as "Today",
+     * "Tomorrow" or a day name depends on what day it is, so the strings are only good until
+     * the next day starts. Each slot is filled in the first time it is asked for; Strings are
+     * immutable, so any thread can read a slot another one filled.
+     */
+    private static final class FriendlyDates {
+        /* Today, as days since the epoch, which the slots are counted from (minus one) */
+        final long today;
+        final long expiresAtMillis;
+        final Locale locale;
+        final String[] dates = new String[FRIENDLY_DATE_CACHE_DAYS];
+        final String[] fullDates = new String[FRIENDLY_DATE_CACHE_DAYS];
+
+        FriendlyDates(long today, Locale locale) {
+            this.today = today;
+            this.expiresAtMillis = (today + 1) * DAY_IN_MILLIS;
+            this.locale = locale;
+        }
+    }
+
     /**
      * This method returns the number of milliseconds (UTC time) for today's date at midnight in
      * the local time zone. For example, if you live in California and the day is September 20th,
@@ -83,6 +172,20 @@ public final class WeatherForecastDateUtils {
         return normalizedUtcMidnightMillis;
     }
 
+    /**
+     * Same as {@link #getNormalizedUtcDateForToday()}, but for the day a given moment falls on
+     * in the local time zone rather than for now. Used to tell which day a 3-hour forecast entry
+     * belongs to.
+     *
+     * @param utcMillis A moment in UTC milliseconds
+     * @return The number of milliseconds (UTC / GMT) for that moment's date at midnight in the
+     * local time zone
+     */
+    public static long getNormalizedUtcDateForTime(long utcMillis) {
+        long gmtOffsetMillis = TimeZone.getDefault().getOffset(utcMillis);
+        return normalizeDate(utcMillis + gmtOffsetMillis);
+    }
+
     /**
      * This method returns the number of days since the epoch (January 01, 1970, 12:00 Midnight UTC)
      * in UTC time from the current date.
@@ -185,6 +288,67 @@ public final class WeatherForecastDateUtils {
      * or "Friday"
      */
     public static String getFriendlyDateString(Context context, long normalizedUtcMidnight, boolean showFullDate) {
+        registerChangeReceiver(context);
+
+        long nowMillis = sClock.currentTimeMillis();
+        Locale locale = context.getResources().getConfiguration().locale;
+
+        FriendlyDates friendlyDates = sFriendlyDates;
+        if (friendlyDates == null
+                || nowMillis >= friendlyDates.expiresAtMillis
+                || !friendlyDates.locale.equals(locale)) {
+            friendlyDates = new FriendlyDates(elapsedDaysSinceEpoch(nowMillis), locale);
+            sFriendlyDates = friendlyDates;
+        }
+
+        /* Dates far from today, or not normalized, are rare enough to just format each time */
+        long slot = elapsedDaysSinceEpoch(normalizedUtcMidnight) - friendlyDates.today + 1;
+        if (!isDateNormalized(normalizedUtcMidnight)
+                || slot < 0 || slot >= FRIENDLY_DATE_CACHE_DAYS) {
+            return formatFriendlyDateString(context, normalizedUtcMidnight, showFullDate);
+        }
+
+        String[] dates = showFullDate ? friendlyDates.fullDates : friendlyDates.dates;
+        String date = dates[(int) slot];
+        if (date == null) {
+            date = formatFriendlyDateString(context, normalizedUtcMidnight, showFullDate);
+            dates[(int) slot] = date;
+        }
+        return date;
+    }
+
+    /**
+     * Makes the friendly dates take the time from another clock, and drops everything cached,
+     * as the receiver below does when the system clock is set.
+     *
+     * @param clock The clock to use, or {@link #SYSTEM_CLOCK}
+     */
+    @VisibleForTesting
+    static void setClock(Clock clock) {
+        sClock = clock;
+        sFormatGeneration++;
+        sFriendlyDates = null;
+    }
+
+    /*
+     * Registers the receiver that drops the cached dates, the first time a date is formatted.
+     * It is registered on the application context, for as long as the process lives.
+     */
+    private static synchronized void registerChangeReceiver(Context context) {
+        if (sReceiverRegistered) return;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.getApplicationContext().registerReceiver(sChangeReceiver, filter);
+        sReceiverRegistered = true;
+    }
+
+    /* Does what getFriendlyDateString describes, without the cache */
+    private static String formatFriendlyDateString(Context context, long normalizedUtcMidnight,
+                                                   boolean showFullDate) {
 
         /*
          * NOTE: localDate should be localDateMidnightMillis and should be straight from the
@@ -207,7 +371,7 @@ public final class WeatherForecastDateUtils {
          * As a basis for comparison, we use the number of days that have passed from the epoch
          * until today.
          */
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        long daysFromEpochToToday = elapsedDaysSinceEpoch(sClock.currentTimeMillis());
 
         if (daysFromEpochToProvidedDate == daysFromEpochToToday || showFullDate) {
             /*
@@ -227,7 +391,7 @@ public final class WeatherForecastDateUtils {
                  * documentation on DateFormat#getBestDateTimePattern(Locale, String)
                  * https://developer.android.com/reference/android/text/format/DateFormat.html#getBestDateTimePattern
                  */
-                String localizedDayName = new SimpleDateFormat("EEEE").format(localDate);
+                String localizedDayName = getDayFormat().format(localDate);
                 return readableDate.replace(localizedDayName, dayName);
             } else {
                 return readableDate;
@@ -277,7 +441,7 @@ public final class WeatherForecastDateUtils {
          * day name.
          */
         long daysFromEpochToProvidedDate = elapsedDaysSinceEpoch(dateInMillis);
-        long daysFromEpochToToday = elapsedDaysSinceEpoch(System.currentTimeMillis());
+        long daysFromEpochToToday = elapsedDaysSinceEpoch(sClock.currentTimeMillis());
 
         int daysAfterToday = (int) (daysFromEpochToProvidedDate - daysFromEpochToToday);
 
@@ -288,8 +452,21 @@ public final class WeatherForecastDateUtils {
                 return context.getString(R.string.tomorrow);
 
             default:
-                SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
-                return dayFormat.format(dateInMillis);
+                return getDayFormat().format(dateInMillis);
+        }
+    }
+
+    /* Returns this thread's "EEEE" formatter for the current time zone and locale */
+    private static SimpleDateFormat getDayFormat() {
+        int generation = sFormatGeneration;
+        Locale locale = Locale.getDefault();
+
+        DayFormat dayFormat = sDayFormat.get();
+        if (dayFormat == null || dayFormat.generation != generation
+                || !dayFormat.locale.equals(locale)) {
+            dayFormat = new DayFormat(generation, locale);
+            sDayFormat.set(dayFormat);
         }
+        return dayFormat.format;
     }
 }
\ No newline at end of file
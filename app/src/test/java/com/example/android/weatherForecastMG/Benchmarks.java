@@ -0,0 +1,95 @@
+package com.example.android.weatherForecastMG;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+
+/**
+ * Times two ways of doing the same work against each other, for the *Benchmark classes. That
+ * both ways give the same results is checked by the *Test classes, so the benchmarks are left
+ * out of the unit test run. Running the unit tests with -Pbenchmarks runs only them, and each
+ * comparison is appended to the report file named by the {@value #REPORT_PROPERTY} system
+ * property.
+ * <p>
+ * The benchmarks run on the JVM against Robolectric, so the times only compare the two ways
+ * with each other. They say nothing about how long either takes on a device.
+ */
+public final class Benchmarks {
+
+    public static final String REPORT_PROPERTY = "benchmark.report";
+
+    /* Where the report goes when the property isn't set, e.g. when run from the IDE */
+    private static final String DEFAULT_REPORT = "build/reports/benchmarks.txt";
+
+    /**
+     * One way of doing the work, run once per round.
+     */
+    public interface Candidate {
+        /**
+         * @return Something computed from the work, so that the JIT can't leave it out
+         */
+        long run();
+    }
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Runs each candidate for the warmup rounds, then times the measured rounds, alternating
+     * between the two so that neither gets a quieter machine than the other. The mean time
+     * each took per operation is appended to the report.
+     *
+     * @param name           What is compared, for the report
+     * @param operations     How many operations one round of either candidate does
+     * @param warmupRounds   Untimed rounds to run first, so both are compiled
+     * @param measuredRounds Timed rounds
+     * @return The sum of what the candidates returned, for the caller to check
+     * @throws IOException If the report can't be written
+     */
+    public static long compare(String name, int operations, int warmupRounds,
+                               int measuredRounds, String firstLabel, Candidate first,
+                               String secondLabel, Candidate second) throws IOException {
+        long sink = 0;
+        for (int i = 0; i < warmupRounds; i++) {
+            sink += first.run();
+            sink += second.run();
+        }
+
+        long firstNanos = 0;
+        long secondNanos = 0;
+        for (int i = 0; i < measuredRounds; i++) {
+            long begin = System.nanoTime();
+            sink += first.run();
+            firstNanos += System.nanoTime() - begin;
+
+            begin = System.nanoTime();
+            sink += second.run();
+            secondNanos += System.nanoTime() - begin;
+        }
+
+        double perOperation = (double) operations * measuredRounds;
+        report(String.format(Locale.US,
+                "%s: %s %.1fns, %s %.1fns per operation (%d operations, mean of %d rounds)",
+                name, firstLabel, firstNanos / perOperation, secondLabel,
+                secondNanos / perOperation, operations, measuredRounds));
+        return sink;
+    }
+
+    private static void report(String line) throws IOException {
+        File file = new File(System.getProperty(REPORT_PROPERTY, DEFAULT_REPORT));
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create " + directory);
+        }
+
+        Writer writer = new FileWriter(file, true);
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } finally {
+            writer.close();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.android.weatherForecastMG;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.support.v7.util.ListUpdateCallback;
+
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Checks which days {@link ForecastListUpdate#calculate} tells the list to insert, remove and
+ * rebind. The updates are applied to a list of markers standing in for the RecyclerView's rows,
+ * so the checks don't depend on the order DiffUtil dispatches them in.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ForecastListUpdateTest {
+
+    private static final long DAY_MILLIS = 86400000L;
+
+    /* What a row of the simulated list holds after the update */
+    private static final String KEPT = "kept";
+    private static final String REBOUND = "rebound";
+    private static final String INSERTED = "inserted";
+
+    private Context mContext;
+    private long mToday;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        WeatherForecastPreferences.resetSnapshot();
+        mToday = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+    }
+
+    @After
+    public void tearDown() {
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @Test
+    public void firstLoadHasNoDiff() {
+        List<ForecastRow> rows = buildRows(0, 20.0, 20.0, 20.0);
+
+        ForecastListUpdate update = ForecastListUpdate.calculate(null, rows);
+
+        assertNull(update.previous);
+        assertSame(rows, update.rows);
+        assertNull(update.diff);
+    }
+
+    @Test
+    public void unchangedForecastChangesNothing() {
+        List<String> list = apply(buildRows(0, 20.0, 21.0, 22.0), buildRows(0, 20.0, 21.0, 22.0));
+
+        assertEquals(Arrays.asList(KEPT, KEPT, KEPT), list);
+    }
+
+    @Test
+    public void onlyTheChangedDayIsRebound() {
+        List<String> list = apply(buildRows(0, 20.0, 21.0, 22.0), buildRows(0, 20.0, 25.0, 22.0));
+
+        assertEquals(Arrays.asList(KEPT, REBOUND, KEPT), list);
+    }
+
+    @Test
+    public void newDaysAreInsertedAtTheEnd() {
+        List<String> list = apply(buildRows(0, 20.0, 21.0), buildRows(0, 20.0, 21.0, 22.0));
+
+        assertEquals(Arrays.asList(KEPT, KEPT, INSERTED), list);
+    }
+
+    @Test
+    public void todayIsReboundWhenYesterdayDropsOff() {
+        /* Yesterday was at the top; now today is, and needs the "today" layout */
+        List<ForecastRow> previous = buildRows(-1, 19.0, 20.0, 21.0, 22.0);
+        List<ForecastRow> rows = buildRows(0, 20.0, 21.0, 22.0);
+
+        List<String> list = apply(previous, rows);
+
+        assertEquals(Arrays.asList(REBOUND, KEPT, KEPT), list);
+    }
+
+    @Test
+    public void formerTopDayIsReboundWhenADayIsAddedAboveIt() {
+        List<String> list = apply(buildRows(0, 20.0, 21.0), buildRows(-1, 19.0, 20.0, 21.0));
+
+        assertEquals(Arrays.asList(INSERTED, REBOUND, KEPT), list);
+    }
+
+    /*
+     * Calculates the update from previous to rows, applies it to a list of previous.size() KEPT
+     * markers and returns the list.
+     */
+    private static List<String> apply(List<ForecastRow> previous, List<ForecastRow> rows) {
+        ForecastListUpdate update = ForecastListUpdate.calculate(previous, rows);
+        assertSame(previous, update.previous);
+        assertSame(rows, update.rows);
+
+        final List<String> list = new ArrayList<String>();
+        for (int i = 0; i < previous.size(); i++) {
+            list.add(KEPT);
+        }
+        update.diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    list.add(position, INSERTED);
+                }
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    list.remove(position);
+                }
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                throw new AssertionError("Days never move");
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                for (int i = position; i < position + count; i++) {
+                    if (list.get(i).equals(KEPT)) list.set(i, REBOUND);
+                }
+            }
+        });
+
+        assertEquals(rows.size(), list.size());
+        return list;
+    }
+
+    /* Builds a row per high temperature, one day apart, starting firstDay days from today */
+    private List<ForecastRow> buildRows(int firstDay, double... highs) {
+        MatrixCursor cursor = new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+        for (int i = 0; i < highs.length; i++) {
+            cursor.addRow(new Object[]{mToday + (firstDay + i) * DAY_MILLIS, highs[i], 10.0, 800});
+        }
+        return ForecastRow.fromCursor(mContext, cursor);
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.android.weatherForecastMG;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.preference.PreferenceManager;
+
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+import com.example.android.weatherForecastMG.utilities.ForecastWeatherUtils;
+import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the rows {@link ForecastRow} formats in the background show exactly what
+ * ForecastAdapter used to format while binding, and that rows only count as the same when
+ * everything they show is.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ForecastRowTest {
+
+    private static final long DAY_MILLIS = 86400000L;
+
+    private Context mContext;
+    private long mToday;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        WeatherForecastPreferences.resetSnapshot();
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit().clear().commit();
+        mToday = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+    }
+
+    @After
+    public void tearDown() {
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @Test
+    public void rowsShowWhatBindingUsedToFormat() {
+        MatrixCursor cursor = newForecastCursor();
+        cursor.addRow(new Object[]{mToday, 21.4, 12.6, 800});
+        cursor.addRow(new Object[]{mToday + DAY_MILLIS, -0.4, -7.5, 511});
+
+        List<ForecastRow> rows = ForecastRow.fromCursor(mContext, cursor);
+
+        assertEquals(2, rows.size());
+        assertRowFormatted(rows.get(0), mToday, 21.4, 12.6, 800, true);
+        assertRowFormatted(rows.get(1), mToday + DAY_MILLIS, -0.4, -7.5, 511, true);
+    }
+
+    @Test
+    public void unitsPreferenceIsApplied() {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        MatrixCursor cursor = newForecastCursor();
+        cursor.addRow(new Object[]{mToday, 30.0, 15.0, 501});
+
+        ForecastRow row = ForecastRow.fromCursor(mContext, cursor).get(0);
+
+        assertRowFormatted(row, mToday, 30.0, 15.0, 501, false);
+    }
+
+    @Test
+    public void wholeCursorIsReadWhereverItStands() {
+        MatrixCursor cursor = newForecastCursor();
+        for (int day = 0; day < 3; day++) {
+            cursor.addRow(new Object[]{mToday + day * DAY_MILLIS, 20.0, 10.0, 800});
+        }
+        cursor.moveToLast();
+
+        List<ForecastRow> rows = ForecastRow.fromCursor(mContext, cursor);
+
+        assertEquals(3, rows.size());
+        assertEquals(mToday, rows.get(0).date);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void rowsCannotBeChanged() {
+        ForecastRow.fromCursor(mContext, newForecastCursor()).add(null);
+    }
+
+    @Test
+    public void rowsAreTheSameOnlyIfEverythingShownIs() {
+        MatrixCursor cursor = newForecastCursor();
+        cursor.addRow(new Object[]{mToday, 20.0, 10.0, 800});
+        /* Rounds to the same text as the row above */
+        cursor.addRow(new Object[]{mToday, 20.2, 10.1, 800});
+        cursor.addRow(new Object[]{mToday, 20.0, 10.0, 801});
+        cursor.addRow(new Object[]{mToday, 23.0, 10.0, 800});
+        cursor.addRow(new Object[]{mToday + DAY_MILLIS, 20.0, 10.0, 800});
+
+        List<ForecastRow> rows = ForecastRow.fromCursor(mContext, cursor);
+        ForecastRow row = rows.get(0);
+
+        assertTrue(row.hasSameContents(rows.get(1)));
+        assertFalse(row.hasSameContents(rows.get(2)));
+        assertFalse(row.hasSameContents(rows.get(3)));
+        assertFalse(row.hasSameContents(rows.get(4)));
+    }
+
+    private void assertRowFormatted(ForecastRow row, long date, double high, double low,
+                                    int weatherId, boolean isMetric) {
+        String description = ForecastWeatherUtils.getStringForWeatherCondition(mContext, weatherId);
+        String highString = ForecastWeatherUtils.formatTemperature(mContext, high, isMetric);
+        String lowString = ForecastWeatherUtils.formatTemperature(mContext, low, isMetric);
+
+        assertEquals(date, row.date);
+        assertEquals(weatherId, row.weatherId);
+        assertEquals(WeatherForecastDateUtils.getFriendlyDateString(mContext, date, false),
+                row.dateString);
+        assertEquals(ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId),
+                row.largeIconResId);
+        assertEquals(ForecastWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId),
+                row.smallIconResId);
+        assertEquals(description, row.description);
+        assertEquals(mContext.getString(R.string.a11y_forecast, description),
+                row.descriptionA11y);
+        assertEquals(highString, row.highString);
+        assertEquals(mContext.getString(R.string.a11y_high_temp, highString), row.highA11y);
+        assertEquals(lowString, row.lowString);
+        assertEquals(mContext.getString(R.string.a11y_low_temp, lowString), row.lowA11y);
+    }
+
+    private static MatrixCursor newForecastCursor() {
+        return new MatrixCursor(MainActivity.MAIN_FORECAST_PROJECTION);
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.LocationEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the forecast list and detail queries {@link WeatherProvider} answers from a
+ * {@link ForecastSnapshot} return exactly what SQLite returns for the same query: the same
+ * rows, values, types and NULLs. Queries a snapshot can't answer must still go to SQLite.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ForecastSnapshotTest {
+
+    private static final long DAY = WeatherForecastDateUtils.DAY_IN_MILLIS;
+
+    private static final String METAR = "LSZH 141220Z 24008KT 9999 FEW045 24/12 Q1018";
+
+    /* Today, as the sync would store it; days before it aren't kept */
+    private long mToday;
+
+    /* The days stored for the preferred location, with a gap the day after tomorrow */
+    private long[] mDates;
+
+    private WeatherProvider mProvider;
+    private WeatherDbHelper mDbHelper;
+    private long mLocationId;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        context.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherForecastPreferences.resetSnapshot();
+        mToday = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+        mDates = new long[]{mToday, mToday + DAY, mToday + 3 * DAY, mToday + 4 * DAY};
+        mProvider = Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY).get();
+        mDbHelper = new WeatherDbHelper(context);
+        ContentResolver resolver = context.getContentResolver();
+
+        mLocationId = insertLocation(resolver,
+                WeatherForecastPreferences.getPreferredWeatherLocation(context));
+        resolver.bulkInsert(WeatherEntry.buildUpsertUriForLocation(mLocationId),
+                buildForecast(mDates, 0));
+
+        /* Another location on the same days, which must never show up */
+        long otherLocationId = insertLocation(resolver, "Geneva,CH");
+        resolver.bulkInsert(WeatherEntry.buildUpsertUriForLocation(otherLocationId),
+                buildForecast(mDates, 10));
+
+        /*
+         * Aviation weather for some days only, some of it partly: the other columns stay NULL.
+         * Written straight to the database, before the first query loads the snapshot.
+         */
+        ContentValues metar = new ContentValues();
+        metar.put(WeatherEntry.COLUMN_METAR_RAW, METAR);
+        metar.put(WeatherEntry.COLUMN_DEWPOINT_C, 12.0);
+        metar.put(WeatherEntry.COLUMN_DEWPOINT_F, 53.6);
+        metar.put(WeatherEntry.COLUMN_FLIGHT_CATEGORY, "VFR");
+        metar.put(WeatherEntry.COLUMN_VISIBILITY_MILES, "6+");
+        updateDay(mDates[0], metar);
+
+        ContentValues dewpointOnly = new ContentValues();
+        dewpointOnly.put(WeatherEntry.COLUMN_DEWPOINT_C, 0.0);
+        updateDay(mDates[2], dewpointOnly);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        WeatherForecastPreferences.resetSnapshot();
+        RuntimeEnvironment.application.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void allColumnsMatchSqliteIncludingNulls() {
+        Cursor snapshot = mProvider.query(WeatherEntry.CONTENT_URI, null, null, null, null);
+        assertTrue(snapshot instanceof ForecastSnapshotCursor);
+
+        /* Every column is asked for, and the days with and without METAR cover both masks */
+        assertSameAsSqlite(snapshot, null, null, null);
+
+        /*
+         * A number is read from text the way CursorWindow does on a device, from what the text
+         * starts with, rather than failing
+         */
+        String[] projection = {WeatherEntry.COLUMN_VISIBILITY_MILES, WeatherEntry.COLUMN_METAR_RAW};
+        snapshot = mProvider.query(WeatherEntry.buildWeatherUriWithDate(mDates[0]), projection,
+                null, null, null);
+        try {
+            assertTrue(snapshot.moveToFirst());
+            assertEquals(6, snapshot.getLong(0));
+            assertEquals(6, snapshot.getDouble(0), 0);
+            assertEquals(0, snapshot.getInt(1));
+            assertEquals(0, snapshot.getFloat(1), 0);
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void dateUrisFindTheirRow() {
+        String[] projection = {WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_METAR_RAW, WeatherEntry.COLUMN_DEWPOINT_C};
+
+        /* Each stored day, the gap, and the days before the first and after the last */
+        long[] dates = {mToday - DAY, mDates[0], mDates[1], mToday + 2 * DAY, mDates[2],
+                mDates[3], mToday + 5 * DAY};
+        for (long date : dates) {
+            Cursor snapshot = mProvider.query(WeatherEntry.buildWeatherUriWithDate(date),
+                    projection, null, null, null);
+            assertTrue(snapshot instanceof ForecastSnapshotCursor);
+            assertSameAsSqlite(snapshot, projection,
+                    WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(date)});
+        }
+    }
+
+    @Test
+    public void todayOnwardsStartsAtTheFirstDayFromThere() {
+        String[] projection = {WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_WEATHER_ID};
+
+        long[] dates = {mToday - DAY, mDates[0], mToday + 2 * DAY, mDates[3], mToday + 5 * DAY};
+        for (long date : dates) {
+            String[] selectionArgs = {Long.toString(date)};
+            Cursor snapshot = mProvider.query(WeatherEntry.CONTENT_URI, projection,
+                    WeatherEntry.SQL_SELECT_TODAY_ONWARDS, selectionArgs,
+                    WeatherEntry.COLUMN_DATE + " ASC");
+            assertTrue(snapshot instanceof ForecastSnapshotCursor);
+            assertSameAsSqlite(snapshot, projection,
+                    WeatherEntry.SQL_SELECT_TODAY_ONWARDS, selectionArgs);
+        }
+    }
+
+    @Test
+    public void otherQueriesGoToSqlite() {
+        String[] projection = {WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_MAX_TEMP};
+        String selection = WeatherEntry.COLUMN_MAX_TEMP + " > ?";
+        String[] selectionArgs = {"22"};
+
+        /* A selection other than today onwards */
+        Cursor cursor = mProvider.query(WeatherEntry.CONTENT_URI, projection, selection,
+                selectionArgs, null);
+        assertFalse(cursor instanceof ForecastSnapshotCursor);
+        assertSameAsSqlite(cursor, projection, selection, selectionArgs);
+
+        /* Another order */
+        cursor = mProvider.query(WeatherEntry.CONTENT_URI, projection, null, null,
+                WeatherEntry.COLUMN_DATE + " DESC");
+        assertFalse(cursor instanceof ForecastSnapshotCursor);
+        assertEquals(mDates.length, cursor.getCount());
+        assertTrue(cursor.moveToFirst());
+        assertEquals(mDates[mDates.length - 1], cursor.getLong(0));
+        cursor.close();
+
+        /* A column that isn't a column of the table */
+        String[] count = {"COUNT(*)"};
+        cursor = mProvider.query(WeatherEntry.CONTENT_URI, count, null, null, null);
+        assertFalse(cursor instanceof ForecastSnapshotCursor);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(mDates.length, cursor.getLong(0));
+        cursor.close();
+    }
+
+    /*
+     * Compares a cursor with the one SQLite returns for the same query of the preferred
+     * location's rows in date order, and closes both.
+     */
+    private void assertSameAsSqlite(Cursor actual, String[] projection, String selection,
+                                    String[] selectionArgs) {
+        String locationSelection = WeatherEntry.COLUMN_LOCATION_ID + " = " + mLocationId;
+        Cursor expected = mDbHelper.getReadableDatabase().query(WeatherEntry.TABLE_NAME,
+                projection,
+                selection == null ? locationSelection
+                        : "(" + selection + ") AND " + locationSelection,
+                selectionArgs,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            assertArrayEquals(expected.getColumnNames(), actual.getColumnNames());
+            assertEquals(expected.getCount(), actual.getCount());
+            while (expected.moveToNext()) {
+                assertTrue(actual.moveToNext());
+                for (int column = 0; column < expected.getColumnCount(); column++) {
+                    String message = "Row " + expected.getPosition() + ", "
+                            + expected.getColumnName(column);
+                    assertEquals(message, expected.getType(column), actual.getType(column));
+                    assertEquals(message, expected.isNull(column), actual.isNull(column));
+                    assertEquals(message, expected.getString(column), actual.getString(column));
+
+                    /* Robolectric reads numbers from text unlike a device; see below */
+                    if (expected.getType(column) == Cursor.FIELD_TYPE_STRING) continue;
+                    assertEquals(message, expected.getLong(column), actual.getLong(column));
+                    assertEquals(message, expected.getDouble(column), actual.getDouble(column), 0);
+                }
+            }
+            assertFalse(actual.moveToNext());
+        } finally {
+            expected.close();
+            actual.close();
+        }
+    }
+
+    private void updateDay(long date, ContentValues values) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        assertEquals(1, db.update(WeatherEntry.TABLE_NAME, values,
+                WeatherEntry.COLUMN_LOCATION_ID + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(mLocationId), Long.toString(date)}));
+    }
+
+    private static long insertLocation(ContentResolver resolver, String query) {
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_QUERY, query);
+        Uri uri = resolver.insert(LocationEntry.CONTENT_URI, location);
+        return ContentUris.parseId(uri);
+    }
+
+    private static ContentValues[] buildForecast(long[] dates, int offset) {
+        ContentValues[] forecast = new ContentValues[dates.length];
+        for (int i = 0; i < dates.length; i++) {
+            int n = i + offset;
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_DATE, dates[i]);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + n);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 12.5 + n);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 21.25 + n);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 60 + n);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1015.0 + n);
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 1.5 * n);
+            day.put(WeatherEntry.COLUMN_DEGREES, (n * 45) % 360);
+            forecast[i] = day;
+        }
+        return forecast;
+    }
+}
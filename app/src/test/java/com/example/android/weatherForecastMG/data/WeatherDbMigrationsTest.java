@@ -0,0 +1,269 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.preference.PreferenceManager;
+
+import com.example.android.weatherForecastMG.R;
+import com.example.android.weatherForecastMG.data.WeatherContract.LocationEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Upgrades a database created at {@link WeatherDbMigrations#BASE_VERSION} with forecast rows in
+ * it, and checks that the rows survive every step and that the result has exactly the schema of
+ * a database created from scratch.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherDbMigrationsTest {
+
+    private static final String LOCATION = "London,UK";
+    private static final double LATITUDE = 51.51;
+    private static final double LONGITUDE = -0.13;
+
+    /* Three days of forecast, as WeatherForecast stored it at version 3 */
+    private static final long FIRST_DATE = 1500000000000L / 86400000L * 86400000L;
+    private static final int DAYS = 3;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        WeatherForecastPreferences.resetSnapshot();
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), LOCATION)
+                .commit();
+        WeatherForecastPreferences.setLocationDetails(mContext, LATITUDE, LONGITUDE);
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        WeatherForecastPreferences.resetSnapshot();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void everyStepKeepsTheForecast() {
+        createBaseDatabase();
+
+        for (int version = WeatherDbMigrations.BASE_VERSION + 1;
+             version <= WeatherDbMigrations.LATEST_VERSION; version++) {
+            VersionedDbHelper dbHelper = new VersionedDbHelper(mContext, version);
+            try {
+                SQLiteDatabase db = dbHelper.getWritableDatabase();
+                assertEquals(version, db.getVersion());
+                assertForecastKept(db, "after upgrading to version " + version);
+            } finally {
+                dbHelper.close();
+            }
+        }
+    }
+
+    @Test
+    public void upgradeMovesTheForecastToThePreferredLocation() {
+        createBaseDatabase();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        try {
+            SQLiteDatabase db = dbHelper.getReadableDatabase();
+            assertEquals(WeatherDbMigrations.LATEST_VERSION, db.getVersion());
+
+            Cursor location = db.query(LocationEntry.TABLE_NAME, new String[]{
+                    LocationEntry._ID,
+                    LocationEntry.COLUMN_QUERY,
+                    LocationEntry.COLUMN_LATITUDE,
+                    LocationEntry.COLUMN_LONGITUDE
+            }, null, null, null, null, null);
+            long locationId;
+            try {
+                assertEquals(1, location.getCount());
+                assertTrue(location.moveToFirst());
+                locationId = location.getLong(0);
+                assertEquals(LOCATION, location.getString(1));
+                assertEquals(LATITUDE, location.getDouble(2), 0);
+                assertEquals(LONGITUDE, location.getDouble(3), 0);
+            } finally {
+                location.close();
+            }
+
+            Cursor weather = db.query(WeatherEntry.TABLE_NAME,
+                    new String[]{WeatherEntry.COLUMN_LOCATION_ID},
+                    null, null, null, null, null);
+            try {
+                assertEquals(DAYS, weather.getCount());
+                while (weather.moveToNext()) {
+                    assertEquals(locationId, weather.getLong(0));
+                }
+            } finally {
+                weather.close();
+            }
+        } finally {
+            dbHelper.close();
+        }
+    }
+
+    @Test
+    public void upgradedSchemaMatchesFreshSchema() {
+        WeatherDbHelper freshHelper = new WeatherDbHelper(mContext);
+        List<String> freshSchema;
+        try {
+            freshSchema = dumpSchema(freshHelper.getReadableDatabase());
+        } finally {
+            freshHelper.close();
+        }
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+        createBaseDatabase();
+        WeatherDbHelper upgradedHelper = new WeatherDbHelper(mContext);
+        try {
+            assertEquals(freshSchema, dumpSchema(upgradedHelper.getReadableDatabase()));
+        } finally {
+            upgradedHelper.close();
+        }
+    }
+
+    @Test
+    public void databaseOlderThanBaseIsRecreated() {
+        SQLiteOpenHelper oldHelper = new SQLiteOpenHelper(mContext,
+                WeatherDbHelper.DATABASE_NAME, null, WeatherDbMigrations.BASE_VERSION - 1) {
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE " + WeatherEntry.TABLE_NAME
+                        + " (_id INTEGER PRIMARY KEY, date INTEGER)");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            }
+        };
+        oldHelper.getWritableDatabase();
+        oldHelper.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        List<String> recreatedSchema;
+        try {
+            recreatedSchema = dumpSchema(dbHelper.getReadableDatabase());
+        } finally {
+            dbHelper.close();
+        }
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+        WeatherDbHelper freshHelper = new WeatherDbHelper(mContext);
+        try {
+            assertEquals(dumpSchema(freshHelper.getReadableDatabase()), recreatedSchema);
+        } finally {
+            freshHelper.close();
+        }
+    }
+
+    /*
+     * Creates weather.db at BASE_VERSION, the way WeatherForecast created it before migrations
+     * existed, with DAYS of forecast in it.
+     */
+    private void createBaseDatabase() {
+        SQLiteOpenHelper baseHelper = new VersionedDbHelper(mContext,
+                WeatherDbMigrations.BASE_VERSION);
+        try {
+            SQLiteDatabase db = baseHelper.getWritableDatabase();
+            for (int day = 0; day < DAYS; day++) {
+                ContentValues row = new ContentValues();
+                row.put(WeatherEntry.COLUMN_DATE, FIRST_DATE + day * 86400000L);
+                row.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + day);
+                row.put(WeatherEntry.COLUMN_MIN_TEMP, 5.5 + day);
+                row.put(WeatherEntry.COLUMN_MAX_TEMP, 12.25 + day);
+                row.put(WeatherEntry.COLUMN_HUMIDITY, 60.0);
+                row.put(WeatherEntry.COLUMN_PRESSURE, 1012.0);
+                row.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+                row.put(WeatherEntry.COLUMN_DEGREES, 270.0);
+                db.insertOrThrow(WeatherEntry.TABLE_NAME, null, row);
+            }
+        } finally {
+            baseHelper.close();
+        }
+    }
+
+    private static void assertForecastKept(SQLiteDatabase db, String when) {
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, new String[]{
+                WeatherEntry.COLUMN_DATE,
+                WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherEntry.COLUMN_MAX_TEMP
+        }, null, null, null, null, WeatherEntry.COLUMN_DATE);
+        try {
+            assertEquals(when, DAYS, cursor.getCount());
+            for (int day = 0; day < DAYS; day++) {
+                assertTrue(when, cursor.moveToNext());
+                assertEquals(when, FIRST_DATE + day * 86400000L, cursor.getLong(0));
+                assertEquals(when, 800 + day, cursor.getInt(1));
+                assertEquals(when, 5.5 + day, cursor.getDouble(2), 0);
+                assertEquals(when, 12.25 + day, cursor.getDouble(3), 0);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+     * Returns every table and index with the SQL that creates it. Tables SQLite and Android
+     * keep for themselves are left out.
+     */
+    private static List<String> dumpSchema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<String>();
+        Cursor cursor = db.rawQuery("SELECT type, name, tbl_name, sql FROM sqlite_master"
+                + " WHERE name NOT IN ('android_metadata', 'sqlite_sequence')"
+                + " ORDER BY type, name", null);
+        try {
+            while (cursor.moveToNext()) {
+                schema.add(cursor.getString(0) + " " + cursor.getString(1) + " on "
+                        + cursor.getString(2) + ": " + cursor.getString(3));
+            }
+        } finally {
+            cursor.close();
+        }
+        return schema;
+    }
+
+    /*
+     * Opens weather.db at any version WeatherDbMigrations knows, creating or upgrading it the
+     * way WeatherDbHelper does.
+     */
+    private static final class VersionedDbHelper extends SQLiteOpenHelper {
+
+        private final Context mContext;
+        private final int mVersion;
+
+        VersionedDbHelper(Context context, int version) {
+            super(context, WeatherDbHelper.DATABASE_NAME, null, version);
+            mContext = context;
+            mVersion = version;
+        }
+
+        @Override
+        public void onCreate(SQLiteDatabase db) {
+            WeatherDbMigrations.createBaseSchema(db);
+            WeatherDbMigrations.migrate(mContext, db, WeatherDbMigrations.BASE_VERSION, mVersion);
+        }
+
+        @Override
+        public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+            WeatherDbMigrations.migrate(mContext, db, oldVersion, newVersion);
+        }
+    }
+}
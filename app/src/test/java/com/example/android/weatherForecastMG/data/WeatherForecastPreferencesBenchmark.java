@@ -0,0 +1,93 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.Context;
+import android.preference.PreferenceManager;
+
+import com.example.android.weatherForecastMG.Benchmarks;
+import com.example.android.weatherForecastMG.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times the preference reads made while binding a forecast row through the snapshot in
+ * {@link WeatherForecastPreferences} against each read going to SharedPreferences and resolving
+ * its key from resources, the way the getters did before. See {@link Benchmarks}; that both
+ * read the same values is checked by {@link WeatherForecastPreferencesTest}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherForecastPreferencesBenchmark {
+
+    /* A screenful of rows bound many times over, as when the list is flung */
+    private static final int BINDS = 20000;
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        WeatherForecastPreferences.resetSnapshot();
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_imperial))
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @Test
+    public void compareBindReads() throws IOException {
+        long metric = Benchmarks.compare("Preference reads per bind", BINDS, WARMUP_ROUNDS,
+                MEASURED_ROUNDS, "SharedPreferences", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        return bindWithSharedPreferences();
+                    }
+                },
+                "snapshot", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        return bindWithSnapshot();
+                    }
+                });
+
+        /* The units are imperial, so none of the reads said metric */
+        assertEquals(0, metric);
+    }
+
+    /*
+     * The reads binding a row makes: the units for the high and the low temperature. Returns
+     * how many of them said metric.
+     */
+    private int bindWithSharedPreferences() {
+        int metric = 0;
+        for (int i = 0; i < BINDS; i++) {
+            if (WeatherForecastPreferencesTest.readIsMetric(mContext)) metric++;
+            if (WeatherForecastPreferencesTest.readIsMetric(mContext)) metric++;
+        }
+        return metric;
+    }
+
+    private int bindWithSnapshot() {
+        int metric = 0;
+        for (int i = 0; i < BINDS; i++) {
+            if (WeatherForecastPreferences.isMetric(mContext)) metric++;
+            if (WeatherForecastPreferences.isMetric(mContext)) metric++;
+        }
+        return metric;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.weatherForecastMG.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the snapshot in {@link WeatherForecastPreferences} returns what SharedPreferences
+ * holds, read the way the getters did before the snapshot, also after a preference is changed
+ * behind the snapshot's back. {@link WeatherForecastPreferencesBenchmark} times the two ways of
+ * reading.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherForecastPreferencesTest {
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        WeatherForecastPreferences.resetSnapshot();
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), "Zurich,CH")
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_imperial))
+                .commit();
+    }
+
+    @After
+    public void tearDown() {
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @Test
+    public void snapshotReadsWhatSharedPreferencesHolds() {
+        assertEquals(readIsMetric(mContext), WeatherForecastPreferences.isMetric(mContext));
+        assertFalse(WeatherForecastPreferences.isMetric(mContext));
+        assertEquals("Zurich,CH", WeatherForecastPreferences.getPreferredWeatherLocation(mContext));
+    }
+
+    @Test
+    public void snapshotFollowsChangesMadeElsewhere() {
+        assertFalse(WeatherForecastPreferences.isMetric(mContext));
+
+        /* The way SettingsFragment writes, without going through WeatherForecastPreferences */
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_metric))
+                .apply();
+
+        assertTrue(readIsMetric(mContext));
+        assertTrue(WeatherForecastPreferences.isMetric(mContext));
+    }
+
+    /* Reads the units preference the way isMetric did before the snapshot */
+    static boolean readIsMetric(Context context) {
+        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(context);
+        String keyForUnits = context.getString(R.string.pref_units_key);
+        String defaultUnits = context.getString(R.string.pref_units_metric);
+        String preferredUnits = sp.getString(keyForUnits, defaultUnits);
+        return context.getString(R.string.pref_units_metric).equals(preferredUnits);
+    }
+}
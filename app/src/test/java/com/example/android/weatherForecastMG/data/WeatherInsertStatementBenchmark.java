@@ -0,0 +1,62 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.weatherForecastMG.Benchmarks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+
+/**
+ * Times storing forecast rows through {@link WeatherInsertStatement} against storing them
+ * through SQLiteDatabase#insert, the way bulkInsert did before. See {@link Benchmarks}; that
+ * both store the same rows is checked by {@link WeatherInsertStatementTest}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherInsertStatementBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private ContentValues[] mRows;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new WeatherDbHelper(RuntimeEnvironment.application);
+        mDb = mDbHelper.getWritableDatabase();
+        mRows = WeatherInsertStatementTest.buildRows(WeatherInsertStatementTest.ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void compareInsertPaths() throws IOException {
+        Benchmarks.compare("bulkInsert per row", mRows.length, WARMUP_ROUNDS, MEASURED_ROUNDS,
+                "db.insert", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        WeatherInsertStatementTest.insertWithDbInsert(mDb, mRows);
+                        return 0;
+                    }
+                },
+                "compiled statement", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        WeatherInsertStatementTest.insertWithStatement(mDb, mRows);
+                        return 0;
+                    }
+                });
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.BaseColumns;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.HourlyEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares storing forecast rows through {@link WeatherInsertStatement} with storing them through
+ * SQLiteDatabase#insert, the way bulkInsert did before. Both paths must store exactly the same
+ * rows. The 3-hour entries, stored through {@link WeatherInsertStatement#forHourly}, are
+ * checked the same way. {@link WeatherInsertStatementBenchmark} times the two paths.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherInsertStatementTest {
+
+    /* A week of forecast for each of 14 locations */
+    static final int ROWS = 98;
+
+    private WeatherDbHelper mDbHelper;
+    private SQLiteDatabase mDb;
+    private ContentValues[] mRows;
+
+    @Before
+    public void setUp() {
+        mDbHelper = new WeatherDbHelper(RuntimeEnvironment.application);
+        mDb = mDbHelper.getWritableDatabase();
+        mRows = buildRows(ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+    }
+
+    @Test
+    public void compiledInsertStoresTheSameRows() {
+        insertWithDbInsert(mDb, mRows);
+        List<String> viaDbInsert = dumpWeatherTable();
+
+        insertWithStatement(mDb, mRows);
+        List<String> viaStatement = dumpWeatherTable();
+
+        assertEquals(ROWS, viaStatement.size());
+        assertEquals(viaDbInsert, viaStatement);
+    }
+
+    @Test
+    public void onlyForecastRowsCanUseTheStatement() {
+        WeatherInsertStatement statement = new WeatherInsertStatement(mDb);
+        try {
+            assertOnlyExactRowsFit(statement, mRows[0], WeatherEntry.COLUMN_DEGREES);
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void compiledHourlyInsertStoresTheSameRows() {
+        ContentValues[] entries = buildHourlyEntries(ROWS);
+
+        insertHourly(entries, false);
+        List<String> viaDbInsert = dumpTable(HourlyEntry.TABLE_NAME,
+                HourlyEntry.COLUMN_LOCATION_ID + ", " + HourlyEntry.COLUMN_TIME);
+
+        insertHourly(entries, true);
+        List<String> viaStatement = dumpTable(HourlyEntry.TABLE_NAME,
+                HourlyEntry.COLUMN_LOCATION_ID + ", " + HourlyEntry.COLUMN_TIME);
+
+        assertEquals(ROWS, viaStatement.size());
+        assertEquals(viaDbInsert, viaStatement);
+
+        WeatherInsertStatement statement = WeatherInsertStatement.forHourly(mDb);
+        try {
+            assertOnlyExactRowsFit(statement, entries[0], HourlyEntry.COLUMN_TEMP);
+            assertFalse(statement.canInsert(mRows[0]));
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void assertOnlyExactRowsFit(WeatherInsertStatement statement,
+                                               ContentValues row, String column) {
+        assertTrue(statement.canInsert(row));
+
+        ContentValues extraColumn = new ContentValues(row);
+        extraColumn.put(WeatherEntry.COLUMN_METAR_RAW,
+                "EGLL 181250Z 24012KT 9999 FEW030 14/08 Q1012");
+        assertFalse(statement.canInsert(extraColumn));
+
+        ContentValues missingColumn = new ContentValues(row);
+        missingColumn.remove(column);
+        assertFalse(statement.canInsert(missingColumn));
+    }
+
+    /* Stores the rows the way bulkInsert used to, replacing whatever the table held */
+    static void insertWithDbInsert(SQLiteDatabase db, ContentValues[] rows) {
+        db.beginTransaction();
+        try {
+            db.delete(WeatherEntry.TABLE_NAME, null, null);
+            for (ContentValues row : rows) {
+                db.insert(WeatherEntry.TABLE_NAME, null, row);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /* Stores the rows the way bulkInsert does now, replacing whatever the table held */
+    static void insertWithStatement(SQLiteDatabase db, ContentValues[] rows) {
+        db.beginTransaction();
+        WeatherInsertStatement statement = new WeatherInsertStatement(db);
+        try {
+            db.delete(WeatherEntry.TABLE_NAME, null, null);
+            for (ContentValues row : rows) {
+                statement.insert(row);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            db.endTransaction();
+        }
+    }
+
+    /* Stores 3-hour entries the way replaceHourly does, with or without the compiled statement */
+    private void insertHourly(ContentValues[] entries, boolean compiled) {
+        mDb.beginTransaction();
+        WeatherInsertStatement statement = WeatherInsertStatement.forHourly(mDb);
+        try {
+            mDb.delete(HourlyEntry.TABLE_NAME, null, null);
+            for (ContentValues entry : entries) {
+                if (compiled) {
+                    statement.insert(entry);
+                } else {
+                    mDb.insert(HourlyEntry.TABLE_NAME, null, entry);
+                }
+            }
+            mDb.setTransactionSuccessful();
+        } finally {
+            statement.close();
+            mDb.endTransaction();
+        }
+    }
+
+    private List<String> dumpWeatherTable() {
+        return dumpTable(WeatherEntry.TABLE_NAME,
+                WeatherEntry.COLUMN_LOCATION_ID + ", " + WeatherEntry.COLUMN_DATE);
+    }
+
+    private List<String> dumpTable(String table, String orderBy) {
+        List<String> rows = new ArrayList<String>();
+        Cursor cursor = mDb.query(table, null, null, null, null, null, orderBy);
+        try {
+            while (cursor.moveToNext()) {
+                StringBuilder row = new StringBuilder();
+                for (int i = 0; i < cursor.getColumnCount(); i++) {
+                    if (cursor.getColumnName(i).equals(BaseColumns._ID)) continue;
+                    row.append(cursor.getColumnName(i)).append('=')
+                            .append(cursor.getType(i)).append(':')
+                            .append(cursor.getString(i)).append(' ');
+                }
+                rows.add(row.toString());
+            }
+        } finally {
+            cursor.close();
+        }
+        return rows;
+    }
+
+    static ContentValues[] buildRows(int count) {
+        ContentValues[] rows = new ContentValues[count];
+        long firstDay = 1500000000000L / 86400000L * 86400000L;
+        for (int i = 0; i < count; i++) {
+            ContentValues row = new ContentValues();
+            row.put(WeatherEntry.COLUMN_LOCATION_ID, 1 + i / 7);
+            row.put(WeatherEntry.COLUMN_DATE, firstDay + (i % 7) * 86400000L);
+            row.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+            row.put(WeatherEntry.COLUMN_MIN_TEMP, -3.5 + i % 11);
+            row.put(WeatherEntry.COLUMN_MAX_TEMP, 4.25 + i % 13);
+            row.put(WeatherEntry.COLUMN_HUMIDITY, 40 + i % 50);
+            row.put(WeatherEntry.COLUMN_PRESSURE, 990.5 + i % 40);
+            row.put(WeatherEntry.COLUMN_WIND_SPEED, 0.5 * (i % 20));
+            row.put(WeatherEntry.COLUMN_DEGREES, (i * 37) % 360);
+            rows[i] = row;
+        }
+        return rows;
+    }
+
+    private static ContentValues[] buildHourlyEntries(int count) {
+        ContentValues[] entries = new ContentValues[count];
+        long firstTime = 1500000000000L / 10800000L * 10800000L;
+        for (int i = 0; i < count; i++) {
+            ContentValues entry = new ContentValues();
+            entry.put(HourlyEntry.COLUMN_LOCATION_ID, 1 + i / 40);
+            entry.put(HourlyEntry.COLUMN_TIME, firstTime + (i % 40) * 10800000L);
+            entry.put(HourlyEntry.COLUMN_WEATHER_ID, 800 + i % 5);
+            entry.put(HourlyEntry.COLUMN_TEMP, 0.75 + i % 17);
+            entry.put(HourlyEntry.COLUMN_MIN_TEMP, -3.5 + i % 11);
+            entry.put(HourlyEntry.COLUMN_MAX_TEMP, 4.25 + i % 13);
+            entry.put(HourlyEntry.COLUMN_HUMIDITY, 40 + i % 50);
+            entry.put(HourlyEntry.COLUMN_PRESSURE, 990.5 + i % 40);
+            entry.put(HourlyEntry.COLUMN_WIND_SPEED, 0.5 * (i % 20));
+            entry.put(HourlyEntry.COLUMN_DEGREES, (i * 37) % 360);
+            entries[i] = entry;
+        }
+        return entries;
+    }
+}
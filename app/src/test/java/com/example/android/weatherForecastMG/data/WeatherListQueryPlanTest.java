@@ -0,0 +1,80 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.example.android.weatherForecastMG.MainActivity;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Asks SQLite how it runs the forecast list query, and checks that it reads the rows from
+ * {@link WeatherEntry#INDEX_FORECAST_LIST} alone, already in date order, without looking up the
+ * table rows or sorting them.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherListQueryPlanTest {
+
+    private WeatherDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        RuntimeEnvironment.application.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        RuntimeEnvironment.application.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void listQueryUsesTheCoveringIndex() {
+        String plan = explain(mDbHelper.getReadableDatabase(), buildListQuery());
+
+        assertTrue(plan, plan.contains("COVERING INDEX " + WeatherEntry.INDEX_FORECAST_LIST));
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    /*
+     * Builds the SQL WeatherProvider runs for ForecastLoader's query when the list isn't answered
+     * from its snapshot: ForecastLoader's selection with the location added to it.
+     */
+    private static String buildListQuery() {
+        return SQLiteQueryBuilder.buildQueryString(false,
+                WeatherEntry.TABLE_NAME,
+                MainActivity.MAIN_FORECAST_PROJECTION,
+                "(" + WeatherEntry.SQL_SELECT_TODAY_ONWARDS + ") AND "
+                        + WeatherEntry.COLUMN_LOCATION_ID + " = ?",
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC",
+                null);
+    }
+
+    /* Returns the detail column of every step of the query plan, one per line */
+    private static String explain(SQLiteDatabase db, String sql) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, new String[]{"0", "1"});
+        try {
+            int detailIndex = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detailIndex)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
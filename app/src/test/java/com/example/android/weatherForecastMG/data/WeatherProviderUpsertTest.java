@@ -0,0 +1,134 @@
+package com.example.android.weatherForecastMG.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+import com.example.android.weatherForecastMG.utilities.WeatherForecastDateUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that storing a forecast through {@link WeatherEntry#UPSERT_URI} only writes the days
+ * that changed, and that the days it drops as past are the ones before the local today, which
+ * the rows are keyed by, even where the UTC date is already another one.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherProviderUpsertTest {
+
+    private static final long DAY = WeatherForecastDateUtils.DAY_IN_MILLIS;
+
+    private static final String METAR = "EGLL 181250Z 24012KT 9999 FEW030 14/08 Q1012";
+
+    private TimeZone mDefaultTimeZone;
+    private ContentResolver mResolver;
+    private WeatherDbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        RuntimeEnvironment.application.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+        mDbHelper = new WeatherDbHelper(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        TimeZone.setDefault(mDefaultTimeZone);
+        RuntimeEnvironment.application.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Test
+    public void sameForecastChangesNothing() {
+        long today = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+        ContentValues[] forecast = buildForecast(today, 7);
+
+        assertEquals(7, upsert(forecast));
+        assertEquals(0, upsert(forecast));
+
+        forecast[3].put(WeatherEntry.COLUMN_MAX_TEMP, 30.5);
+        assertEquals(1, upsert(forecast));
+    }
+
+    @Test
+    public void localTodayIsKeptWhereTheUtcDateDiffers() {
+        /*
+         * A zone whose date is not the UTC date right now: a day behind it in the UTC morning,
+         * a day ahead of it in the UTC afternoon
+         */
+        long utcTimeOfDay = System.currentTimeMillis() % DAY;
+        TimeZone.setDefault(TimeZone.getTimeZone(
+                utcTimeOfDay < DAY / 2 ? "Etc/GMT+12" : "Etc/GMT-14"));
+
+        long today = WeatherForecastDateUtils.getNormalizedUtcDateForToday();
+        assertEquals(3, upsert(buildForecast(today - DAY, 3)));
+
+        /* The METAR the sync copies onto today's row, which the forecast doesn't have */
+        ContentValues metar = new ContentValues();
+        metar.put(WeatherEntry.COLUMN_METAR_RAW, METAR);
+        assertEquals(1, mDbHelper.getWritableDatabase().update(WeatherEntry.TABLE_NAME, metar,
+                WeatherEntry.COLUMN_DATE + " = ?", new String[]{Long.toString(today)}));
+
+        /* Yesterday goes; today and tomorrow are the same as before */
+        ContentValues[] forecast = buildForecast(today, 2);
+        assertEquals(1, upsert(forecast));
+        assertEquals(0, upsert(forecast));
+
+        List<Long> dates = new ArrayList<Long>();
+        Cursor cursor = mResolver.query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_DATE, WeatherEntry.COLUMN_METAR_RAW},
+                null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            while (cursor.moveToNext()) {
+                dates.add(cursor.getLong(0));
+                if (cursor.getLong(0) == today) assertEquals(METAR, cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        List<Long> expected = new ArrayList<Long>();
+        expected.add(today);
+        expected.add(today + DAY);
+        assertEquals(expected, dates);
+    }
+
+    private int upsert(ContentValues[] forecast) {
+        return mResolver.bulkInsert(WeatherEntry.UPSERT_URI, forecast);
+    }
+
+    private static ContentValues[] buildForecast(long firstDay, int days) {
+        ContentValues[] forecast = new ContentValues[days];
+        for (int i = 0; i < days; i++) {
+            /* The values follow from the date, so each day is the same in every forecast */
+            long date = firstDay + i * DAY;
+            int n = (int) (date / DAY % 7);
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_DATE, date);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800 + n);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, -3.5 + n);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 4.25 + n);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 40 + n);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 990.5 + n);
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 0.5 * n);
+            day.put(WeatherEntry.COLUMN_DEGREES, (n * 37) % 360);
+            forecast[i] = day;
+        }
+        return forecast;
+    }
+}
@@ -0,0 +1,197 @@
+package com.example.android.weatherForecastMG.sync;
+
+import android.content.Context;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the decisions of {@link AdaptiveSyncPolicy} for each of the signals it decides from,
+ * and replays a week of syncs on a simulated clock: every run recorded in the
+ * {@link SyncScheduleLog} must be decided the same way again from its recorded inputs.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AdaptiveSyncPolicyTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    /* Friday, July 14th 2017, midnight UTC */
+    private static final long FRIDAY = 1499990400000L;
+
+    private static final int ALL_CHANGED = (1 << AdaptiveSyncPolicy.HISTORY_SIZE) - 1;
+
+    private Context mContext;
+
+    /* What the clock the policy uses says */
+    private long mNowMillis;
+
+    private AdaptiveSyncPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mNowMillis = FRIDAY;
+        mPolicy = new AdaptiveSyncPolicy(new AdaptiveSyncPolicy.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return mNowMillis;
+            }
+        });
+    }
+
+    @Test
+    public void inputsAreTakenAtTheClocksTime() {
+        mNowMillis = FRIDAY + 5 * HOUR;
+        assertEquals(FRIDAY + 5 * HOUR, mPolicy.takeInputs(0, 0, false, 0, FRIDAY).now);
+    }
+
+    @Test
+    public void shortHistoryKeepsTheDefault() {
+        assertDecision(AdaptiveSyncPolicy.DEFAULT_INTERVAL_SECONDS, "default",
+                mPolicy.takeInputs(ALL_CHANGED, 3, false, 0, FRIDAY - HOUR));
+    }
+
+    @Test
+    public void forecastThatKeepsChangingIsSyncedMoreOften() {
+        assertDecision(hours(2), "default,volatile",
+                mPolicy.takeInputs(ALL_CHANGED, AdaptiveSyncPolicy.HISTORY_SIZE, false, 0,
+                        FRIDAY - HOUR));
+        /* Three changes in the last four syncs; older bits don't count */
+        assertDecision(hours(2), "default,volatile",
+                mPolicy.takeInputs(0xF0 | 0x7, 4, false, 0, FRIDAY - HOUR));
+    }
+
+    @Test
+    public void forecastThatHardlyChangesIsSyncedLessOften() {
+        assertDecision(hours(6), "default,stable",
+                mPolicy.takeInputs(0x1, AdaptiveSyncPolicy.HISTORY_SIZE, false, 0,
+                        FRIDAY - HOUR));
+    }
+
+    @Test
+    public void idleAppIsSyncedRarely() {
+        assertDecision(hours(12), "default,volatile,idle",
+                mPolicy.takeInputs(ALL_CHANGED, AdaptiveSyncPolicy.HISTORY_SIZE, false, 0,
+                        FRIDAY - 4 * DAY));
+        assertDecision(hours(12), "default,idle",
+                mPolicy.takeInputs(0, 0, true, FRIDAY - 20 * MINUTE, 0));
+        /* Opened "in the future": the clock was changed, so the app counts as active */
+        assertDecision(AdaptiveSyncPolicy.DEFAULT_INTERVAL_SECONDS, "default",
+                mPolicy.takeInputs(0, 0, false, 0, FRIDAY + DAY));
+    }
+
+    @Test
+    public void appOpenedWithinADayIsInUse() {
+        assertTrue(mPolicy.isAppInUse(FRIDAY - 23 * HOUR));
+        assertFalse(mPolicy.isAppInUse(FRIDAY - DAY));
+        assertFalse(mPolicy.isAppInUse(0));
+        /* As in the decision, an opening "in the future" counts as in use */
+        assertTrue(mPolicy.isAppInUse(FRIDAY + HOUR));
+    }
+
+    @Test
+    public void activeAppIsSyncedForTheNextMetar() {
+        /* Observed 20 minutes ago: the next is due 60 minutes after it, plus 10 to arrive */
+        assertDecision(TimeUnit.MINUTES.toSeconds(50), "default,metar",
+                mPolicy.takeInputs(0, 0, true, FRIDAY - 20 * MINUTE, FRIDAY - HOUR));
+        /* Observed 75 minutes ago: that one was due 5 minutes ago, so the one after it */
+        assertDecision(TimeUnit.MINUTES.toSeconds(55), "default,metar",
+                mPolicy.takeInputs(0, 0, true, FRIDAY - 75 * MINUTE, FRIDAY - HOUR));
+        /* Due in a minute, but we don't sync more often than every 30 minutes */
+        assertDecision(TimeUnit.MINUTES.toSeconds(30), "default,metar",
+                mPolicy.takeInputs(0, 0, true, FRIDAY - 69 * MINUTE, FRIDAY - HOUR));
+        /* Not while the app is only somewhat recent */
+        assertDecision(AdaptiveSyncPolicy.DEFAULT_INTERVAL_SECONDS, "default",
+                mPolicy.takeInputs(0, 0, true, FRIDAY - 20 * MINUTE, FRIDAY - 2 * DAY));
+    }
+
+    @Test
+    public void recordedRunsReplayToTheSameDecisions() throws Exception {
+        long lastAppOpened = FRIDAY;
+        int history = 0;
+        int samples = 0;
+
+        /* A week of syncs. The app is opened every morning for four days, then not anymore. */
+        long end = FRIDAY + 7 * DAY;
+        List<String> runs = new ArrayList<String>();
+        while (mNowMillis < end) {
+            long morning = FRIDAY + (mNowMillis - FRIDAY) / DAY * DAY + 8 * HOUR;
+            if (mNowMillis >= morning && morning < FRIDAY + 4 * DAY) lastAppOpened = morning;
+
+            /* A METAR is observed at 50 past every hour */
+            long lastMetar = (mNowMillis - 50 * MINUTE) / HOUR * HOUR + 50 * MINUTE;
+
+            AdaptiveSyncPolicy.Inputs inputs =
+                    mPolicy.takeInputs(history, samples, true, lastMetar, lastAppOpened);
+            AdaptiveSyncPolicy.Decision decision = mPolicy.decide(inputs);
+            SyncScheduleLog.record(mContext, inputs, decision);
+            runs.add(inputs.toRecord() + SyncScheduleLog.SEPARATOR + decision.toRecord());
+
+            /* The forecast changes in every sync for the first two days, then rarely */
+            boolean changed = mNowMillis < FRIDAY + 2 * DAY || runs.size() % 5 == 0;
+            history = ((history << 1) | (changed ? 1 : 0)) & ALL_CHANGED;
+            samples = Math.min(samples + 1, AdaptiveSyncPolicy.HISTORY_SIZE);
+
+            mNowMillis += TimeUnit.SECONDS.toMillis(decision.intervalSeconds);
+        }
+
+        /* The log keeps the most recent runs */
+        List<String> records = SyncScheduleLog.read(mContext);
+        assertTrue(records.size() > 0);
+        assertEquals(runs.subList(runs.size() - records.size(), runs.size()), records);
+
+        long previousNow = 0;
+        boolean sawMetar = false;
+        boolean sawStable = false;
+        boolean sawIdle = false;
+        for (String record : records) {
+            int separator = record.indexOf(SyncScheduleLog.SEPARATOR);
+            AdaptiveSyncPolicy.Inputs inputs =
+                    AdaptiveSyncPolicy.Inputs.fromRecord(record.substring(0, separator));
+            String decided = record.substring(separator + SyncScheduleLog.SEPARATOR.length());
+
+            /* Decided again by a policy whose clock has moved on, as the inputs hold the time */
+            assertEquals(record, decided, mPolicy.decide(inputs).toRecord());
+            assertEquals(record, inputs.toRecord(), record.substring(0, separator));
+
+            assertTrue(record, inputs.now > previousNow);
+            previousNow = inputs.now;
+            sawMetar |= decided.contains("metar");
+            sawStable |= decided.contains("stable");
+            sawIdle |= decided.contains("idle");
+        }
+        assertTrue(sawMetar);
+        assertTrue(sawStable);
+        assertTrue(sawIdle);
+    }
+
+    private void assertDecision(long intervalSeconds, String reason,
+                                AdaptiveSyncPolicy.Inputs inputs) {
+        AdaptiveSyncPolicy.Decision decision = mPolicy.decide(inputs);
+        assertEquals(inputs.toRecord(), reason, decision.reason);
+        assertEquals(inputs.toRecord(), intervalSeconds, decision.intervalSeconds);
+        assertEquals(intervalSeconds / 3, decision.flexSeconds);
+
+        /* The same inputs read back from a record are decided the same way */
+        AdaptiveSyncPolicy.Decision replayed =
+                mPolicy.decide(AdaptiveSyncPolicy.Inputs.fromRecord(inputs.toRecord()));
+        assertEquals(decision.toRecord(), replayed.toRecord());
+    }
+
+    private static long hours(int hours) {
+        return TimeUnit.HOURS.toSeconds(hours);
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.android.weatherForecastMG.sync;
+
+import com.example.android.weatherForecastMG.utilities.NetworkUtils;
+import com.example.android.weatherForecastMG.utilities.ResponseBody;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that cancelling a sync stops its requests: one already reading a response, one not
+ * started yet, and one cancelled while its connection is still being set up.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SyncCancellationTest {
+
+    /* A body the stub server takes about a minute to send */
+    private static final int BODY_BYTES = 64 * 1024;
+    private static final long BYTES_PER_SECOND = 1024;
+
+    /* How soon a cancelled request has to give up */
+    private static final long STOP_MILLIS = 2000;
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void cancelStopsAFetchReadingTheResponse() throws Exception {
+        /*
+         * Without keep-alive, as the JVM's HttpURLConnection would otherwise try to drain the
+         * rest of the response to reuse the connection, which Android's doesn't do
+         */
+        mServer.enqueue(new MockResponse()
+                .setHeader("Connection", "close")
+                .setBody(new String(new char[BODY_BYTES]).replace('\0', 'x'))
+                .throttleBody(BYTES_PER_SECOND, 1, TimeUnit.SECONDS));
+
+        SyncCancellation cancellation = new SyncCancellation();
+        Future<ResponseBody> fetch = WeatherForecastSyncTask.startFetch(new SyncTimings(),
+                cancellation, NetworkUtils.ENDPOINT_FORECAST, mServer.url("/forecast").url(),
+                NetworkUtils.NO_HEADERS, null);
+
+        /* Let the request get under way before cancelling it */
+        assertNotNull(mServer.takeRequest(STOP_MILLIS, TimeUnit.MILLISECONDS));
+        Thread.sleep(200);
+
+        long begin = System.nanoTime();
+        cancellation.cancel();
+        ResponseBody response = WeatherForecastSyncTask.awaitFetch(fetch, cancellation);
+        long stopMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        assertNull(response);
+        assertTrue("Request took " + stopMillis + "ms to stop", stopMillis < STOP_MILLIS);
+    }
+
+    @Test
+    public void fetchStartedAfterCancelIsNotMade() {
+        SyncCancellation cancellation = new SyncCancellation();
+        cancellation.cancel();
+
+        Future<ResponseBody> fetch = WeatherForecastSyncTask.startFetch(new SyncTimings(),
+                cancellation, NetworkUtils.ENDPOINT_FORECAST, mServer.url("/forecast").url(),
+                NetworkUtils.NO_HEADERS, null);
+
+        assertNull(WeatherForecastSyncTask.awaitFetch(fetch, cancellation));
+        assertEquals(0, mServer.getRequestCount());
+    }
+
+    @Test
+    public void cancelRightAfterRegisteringStopsTheRequest() throws Exception {
+        /* The cancel lands after the connection is registered, before it connects */
+        assertRequestNotMade(new CancelAfterChecks(0));
+    }
+
+    @Test
+    public void cancelWhileConnectingStopsTheRequest() throws Exception {
+        /* The cancel lands while the connection is connecting */
+        assertRequestNotMade(new CancelAfterChecks(1));
+    }
+
+    private void assertRequestNotMade(CancelAfterChecks tracker) throws Exception {
+        mServer.enqueue(new MockResponse().setBody("forecast"));
+
+        try {
+            NetworkUtils.fetch(NetworkUtils.ENDPOINT_FORECAST, mServer.url("/forecast").url(),
+                    NetworkUtils.NO_HEADERS, null, tracker);
+            fail("The request was made although it had been cancelled");
+        } catch (InterruptedIOException expected) {
+        }
+
+        assertEquals(0, mServer.getRequestCount());
+        assertTrue(tracker.closed);
+    }
+
+    /*
+     * A tracker that lets the connection be registered, then reports the request cancelled
+     * once it has been asked a given number of times.
+     */
+    private static final class CancelAfterChecks implements NetworkUtils.ConnectionTracker {
+
+        private int mChecksLeft;
+
+        volatile boolean closed;
+
+        CancelAfterChecks(int checks) {
+            mChecksLeft = checks;
+        }
+
+        @Override
+        public boolean onConnectionOpened(HttpURLConnection connection) {
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return mChecksLeft-- <= 0;
+        }
+
+        @Override
+        public void onConnectionClosed(HttpURLConnection connection) {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.android.weatherForecastMG.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+
+import com.example.android.weatherForecastMG.R;
+import com.example.android.weatherForecastMG.data.WeatherContract;
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+import com.example.android.weatherForecastMG.data.WeatherProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that requests made while a sync runs attach to it instead of syncing again, that one
+ * for another location has the sync run once more, that a request whose sync was cancelled by
+ * the request that started it syncs itself, and that a fresh forecast isn't synced at all.
+ * The syncs are counted by a stand-in for the sync task, which waits until a test lets it end.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class SyncCoordinatorTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    /* Long enough for a request that is going to attach to have done so */
+    private static final long ATTACH_MILLIS = 300;
+
+    private Context mContext;
+    private ExecutorService mRequests;
+    private BlockingSyncRunner mSyncRunner;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        WeatherForecastPreferences.resetSnapshot();
+        setPreferredLocation("Zurich,CH");
+
+        mRequests = Executors.newCachedThreadPool();
+        mSyncRunner = new BlockingSyncRunner();
+        SyncCoordinator.setSyncRunner(mSyncRunner);
+    }
+
+    @After
+    public void tearDown() {
+        mSyncRunner.finishAll();
+        mRequests.shutdownNow();
+        SyncCoordinator.setSyncRunner(SyncCoordinator.SYNC_TASK);
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @Test
+    public void requestsDuringASyncAttachToIt() throws Exception {
+        Future<Boolean> owner = request(new SyncCancellation());
+        mSyncRunner.awaitStarted(1);
+
+        List<Future<Boolean>> attached = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            attached.add(request(new SyncCancellation()));
+        }
+        Thread.sleep(ATTACH_MILLIS);
+        for (Future<Boolean> request : attached) {
+            assertFalse(request.isDone());
+        }
+
+        mSyncRunner.finishNext();
+        assertTrue(owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (Future<Boolean> request : attached) {
+            assertTrue(request.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertEquals(Collections.singletonList("Zurich,CH"), mSyncRunner.locations);
+    }
+
+    @Test
+    public void requestForAnotherLocationRunsTheSyncAgain() throws Exception {
+        Future<Boolean> owner = request(new SyncCancellation());
+        mSyncRunner.awaitStarted(1);
+
+        /* The location is changed after the sync has read it */
+        setPreferredLocation("Geneva,CH");
+        Future<Boolean> attached = request(new SyncCancellation());
+        Thread.sleep(ATTACH_MILLIS);
+
+        mSyncRunner.finishNext();
+        mSyncRunner.awaitStarted(2);
+        assertFalse(owner.isDone());
+        assertFalse(attached.isDone());
+
+        mSyncRunner.finishNext();
+        assertTrue(owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(attached.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, mSyncRunner.locations.size());
+        assertEquals("Geneva,CH", mSyncRunner.locations.get(1));
+    }
+
+    @Test
+    public void attachedRequestSyncsItselfAfterACancel() throws Exception {
+        SyncCancellation ownerCancellation = new SyncCancellation();
+        Future<Boolean> owner = request(ownerCancellation);
+        mSyncRunner.awaitStarted(1);
+
+        Future<Boolean> attached = request(new SyncCancellation());
+        Thread.sleep(ATTACH_MILLIS);
+
+        /* The sync task gives up once the request that started it is cancelled */
+        ownerCancellation.cancel();
+        mSyncRunner.finishNext();
+        assertFalse(owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        mSyncRunner.awaitStarted(2);
+        assertFalse(attached.isDone());
+        mSyncRunner.finishNext();
+        assertTrue(attached.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelledAttachedRequestStopsWaiting() throws Exception {
+        Future<Boolean> owner = request(new SyncCancellation());
+        mSyncRunner.awaitStarted(1);
+
+        SyncCancellation attachedCancellation = new SyncCancellation();
+        Future<Boolean> attached = request(attachedCancellation);
+        Thread.sleep(ATTACH_MILLIS);
+
+        attachedCancellation.cancel();
+        assertFalse(attached.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(owner.isDone());
+
+        mSyncRunner.finishNext();
+        assertTrue(owner.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, mSyncRunner.locations.size());
+    }
+
+    @Test
+    public void freshForecastIsNotSynced() throws Exception {
+        Robolectric.buildContentProvider(WeatherProvider.class)
+                .create(WeatherContract.CONTENT_AUTHORITY);
+        ContentResolver resolver = mContext.getContentResolver();
+        ContentValues location = new ContentValues();
+        location.put(WeatherContract.LocationEntry.COLUMN_QUERY, "Zurich,CH");
+        Uri locationUri = resolver.insert(WeatherContract.LocationEntry.CONTENT_URI, location);
+
+        ContentValues synced = new ContentValues();
+        synced.put(WeatherContract.LocationEntry.COLUMN_FORECAST_SYNCED,
+                System.currentTimeMillis() - SyncCoordinator.FRESHNESS_WINDOW_MILLIS / 2);
+        assertEquals(1, resolver.update(locationUri, synced, null, null));
+
+        assertTrue(request(new SyncCancellation()).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(mSyncRunner.locations.isEmpty());
+
+        /* A location that wasn't synced lately is synced */
+        setPreferredLocation("Geneva,CH");
+        Future<Boolean> stale = request(new SyncCancellation());
+        mSyncRunner.awaitStarted(1);
+        mSyncRunner.finishNext();
+        assertTrue(stale.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private Future<Boolean> request(final SyncCancellation cancellation) {
+        return mRequests.submit(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return SyncCoordinator.sync(mContext, cancellation);
+            }
+        });
+    }
+
+    private void setPreferredLocation(String location) {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_location_key), location)
+                .commit();
+    }
+
+    /*
+     * Stands in for the sync task: notes the preferred location each sync starts with, then
+     * waits to be let through, and completes unless its request was cancelled meanwhile.
+     */
+    private static final class BlockingSyncRunner implements SyncCoordinator.SyncRunner {
+
+        final List<String> locations = Collections.synchronizedList(new ArrayList<String>());
+
+        private final Semaphore mStarted = new Semaphore(0);
+        private final Semaphore mFinish = new Semaphore(0);
+        private final CountDownLatch mFinishAll = new CountDownLatch(1);
+
+        /* How many syncs awaitStarted has seen start */
+        private int mSeenStarted;
+
+        @Override
+        public boolean syncWeather(Context context, SyncCancellation cancellation) {
+            locations.add(WeatherForecastPreferences.getPreferredWeatherLocation(context));
+            mStarted.release();
+            try {
+                while (!mFinish.tryAcquire(10, TimeUnit.MILLISECONDS)) {
+                    if (mFinishAll.getCount() == 0) break;
+                }
+            } catch (InterruptedException e) {
+                return false;
+            }
+            return !cancellation.isCancelled();
+        }
+
+        /* Waits until the given number of syncs have started in all */
+        void awaitStarted(int syncs) throws InterruptedException {
+            assertTrue("Sync " + syncs + " didn't start",
+                    mStarted.tryAcquire(syncs - mSeenStarted, TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            mSeenStarted = syncs;
+        }
+
+        void finishNext() {
+            mFinish.release();
+        }
+
+        void finishAll() {
+            mFinishAll.countDown();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.weatherForecastMG.sync;
+
+import com.example.android.weatherForecastMG.utilities.NetworkUtils;
+import com.example.android.weatherForecastMG.utilities.ResponseBody;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the forecast, METAR and TAF requests of a sync are in flight at the same time, so
+ * the fetch stage takes about as long as the slowest of them rather than all of them in a row.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherForecastSyncTaskFetchTest {
+
+    /* How long the stub server takes to answer each request */
+    private static final long RESPONSE_DELAY_MILLIS = 500;
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void fetchesRunConcurrently() throws Exception {
+        for (String body : new String[]{"forecast", "metar", "taf"}) {
+            mServer.enqueue(new MockResponse()
+                    .setBody(body)
+                    .setHeadersDelay(RESPONSE_DELAY_MILLIS, TimeUnit.MILLISECONDS));
+        }
+
+        SyncTimings timings = new SyncTimings();
+        SyncCancellation cancellation = new SyncCancellation();
+
+        long begin = System.nanoTime();
+        Future<ResponseBody> forecast = WeatherForecastSyncTask.startFetch(timings, cancellation,
+                NetworkUtils.ENDPOINT_FORECAST, mServer.url("/forecast").url(),
+                NetworkUtils.NO_HEADERS, null);
+        Future<ResponseBody> metar = WeatherForecastSyncTask.startFetch(timings, cancellation,
+                NetworkUtils.ENDPOINT_METAR, mServer.url("/metar").url(),
+                NetworkUtils.CHECKWX_HEADERS, null);
+        Future<ResponseBody> taf = WeatherForecastSyncTask.startFetch(timings, cancellation,
+                NetworkUtils.ENDPOINT_TAF, mServer.url("/taf").url(),
+                NetworkUtils.CHECKWX_HEADERS, null);
+
+        ResponseBody[] responses = {
+                WeatherForecastSyncTask.awaitFetch(forecast, cancellation),
+                WeatherForecastSyncTask.awaitFetch(metar, cancellation),
+                WeatherForecastSyncTask.awaitFetch(taf, cancellation)
+        };
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+
+        try {
+            assertEquals(3, mServer.getRequestCount());
+            assertTrue("Requests ran one after another: " + elapsedMillis + "ms",
+                    elapsedMillis < 2 * RESPONSE_DELAY_MILLIS);
+
+            String stages = timings.toString();
+            assertTrue(stages, stages.contains("fetch:" + NetworkUtils.ENDPOINT_FORECAST + "="));
+            assertTrue(stages, stages.contains("fetch:" + NetworkUtils.ENDPOINT_METAR + "="));
+            assertTrue(stages, stages.contains("fetch:" + NetworkUtils.ENDPOINT_TAF + "="));
+        } finally {
+            for (ResponseBody response : responses) {
+                if (response != null) response.release();
+            }
+        }
+    }
+
+    @Test
+    public void noUrlMeansNoRequest() {
+        SyncCancellation cancellation = new SyncCancellation();
+        Future<ResponseBody> fetch = WeatherForecastSyncTask.startFetch(new SyncTimings(),
+                cancellation, NetworkUtils.ENDPOINT_METAR, null, NetworkUtils.CHECKWX_HEADERS,
+                null);
+
+        assertNull(fetch);
+        assertNull(WeatherForecastSyncTask.awaitFetch(fetch, cancellation));
+        assertEquals(0, mServer.getRequestCount());
+    }
+}
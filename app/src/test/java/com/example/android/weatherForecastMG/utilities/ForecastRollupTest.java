@@ -0,0 +1,196 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.ContentValues;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.HourlyEntry;
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks how {@link ForecastRollup} rolls 3-hour entries up into days: which weather ID a day
+ * gets, how its wind direction is averaged, where one day ends and the next begins in the local
+ * time zone, and what the partly covered first and last days of a forecast get.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ForecastRollupTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = WeatherForecastDateUtils.DAY_IN_MILLIS;
+
+    /* Friday, March 10th 2017, midnight UTC. In New York, DST began on Sunday the 12th. */
+    private static final long FRIDAY = 1489104000000L;
+
+    private static final double DELTA = 1e-9;
+
+    private TimeZone mDefaultTimeZone;
+
+    @Before
+    public void setUp() {
+        mDefaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(mDefaultTimeZone);
+    }
+
+    @Test
+    public void mostFrequentWeatherIdWinsAndTheEarliestOnATie() {
+        ContentValues[] days = rollUp(
+                /* Friday: rain and clear twice each; rain came first */
+                entry(FRIDAY, 500), entry(FRIDAY + 3 * HOUR, 800),
+                entry(FRIDAY + 6 * HOUR, 800), entry(FRIDAY + 9 * HOUR, 500),
+                /* Saturday: clouds once, then clear twice */
+                entry(FRIDAY + DAY, 803), entry(FRIDAY + DAY + 3 * HOUR, 800),
+                entry(FRIDAY + DAY + 6 * HOUR, 800),
+                /* Sunday: three different IDs once each */
+                entry(FRIDAY + 2 * DAY, 601), entry(FRIDAY + 2 * DAY + 3 * HOUR, 500),
+                entry(FRIDAY + 2 * DAY + 6 * HOUR, 800));
+
+        assertEquals(3, days.length);
+        assertEquals(500, (int) days[0].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals(800, (int) days[1].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals(601, (int) days[2].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+    }
+
+    @Test
+    public void windDirectionIsTheSpeedWeightedVectorMean() {
+        ContentValues[] days = rollUp(
+                /* Friday: as strong from the north-west as from the north-east */
+                wind(entry(FRIDAY, 800), 4, 315), wind(entry(FRIDAY + 3 * HOUR, 800), 4, 45),
+                /* Saturday: a breeze from the west, a gale from the north */
+                wind(entry(FRIDAY + DAY, 800), 1, 270),
+                wind(entry(FRIDAY + DAY + 3 * HOUR, 800), 3, 0),
+                /* Sunday: no wind at all */
+                wind(entry(FRIDAY + 2 * DAY, 800), 0, 90),
+                wind(entry(FRIDAY + 2 * DAY + 3 * HOUR, 800), 0, 180));
+
+        /* North, not the south that the mean of the degrees would be */
+        assertDirection(0, days[0]);
+        assertEquals(4, days[0].getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), DELTA);
+
+        /* Three times as much north as west in it */
+        assertDirection(360 - Math.toDegrees(Math.atan2(1, 3)), days[1]);
+        assertEquals(2, days[1].getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), DELTA);
+
+        assertEquals(0, days[2].getAsDouble(WeatherEntry.COLUMN_DEGREES), 0);
+        assertEquals(0, days[2].getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), 0);
+    }
+
+    @Test
+    public void daysEndAtLocalMidnightAcrossDst() {
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+
+        /*
+         * Every 3 hours UTC from Friday midnight to Tuesday midnight UTC, the temperature being
+         * the number of the entry, so a day's low and high are its first and last entry
+         */
+        ContentValues[] entries = new ContentValues[33];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = temperature(entry(FRIDAY + i * 3 * HOUR, 800), i);
+        }
+        ContentValues[] days = ForecastRollup.getDailyContentValues(entries);
+
+        /*
+         * Local midnight is at 05:00 UTC until DST begins at 07:00 UTC on Sunday, and at
+         * 04:00 UTC from then on. So Sunday has 23 hours, and Monday's 03:00 UTC entry is still
+         * Sunday evening.
+         */
+        assertEquals(5, days.length);
+        assertDay(FRIDAY - DAY, 0, 1, days[0]);
+        assertDay(FRIDAY, 2, 9, days[1]);
+        assertDay(FRIDAY + DAY, 10, 17, days[2]);
+        assertDay(FRIDAY + 2 * DAY, 18, 25, days[3]);
+        assertDay(FRIDAY + 3 * DAY, 26, 32, days[4]);
+    }
+
+    @Test
+    public void partlyCoveredDaysOnlyAverageTheirOwnEntries() {
+        ContentValues[] entries = new ContentValues[10];
+        for (int i = 0; i < entries.length; i++) {
+            /* From Friday 21:00 to Sunday 00:00 */
+            ContentValues entry = temperature(entry(FRIDAY + (7 + i) * 3 * HOUR, 800), i);
+            entry.put(HourlyEntry.COLUMN_HUMIDITY, 40 + i);
+            entry.put(HourlyEntry.COLUMN_PRESSURE, 1000.5 + i);
+            entries[i] = wind(entry, i, 90);
+        }
+        ContentValues[] days = ForecastRollup.getDailyContentValues(entries);
+
+        assertEquals(3, days.length);
+
+        /* Friday has only its last entry */
+        assertDay(FRIDAY, 0, 0, days[0]);
+        assertEquals(40, (int) days[0].getAsInteger(WeatherEntry.COLUMN_HUMIDITY));
+        assertEquals(1000.5, days[0].getAsDouble(WeatherEntry.COLUMN_PRESSURE), DELTA);
+        assertEquals(0, days[0].getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), DELTA);
+
+        /* Saturday is covered in full, by entries 1 to 8 */
+        assertDay(FRIDAY + DAY, 1, 8, days[1]);
+        assertEquals(45, (int) days[1].getAsInteger(WeatherEntry.COLUMN_HUMIDITY));
+        assertEquals(1005, days[1].getAsDouble(WeatherEntry.COLUMN_PRESSURE), DELTA);
+        assertEquals(4.5, days[1].getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), DELTA);
+
+        /* Sunday has only its first entry */
+        assertDay(FRIDAY + 2 * DAY, 9, 9, days[2]);
+        assertEquals(49, (int) days[2].getAsInteger(WeatherEntry.COLUMN_HUMIDITY));
+        assertEquals(1009.5, days[2].getAsDouble(WeatherEntry.COLUMN_PRESSURE), DELTA);
+        assertEquals(9, days[2].getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), DELTA);
+        assertDirection(90, days[2]);
+    }
+
+    private static ContentValues[] rollUp(ContentValues... entries) {
+        return ForecastRollup.getDailyContentValues(entries);
+    }
+
+    /* Asserts the date of a day, and the numbers of its first and last entry */
+    private static void assertDay(long date, int first, int last, ContentValues day) {
+        assertEquals(date, (long) day.getAsLong(WeatherEntry.COLUMN_DATE));
+        assertEquals(first, day.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP), 0);
+        assertEquals(last, day.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP), 0);
+    }
+
+    /* Compares directions by how far apart they are, so that 359.99... counts as 0 */
+    private static void assertDirection(double expected, ContentValues day) {
+        double actual = day.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+        double apart = Math.abs(expected - actual) % 360;
+        assertEquals("Direction " + actual, 0, Math.min(apart, 360 - apart), 1e-6);
+    }
+
+    private static ContentValues entry(long time, int weatherId) {
+        ContentValues entry = new ContentValues();
+        entry.put(HourlyEntry.COLUMN_TIME, time);
+        entry.put(HourlyEntry.COLUMN_WEATHER_ID, weatherId);
+        entry.put(HourlyEntry.COLUMN_TEMP, 10.0);
+        entry.put(HourlyEntry.COLUMN_MIN_TEMP, 9.0);
+        entry.put(HourlyEntry.COLUMN_MAX_TEMP, 11.0);
+        entry.put(HourlyEntry.COLUMN_HUMIDITY, 50);
+        entry.put(HourlyEntry.COLUMN_PRESSURE, 1013.25);
+        entry.put(HourlyEntry.COLUMN_WIND_SPEED, 2.0);
+        entry.put(HourlyEntry.COLUMN_DEGREES, 180.0);
+        return entry;
+    }
+
+    private static ContentValues temperature(ContentValues entry, double temperature) {
+        entry.put(HourlyEntry.COLUMN_TEMP, temperature);
+        entry.put(HourlyEntry.COLUMN_MIN_TEMP, temperature);
+        entry.put(HourlyEntry.COLUMN_MAX_TEMP, temperature);
+        return entry;
+    }
+
+    private static ContentValues wind(ContentValues entry, double speed, double degrees) {
+        entry.put(HourlyEntry.COLUMN_WIND_SPEED, speed);
+        entry.put(HourlyEntry.COLUMN_DEGREES, degrees);
+        return entry;
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.example.android.weatherForecastMG.data.WeatherContract.WeatherEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks how the current weather of many cities is fetched with one group request per
+ * {@link NetworkUtils#GROUP_MAX_IDS} cities, and how each city's weather is found again in the
+ * group response.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class GroupWeatherTest {
+
+    /* London, Paris and Berlin, the first with calm wind, the second with no wind at all */
+    private static final String GROUP_JSON = "{\"cnt\":3,\"list\":["
+            + "{\"id\":2643743,\"weather\":[{\"id\":801}],"
+            + "\"main\":{\"humidity\":81,\"pressure\":1012.5},\"wind\":{\"speed\":0}},"
+            + "{\"id\":2988507,\"weather\":[{\"id\":500}],"
+            + "\"main\":{\"humidity\":93,\"pressure\":1008}},"
+            + "{\"id\":2950159,\"weather\":[{\"id\":800}],"
+            + "\"main\":{\"humidity\":40,\"pressure\":1021},\"wind\":{\"speed\":4.6,\"deg\":250}}"
+            + "]}";
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws Exception {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    @Test
+    public void longListsAreSplitIntoGroupsOfMaxIds() {
+        long[] cityIds = new long[2 * NetworkUtils.GROUP_MAX_IDS + 5];
+        for (int i = 0; i < cityIds.length; i++) {
+            cityIds[i] = 1000 + i;
+        }
+
+        List<URL> groupUrls = NetworkUtils.getGroupUrls(cityIds);
+
+        assertEquals(3, groupUrls.size());
+        List<Long> requested = new ArrayList<Long>();
+        int[] expectedSizes = {NetworkUtils.GROUP_MAX_IDS, NetworkUtils.GROUP_MAX_IDS, 5};
+        for (int i = 0; i < groupUrls.size(); i++) {
+            Uri groupUri = Uri.parse(groupUrls.get(i).toString());
+            assertEquals("metric", groupUri.getQueryParameter("units"));
+            String[] ids = groupUri.getQueryParameter("id").split(",");
+            assertEquals(expectedSizes[i], ids.length);
+            for (String id : ids) {
+                requested.add(Long.parseLong(id));
+            }
+        }
+
+        /* Every city is asked for exactly once, in order */
+        assertEquals(cityIds.length, requested.size());
+        for (int i = 0; i < cityIds.length; i++) {
+            assertEquals(cityIds[i], (long) requested.get(i));
+        }
+    }
+
+    @Test
+    public void exactlyMaxIdsFitInOneGroup() {
+        assertEquals(1, NetworkUtils.getGroupUrls(new long[NetworkUtils.GROUP_MAX_IDS]).size());
+        assertEquals(2, NetworkUtils.getGroupUrls(new long[NetworkUtils.GROUP_MAX_IDS + 1]).size());
+    }
+
+    @Test
+    public void noCitiesMeansNoRequests() {
+        assertTrue(NetworkUtils.getGroupUrls(new long[0]).isEmpty());
+    }
+
+    @Test
+    public void weatherIsMatchedBackByCityId() throws Exception {
+        Map<Long, ContentValues> weather =
+                OpenWeatherJsonUtils.getCurrentWeatherFromGroupJson(GROUP_JSON);
+
+        assertEquals(3, weather.size());
+
+        ContentValues berlin = weather.get(2950159L);
+        assertEquals(800, (int) berlin.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals(40, (int) berlin.getAsInteger(WeatherEntry.COLUMN_HUMIDITY));
+        assertEquals(1021, berlin.getAsDouble(WeatherEntry.COLUMN_PRESSURE), 0);
+        assertEquals(4.6, berlin.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), 0);
+        assertEquals(250, berlin.getAsDouble(WeatherEntry.COLUMN_DEGREES), 0);
+
+        ContentValues london = weather.get(2643743L);
+        assertEquals(801, (int) london.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals(1012.5, london.getAsDouble(WeatherEntry.COLUMN_PRESSURE), 0);
+    }
+
+    @Test
+    public void missingWindLeavesWindColumnsOut() throws Exception {
+        Map<Long, ContentValues> weather =
+                OpenWeatherJsonUtils.getCurrentWeatherFromGroupJson(GROUP_JSON);
+
+        /* Calm: a speed but no direction */
+        ContentValues london = weather.get(2643743L);
+        assertEquals(0, london.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED), 0);
+        assertFalse(london.containsKey(WeatherEntry.COLUMN_DEGREES));
+
+        /* No wind object at all */
+        ContentValues paris = weather.get(2988507L);
+        assertEquals(93, (int) paris.getAsInteger(WeatherEntry.COLUMN_HUMIDITY));
+        assertFalse(paris.containsKey(WeatherEntry.COLUMN_WIND_SPEED));
+        assertFalse(paris.containsKey(WeatherEntry.COLUMN_DEGREES));
+    }
+
+    @Test
+    public void errorResponseHoldsNoWeather() throws Exception {
+        assertTrue(OpenWeatherJsonUtils.getCurrentWeatherFromGroupJson(
+                "{\"cod\":401,\"message\":\"Invalid API key\"}").isEmpty());
+        assertTrue(OpenWeatherJsonUtils.getCurrentWeatherFromGroupJson("{\"cnt\":0}").isEmpty());
+    }
+
+    @Test
+    public void groupResponseIsFetchedAndParsed() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(GROUP_JSON));
+
+        /* The group URL, pointed at the stub server instead of OpenWeatherMap */
+        URL groupUrl = NetworkUtils.getGroupUrls(new long[]{2643743L, 2988507L, 2950159L}).get(0);
+        URL stubUrl = mServer.url(groupUrl.getFile()).url();
+
+        ResponseBody body = NetworkUtils.fetch(NetworkUtils.ENDPOINT_GROUP, stubUrl,
+                NetworkUtils.NO_HEADERS);
+        Map<Long, ContentValues> weather;
+        try {
+            weather = OpenWeatherJsonUtils.getCurrentWeatherFromGroupJson(body.string());
+        } finally {
+            body.release();
+        }
+
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals("2643743,2988507,2950159",
+                request.getRequestUrl().queryParameter("id"));
+        assertEquals(3, weather.size());
+        assertTrue(weather.containsKey(2643743L));
+        assertTrue(weather.containsKey(2988507L));
+        assertTrue(weather.containsKey(2950159L));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.Context;
+
+import com.example.android.weatherForecastMG.Benchmarks;
+import com.example.android.weatherForecastMG.R;
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Times formatting a temperature with {@link TemplateFormatter} against String.format. See
+ * {@link Benchmarks}; that both write the same is checked by {@link TemplateFormatterTest}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TemplateFormatterBenchmark {
+
+    private static final int FORMATS_PER_ROUND = 100000;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @After
+    public void tearDown() {
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @Test
+    public void compareWithStringFormat() throws IOException {
+        final String format = mContext.getString(R.string.format_temperature);
+        final double[] temperatures = new double[FORMATS_PER_ROUND];
+        Random random = new Random(20);
+        for (int i = 0; i < temperatures.length; i++) {
+            temperatures[i] = (random.nextDouble() - 0.5) * 80;
+        }
+
+        Benchmarks.compare("Formatting a temperature", FORMATS_PER_ROUND, WARMUP_ROUNDS,
+                MEASURED_ROUNDS, "String.format", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        return formatWithStringFormat(format, temperatures);
+                    }
+                },
+                "TemplateFormatter", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        return formatWithTemplate(temperatures);
+                    }
+                });
+    }
+
+    private static int formatWithStringFormat(String format, double[] temperatures) {
+        int length = 0;
+        for (double temperature : temperatures) {
+            length += String.format(format, temperature).length();
+        }
+        return length;
+    }
+
+    private int formatWithTemplate(double[] temperatures) {
+        int length = 0;
+        for (double temperature : temperatures) {
+            length += TemplateFormatter.format(mContext, R.string.format_temperature, temperature)
+                    .length();
+        }
+        return length;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.Context;
+
+import com.example.android.weatherForecastMG.R;
+import com.example.android.weatherForecastMG.data.WeatherForecastPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link TemplateFormatter} writes exactly what String.format writes for the
+ * formats our resources use, including the values where rounding and signs are easy to get
+ * wrong. {@link TemplateFormatterBenchmark} times the two.
+ * <p>
+ * This runs on the JVM, so the output is pinned to the JVM's String.format.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TemplateFormatterTest {
+
+    private static final int[] NUMBER_FORMATS = {
+            R.string.format_temperature,
+            R.string.format_pressure
+    };
+
+    private static final int[] WIND_FORMATS = {
+            R.string.format_wind_kmh,
+            R.string.format_wind_mph
+    };
+
+    /* Values where the sign, the rounding or the fallback to String.format matter */
+    private static final double[] EDGE_VALUES = {
+            0.0, -0.0, 0.4, -0.4, 0.5, -0.5, 0.49999999999999994, -0.49999999999999994,
+            1.5, -1.5, 2.5, -2.5, 10.5, -10.5, 99.5, -99.5, 1012.5, -273.15,
+            0.1 + 0.2, 1e15 + 0.5, 4503599627370495.5, 1e18, -1e18, 9.3e18,
+            Double.MIN_VALUE, -Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+    };
+
+    private static final int RANDOM_VALUES = 100000;
+
+    private Context mContext;
+    private Locale mDefaultLocale;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mDefaultLocale = Locale.getDefault();
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(mDefaultLocale);
+        WeatherForecastPreferences.resetSnapshot();
+    }
+
+    @Test
+    public void edgeValuesMatchStringFormat() {
+        for (double value : EDGE_VALUES) {
+            assertMatchesStringFormat(value);
+        }
+    }
+
+    @Test
+    public void randomValuesMatchStringFormat() {
+        Random random = new Random(20);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            /* Temperatures and wind speeds, and their halves, ties included */
+            double value = (random.nextDouble() - 0.5) * 400;
+            assertMatchesStringFormat(value);
+            assertMatchesStringFormat(Math.floor(value) + 0.5);
+        }
+    }
+
+    @Test
+    public void otherLocalesMatchStringFormat() {
+        for (Locale locale : new Locale[]{Locale.GERMANY, Locale.FRANCE,
+                new Locale("ar", "EG"), new Locale("fa", "IR"), new Locale("hi", "IN")}) {
+            Locale.setDefault(locale);
+            for (double value : EDGE_VALUES) {
+                assertMatchesStringFormat(value);
+            }
+        }
+    }
+
+    @Test
+    public void windDirectionsMatchTheRangeChecks() {
+        for (int tenths = -3600; tenths <= 7200; tenths++) {
+            assertWindMatches(tenths / 10f);
+        }
+        assertWindMatches(Float.NaN);
+        assertWindMatches(Float.POSITIVE_INFINITY);
+        assertWindMatches(Float.NEGATIVE_INFINITY);
+    }
+
+    private void assertMatchesStringFormat(double value) {
+        for (int formatId : NUMBER_FORMATS) {
+            String format = mContext.getString(formatId);
+            assertEquals(format + " of " + value, String.format(format, value),
+                    TemplateFormatter.format(mContext, formatId, value));
+        }
+        for (int formatId : WIND_FORMATS) {
+            String format = mContext.getString(formatId);
+            assertEquals(format + " of " + value, String.format(format, value, "SW"),
+                    TemplateFormatter.format(mContext, formatId, value, "SW"));
+        }
+    }
+
+    private void assertWindMatches(float degrees) {
+        String expected = String.format(mContext.getString(R.string.format_wind_kmh),
+                3.6f, directionFromRanges(degrees));
+        assertEquals("Wind from " + degrees, expected,
+                ForecastWeatherUtils.getFormattedWind(mContext, 3.6f, degrees));
+    }
+
+    /* How getFormattedWind picked the direction before it was looked up by sector */
+    private static String directionFromRanges(float degrees) {
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return direction;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import com.example.android.weatherForecastMG.Benchmarks;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Times looking the art for weather conditions up in the table ForecastWeatherUtils builds
+ * against walking the lookUp chains, as before the table existed. See {@link Benchmarks}; that
+ * both give the same is checked by {@link WeatherConditionTableTest}.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherConditionTableBenchmark {
+
+    private static final int WARMUP_ROUNDS = 2000;
+    private static final int MEASURED_ROUNDS = 20000;
+
+    @Test
+    public void compareWithTheChains() throws IOException {
+        final int[] weatherIds = getIdsWithArt();
+
+        long sum = Benchmarks.compare("Art lookups for an ID", weatherIds.length, WARMUP_ROUNDS,
+                MEASURED_ROUNDS, "chains", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        return lookUpWithChains(weatherIds);
+                    }
+                },
+                "table", new Benchmarks.Candidate() {
+                    @Override
+                    public long run() {
+                        return lookUpInTable(weatherIds);
+                    }
+                });
+
+        /* Each chain lookup is undone by the table lookup of the same ID */
+        assertEquals(0, sum);
+    }
+
+    /*
+     * The IDs the chains have art for. The others are left out of the timing, as the public
+     * methods log each of them as unknown.
+     */
+    private static int[] getIdsWithArt() {
+        int first = WeatherConditionTableTest.FIRST_WEATHER_ID;
+        int last = WeatherConditionTableTest.LAST_WEATHER_ID;
+
+        int count = 0;
+        int[] weatherIds = new int[last - first + 1];
+        for (int weatherId = first; weatherId <= last; weatherId++) {
+            if (ForecastWeatherUtils.lookUpSmallArtResourceId(weatherId) != 0
+                    && ForecastWeatherUtils.lookUpLargeArtResourceId(weatherId) != 0) {
+                weatherIds[count++] = weatherId;
+            }
+        }
+        int[] idsWithArt = new int[count];
+        System.arraycopy(weatherIds, 0, idsWithArt, 0, count);
+        return idsWithArt;
+    }
+
+    /* What a row bind used to cost: both art lookups walking the chains */
+    private static int lookUpWithChains(int[] weatherIds) {
+        int sum = 0;
+        for (int weatherId : weatherIds) {
+            sum += ForecastWeatherUtils.lookUpSmallArtResourceId(weatherId);
+            sum += ForecastWeatherUtils.lookUpLargeArtResourceId(weatherId);
+        }
+        return sum;
+    }
+
+    private static int lookUpInTable(int[] weatherIds) {
+        int sum = 0;
+        for (int weatherId : weatherIds) {
+            sum -= ForecastWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId);
+            sum -= ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId);
+        }
+        return sum;
+    }
+}
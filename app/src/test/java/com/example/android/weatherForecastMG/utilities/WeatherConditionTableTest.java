@@ -0,0 +1,97 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.Context;
+
+import com.example.android.weatherForecastMG.R;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that looking weather conditions up in the table ForecastWeatherUtils builds gives,
+ * for every ID from 200 to 962 and for IDs outside them, exactly what walking the lookUp chains
+ * gave before the table existed. {@link WeatherConditionTableBenchmark} times the two.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherConditionTableTest {
+
+    static final int FIRST_WEATHER_ID = 200;
+    static final int LAST_WEATHER_ID = 962;
+
+    /* IDs the table doesn't cover, which must fall back the way the chains did */
+    private static final int[] IDS_OUTSIDE_TABLE = {
+            Integer.MIN_VALUE, -1, 0, 199, 963, 1000, Integer.MAX_VALUE
+    };
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void tableMatchesTheChainsForEveryId() {
+        for (int weatherId = FIRST_WEATHER_ID; weatherId <= LAST_WEATHER_ID; weatherId++) {
+            assertLookupsMatch(weatherId);
+        }
+    }
+
+    @Test
+    public void idsOutsideTheTableFallBackAsBefore() {
+        for (int weatherId : IDS_OUTSIDE_TABLE) {
+            assertLookupsMatch(weatherId);
+        }
+        assertEquals(R.drawable.ic_storm,
+                ForecastWeatherUtils.getSmallArtResourceIdForWeatherCondition(199));
+        assertEquals(R.drawable.art_storm,
+                ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(963));
+        assertEquals(mContext.getString(R.string.condition_unknown, 963),
+                ForecastWeatherUtils.getStringForWeatherCondition(mContext, 963));
+    }
+
+    @Test
+    public void knownConditionsAreInTheTable() {
+        assertEquals(mContext.getString(R.string.condition_800),
+                ForecastWeatherUtils.getStringForWeatherCondition(mContext, 800));
+        assertEquals(R.drawable.ic_clear,
+                ForecastWeatherUtils.getSmallArtResourceIdForWeatherCondition(800));
+        assertEquals(R.drawable.art_clear,
+                ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(800));
+        assertEquals(R.drawable.art_snow,
+                ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(511));
+        assertEquals(R.drawable.art_storm,
+                ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(962));
+    }
+
+    /*
+     * Compares the public lookups with the chains and the fallbacks the public methods had
+     * before the table: condition_unknown for a missing string, storm art for missing art.
+     */
+    private void assertLookupsMatch(int weatherId) {
+        String message = "Weather ID " + weatherId;
+
+        int stringId = ForecastWeatherUtils.lookUpConditionStringId(weatherId);
+        String expectedString = stringId != 0
+                ? mContext.getString(stringId)
+                : mContext.getString(R.string.condition_unknown, weatherId);
+        assertEquals(message, expectedString,
+                ForecastWeatherUtils.getStringForWeatherCondition(mContext, weatherId));
+        /* Again, now that the string is cached */
+        assertEquals(message, expectedString,
+                ForecastWeatherUtils.getStringForWeatherCondition(mContext, weatherId));
+
+        int smallArtId = ForecastWeatherUtils.lookUpSmallArtResourceId(weatherId);
+        assertEquals(message, smallArtId != 0 ? smallArtId : R.drawable.ic_storm,
+                ForecastWeatherUtils.getSmallArtResourceIdForWeatherCondition(weatherId));
+
+        int largeArtId = ForecastWeatherUtils.lookUpLargeArtResourceId(weatherId);
+        assertEquals(message, largeArtId != 0 ? largeArtId : R.drawable.art_storm,
+                ForecastWeatherUtils.getLargeArtResourceIdForWeatherCondition(weatherId));
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.android.weatherForecastMG.utilities;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+
+import com.example.android.weatherForecastMG.R;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the friendly date strings WeatherForecastDateUtils caches are replaced when the
+ * day they were made for ends, and when the locale changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WeatherForecastDateUtilsTest {
+
+    private static final long DAY = WeatherForecastDateUtils.DAY_IN_MILLIS;
+
+    /* Friday, July 14th 2017, midnight UTC */
+    private static final long FRIDAY = 1499990400000L;
+
+    private Context mContext;
+    private Locale mDefaultLocale;
+    private TimeZone mDefaultTimeZone;
+    private Locale mConfigurationLocale;
+
+    /* What the clock the friendly dates use says */
+    private long mNowMillis;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mDefaultLocale = Locale.getDefault();
+        mDefaultTimeZone = TimeZone.getDefault();
+        mConfigurationLocale = mContext.getResources().getConfiguration().locale;
+
+        Locale.setDefault(Locale.US);
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        setConfigurationLocale(Locale.US);
+        WeatherForecastDateUtils.setClock(new WeatherForecastDateUtils.Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return mNowMillis;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        WeatherForecastDateUtils.setClock(WeatherForecastDateUtils.SYSTEM_CLOCK);
+        setConfigurationLocale(mConfigurationLocale);
+        Locale.setDefault(mDefaultLocale);
+        TimeZone.setDefault(mDefaultTimeZone);
+    }
+
+    @Test
+    public void cachedStringsAreReused() {
+        mNowMillis = FRIDAY + DAY / 2;
+
+        for (int day = -1; day < 20; day++) {
+            for (boolean showFullDate : new boolean[]{false, true}) {
+                String first = friendlyDate(FRIDAY + day * DAY, showFullDate);
+                assertSame(first, friendlyDate(FRIDAY + day * DAY, showFullDate));
+            }
+        }
+    }
+
+    @Test
+    public void midnightRollsTheCacheOver() {
+        String today = mContext.getString(R.string.today);
+        String tomorrow = mContext.getString(R.string.tomorrow);
+
+        /* One second before midnight on Friday */
+        mNowMillis = FRIDAY + DAY - 1000;
+        assertTrue(friendlyDate(FRIDAY, false).startsWith(today));
+        assertEquals(tomorrow, friendlyDate(FRIDAY + DAY, false));
+        assertEquals("Sunday", friendlyDate(FRIDAY + 2 * DAY, false));
+
+        /* One second after it, without any broadcast */
+        mNowMillis = FRIDAY + DAY + 1000;
+        assertEquals("Friday", friendlyDate(FRIDAY, false));
+        assertTrue(friendlyDate(FRIDAY + DAY, false).startsWith(today));
+        assertEquals(tomorrow, friendlyDate(FRIDAY + 2 * DAY, false));
+    }
+
+    @Test
+    public void localeChangeReplacesTheStrings() {
+        mNowMillis = FRIDAY + DAY / 2;
+        String english = friendlyDate(FRIDAY + 3 * DAY, false);
+        assertEquals("Monday", english);
+
+        Locale.setDefault(Locale.FRANCE);
+        setConfigurationLocale(Locale.FRANCE);
+        String french = friendlyDate(FRIDAY + 3 * DAY, false);
+
+        assertEquals("lundi", french);
+        assertNotSame(english, french);
+
+        Locale.setDefault(Locale.US);
+        setConfigurationLocale(Locale.US);
+        assertEquals("Monday", friendlyDate(FRIDAY + 3 * DAY, false));
+    }
+
+    private String friendlyDate(long normalizedUtcMidnight, boolean showFullDate) {
+        return WeatherForecastDateUtils.getFriendlyDateString(mContext, normalizedUtcMidnight,
+                showFullDate);
+    }
+
+    private void setConfigurationLocale(Locale locale) {
+        Resources resources = mContext.getResources();
+        Configuration configuration = new Configuration(resources.getConfiguration());
+        configuration.locale = locale;
+        resources.updateConfiguration(configuration, resources.getDisplayMetrics());
+    }
+}